@@ -6,17 +6,25 @@
 package net.mtrop.doom.tools;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
@@ -26,6 +34,7 @@ import net.mtrop.doom.tools.exception.OptionParseException;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
 import net.mtrop.doom.tools.struct.ProcessCallable;
+import net.mtrop.doom.tools.struct.util.AudioUtils;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.IOUtils;
 
@@ -56,6 +65,11 @@ public final class DMXConvertMain
 	public static final String SWITCH_FFMPEG_PATH = "--ffmpeg";
 	public static final String SWITCH_OUTPUTDIR = "--output-dir";
 	public static final String SWITCH_OUTPUTDIR2 = "-o";
+	public static final String SWITCH_THREADS = "--threads";
+	public static final String SWITCH_THREADS2 = "-t";
+	public static final String SWITCH_SAMPLERATE = "--sample-rate";
+	public static final String SWITCH_SAMPLERATE2 = "-r";
+	public static final String SWITCH_NODITHER = "--no-dither";
 
 	/**
 	 * Program options.
@@ -74,6 +88,9 @@ public final class DMXConvertMain
 		private boolean onlyJSPI;
 		private File ffmpegPath;
 		private File outputDirectory;
+		private int threads;
+		private Integer sampleRate;
+		private boolean dither;
 		
 		private Options()
 		{
@@ -88,6 +105,9 @@ public final class DMXConvertMain
 			this.onlyJSPI = false;
 			this.ffmpegPath = null;
 			this.outputDirectory = null;
+			this.threads = 1;
+			this.sampleRate = null;
+			this.dither = true;
 		}
 
 		public Options setStdout(OutputStream out) 
@@ -126,6 +146,24 @@ public final class DMXConvertMain
 			return this;
 		}
 		
+		public Options setThreads(int threads) 
+		{
+			this.threads = threads;
+			return this;
+		}
+		
+		public Options setSampleRate(Integer sampleRate) 
+		{
+			this.sampleRate = sampleRate;
+			return this;
+		}
+		
+		public Options setDither(boolean dither) 
+		{
+			this.dither = dither;
+			return this;
+		}
+		
 		public Options addInputFile(File file)
 		{
 			this.sourceFiles.add(file);
@@ -140,6 +178,7 @@ public final class DMXConvertMain
 	private static class Context implements Callable<Integer>
 	{
 		private static final File NULL_FILE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+		private static final long DITHER_SEED = 0x0D3F1A7L;
 		
 		private Options options;
 	
@@ -211,96 +250,190 @@ public final class DMXConvertMain
 			boolean searchFFmpeg = !options.onlyJSPI && useFFmpeg;
 			int convertedCount = 0;
 			
-			for (File f : options.sourceFiles)
+			if (options.threads <= 1 || options.sourceFiles.size() <= 1)
 			{
-				AudioInputStream ais = null;
-				if (searchSPI)
+				for (File f : options.sourceFiles)
 				{
-					try {
-						ais = openSPIAudioStreamForFile(f);
-					} catch (IOException e) {
-						options.stderr.printf("ERROR: Could not read %s.\n", f.getPath());
-					}
+					if (convertFile(f, searchSPI, searchFFmpeg, options.stdout, options.stderr))
+						convertedCount++;
 				}
+			}
+			else
+			{
+				int threadCount = Math.min(options.threads, options.sourceFiles.size());
+				final AtomicInteger threadId = new AtomicInteger(0);
+				ThreadFactory threadFactory = (runnable) -> {
+					Thread out = new Thread(runnable, "DMXConvWorker-" + threadId.getAndIncrement());
+					out.setDaemon(true);
+					return out;
+				};
+				
+				ExecutorService executor = Executors.newFixedThreadPool(threadCount, threadFactory);
+				try {
+					List<FileConversion> conversions = new ArrayList<>(options.sourceFiles.size());
+					List<Future<Boolean>> results = new ArrayList<>(options.sourceFiles.size());
+					for (File f : options.sourceFiles)
+					{
+						FileConversion conversion = new FileConversion(f, searchSPI, searchFFmpeg);
+						conversions.add(conversion);
+						results.add(executor.submit(conversion));
+					}
 
-				if (ais == null && searchFFmpeg)
-				{
-					try {
-						ais = openFFmpegAudioStreamForFile(options.ffmpegPath, f);
-					} catch (IOException e) {
-						options.stderr.printf("I/O ERROR: FFmpeg: %s\n", e.getLocalizedMessage());
-						options.stderr.printf("ERROR: Could not read %s.\n", f.getPath());
-						IOUtils.close(ais);
+					// Report in input order, regardless of completion order.
+					for (int i = 0; i < conversions.size(); i++)
+					{
+						FileConversion conversion = conversions.get(i);
+						boolean converted;
+						try {
+							converted = results.get(i).get();
+						} catch (ExecutionException e) {
+							conversion.err.printf("ERROR: Could not convert %s: %s\n", conversion.file.getPath(), e.getCause().getLocalizedMessage());
+							converted = false;
+						}
+						conversion.flush(options.stdout, options.stderr);
+						if (converted)
+							convertedCount++;
 					}
+				} catch (InterruptedException e) {
+					options.stderr.println("ERROR: Conversion interrupted.");
+				} finally {
+					executor.shutdownNow();
 				}
+			}
+
+			options.stdout.printf("%d of %d file(s) converted.\n", convertedCount, options.sourceFiles.size());
+			return convertedCount == options.sourceFiles.size() ? ERROR_NONE : ERROR_CONVERSION_SKIPPED;
+		}
+		
+		/**
+		 * Converts a single file.
+		 * @param f the input file.
+		 * @param searchSPI if true, attempt to decode via Java SPI.
+		 * @param searchFFmpeg if true, attempt to decode via FFmpeg.
+		 * @param out the output stream for messages.
+		 * @param err the error stream for messages.
+		 * @return true if converted, false if not.
+		 */
+		private boolean convertFile(File f, boolean searchSPI, boolean searchFFmpeg, PrintStream out, PrintStream err)
+		{
+			AudioInputStream ais = null;
+			if (searchSPI)
+			{
+				try {
+					ais = openSPIAudioStreamForFile(f);
+				} catch (IOException e) {
+					err.printf("ERROR: Could not read %s.\n", f.getPath());
+				}
+			}
+
+			if (ais == null && searchFFmpeg)
+			{
+				try {
+					ais = openFFmpegAudioStreamForFile(options.ffmpegPath, f, out, err);
+				} catch (IOException e) {
+					err.printf("I/O ERROR: FFmpeg: %s\n", e.getLocalizedMessage());
+					err.printf("ERROR: Could not read %s.\n", f.getPath());
+					IOUtils.close(ais);
+				}
+			}
+			
+			if (ais == null)
+			{
+				err.printf("ERROR: Could not find decoder for %s. Skipping...\n", f.getPath());
+				return false;
+			}
+			
+			String outName = FileUtils.getFileNameWithoutExtension(f) + ".dmx";
+			File outputFile = options.outputDirectory != null
+				? new File(options.outputDirectory + File.separator + outName) 
+				: new File((f.getParent() == null ? "." + File.separator : f.getParent() + File.separator) + outName);
+			
+			if (!FileUtils.createPathForFile(outputFile))
+			{
+				err.printf("ERROR: Could not create path for %s. Skipping...\n", outputFile);
+				IOUtils.close(ais);
+				return false;
+			}
 				
-				if (ais == null)
+			try (AudioInputStream decoded = ais)
+			{
+				float sampleRate = decoded.getFormat().getSampleRate();
+				float[] samples = AudioUtils.readMono(decoded);
+				if (options.sampleRate != null && sampleRate != options.sampleRate)
 				{
-					options.stderr.printf("ERROR: Could not find decoder for %s. Skipping...\n", f.getPath());
-					continue;
+					samples = AudioUtils.resample(samples, sampleRate, options.sampleRate);
+					sampleRate = options.sampleRate;
 				}
 				
-				String outName = FileUtils.getFileNameWithoutExtension(f) + ".dmx";
-				File outputFile = options.outputDirectory != null
-					? new File(options.outputDirectory + File.separator + outName) 
-					: new File((f.getParent() == null ? "." + File.separator : f.getParent() + File.separator) + outName);
+				// fixed seed for reproducible output
+				int[] quantized = AudioUtils.quantizeUnsigned8(samples, options.dither, new Random(DITHER_SEED));
 				
-				if (!FileUtils.createPathForFile(outputFile))
-				{
-					options.stderr.printf("ERROR: Could not create path for %s. Skipping...\n", outputFile);
-					continue;
-				}
-					
-				try (AudioInputStream decoded = getDecoderStream(ais))
+				DMXSound dmx = new DMXSound((int)sampleRate);
+				for (int i = 0; i < quantized.length; i++)
+					dmx.addSample((double)(quantized[i] - 128) / 128.0);
+				
+				try (FileOutputStream fos = new FileOutputStream(outputFile))
 				{
-					AudioFormat format = decoded.getFormat();
-					byte[] sample = new byte[1];
-					
-					DMXSound dmx = new DMXSound((int)format.getSampleRate());
-					
-					while (decoded.read(sample) > 0)
-						dmx.addSample((double)((sample[0] & 0x0ff) - 128) / 128.0);
-					
-					try (FileOutputStream fos = new FileOutputStream(outputFile))
-					{
-						dmx.writeBytes(fos);
-						options.stdout.printf("Wrote %s.\n", outputFile.getPath());
-						convertedCount++;
-					} 
-					catch (IOException e) 
-					{
-						options.stderr.printf("ERROR: Could not write %s.\n", outputFile.getPath());
-					}
-					catch (SecurityException e) 
-					{
-						options.stderr.printf("ERROR: Could not write %s (ACCESS DENIED).\n", outputFile.getPath());
-					}
+					dmx.writeBytes(fos);
+					out.printf("Wrote %s.\n", outputFile.getPath());
+					return true;
 				} 
 				catch (IOException e) 
 				{
-					options.stderr.printf("ERROR: Could not open decoder for %s.\n", f.getPath());
+					err.printf("ERROR: Could not write %s.\n", outputFile.getPath());
+				}
+				catch (SecurityException e) 
+				{
+					err.printf("ERROR: Could not write %s (ACCESS DENIED).\n", outputFile.getPath());
 				}
+			} 
+			catch (IOException e) 
+			{
+				err.printf("ERROR: Could not open decoder for %s.\n", f.getPath());
 			}
-
-			options.stdout.printf("%d of %d file(s) converted.\n", convertedCount, options.sourceFiles.size());
-			return convertedCount == options.sourceFiles.size() ? ERROR_NONE : ERROR_CONVERSION_SKIPPED;
+			return false;
 		}
 		
-		// Wraps an audio stream into a decoder. 
-		private AudioInputStream getDecoderStream(AudioInputStream inputStream) throws IOException
+		/**
+		 * A single file conversion that buffers its output for in-order reporting.
+		 */
+		private class FileConversion implements Callable<Boolean>
 		{
-			AudioFormat format = inputStream.getFormat();
-			return AudioSystem.getAudioInputStream(new AudioFormat(
-				AudioFormat.Encoding.PCM_UNSIGNED,
-				format.getSampleRate(), 
-				8, // bits per sample
-				1, // one channel
-				1, // one byte per frame
-				format.getSampleRate(),
-				false // LE
-			), inputStream);
+			private File file;
+			private boolean searchSPI;
+			private boolean searchFFmpeg;
+			private ByteArrayOutputStream outBuffer;
+			private ByteArrayOutputStream errBuffer;
+			private PrintStream out;
+			private PrintStream err;
+			
+			private FileConversion(File file, boolean searchSPI, boolean searchFFmpeg)
+			{
+				this.file = file;
+				this.searchSPI = searchSPI;
+				this.searchFFmpeg = searchFFmpeg;
+				this.outBuffer = new ByteArrayOutputStream();
+				this.errBuffer = new ByteArrayOutputStream();
+				this.out = new PrintStream(outBuffer, true);
+				this.err = new PrintStream(errBuffer, true);
+			}
+			
+			@Override
+			public Boolean call()
+			{
+				return convertFile(file, searchSPI, searchFFmpeg, out, err);
+			}
+			
+			// Writes the buffered output to the target streams.
+			private void flush(PrintStream stdout, PrintStream stderr)
+			{
+				out.flush();
+				err.flush();
+				stdout.print(new String(outBuffer.toByteArray()));
+				stderr.print(new String(errBuffer.toByteArray()));
+			}
 		}
-
+		
 		// Opens an audio stream 
 		private AudioInputStream openSPIAudioStreamForFile(File input) throws IOException
 		{
@@ -313,15 +446,15 @@ public final class DMXConvertMain
 		
 		// Opens an audio stream via FFmpeg
 		// Throws SecurityException or UnsupportedAudioFileException
-		private AudioInputStream openFFmpegAudioStreamForFile(File ffmpegPath, File input) throws IOException
+		private AudioInputStream openFFmpegAudioStreamForFile(File ffmpegPath, File input, PrintStream out, PrintStream err) throws IOException
 		{
 			String exe = ffmpegPath != null ? ffmpegPath.getAbsolutePath() : "ffmpeg";
 
-			options.stdout.println("Calling FFmpeg...");
+			out.println("Calling FFmpeg...");
 			
 			Process proc = (new ProcessBuilder())
 				.command(
-					exe, "-i", input.getPath(), "-f", "wav", "-acodec", "pcm_s16le", "-ac", "2", "-"
+					exe, "-i", input.getPath(), "-f", "wav", "-acodec", "pcm_s16le", "-"
 				)
 				.redirectError(Redirect.appendTo(NULL_FILE))
 				.redirectOutput(Redirect.PIPE)
@@ -329,7 +462,7 @@ public final class DMXConvertMain
 			try {
 				return AudioSystem.getAudioInputStream(new BufferedInputStream(proc.getInputStream()));
 			} catch (UnsupportedAudioFileException e) {
-				options.stderr.printf("UNSUPPORTED: Java via FFmpeg: %s\n", e.getLocalizedMessage());
+				err.printf("UNSUPPORTED: Java via FFmpeg: %s\n", e.getLocalizedMessage());
 				return null;
 			}
 		}
@@ -363,6 +496,8 @@ public final class DMXConvertMain
 		final int STATE_START = 0;
 		final int STATE_FFMPEG = 1;
 		final int STATE_OUTPUTDIR = 2;
+		final int STATE_THREADS = 3;
+		final int STATE_SAMPLERATE = 4;
 		int state = STATE_START;
 		
 		for (int i = 0; i < args.length; i++)
@@ -389,6 +524,12 @@ public final class DMXConvertMain
 						state = STATE_FFMPEG;
 					else if (arg.equals(SWITCH_OUTPUTDIR) || arg.equals(SWITCH_OUTPUTDIR2))
 						state = STATE_OUTPUTDIR;
+					else if (arg.equals(SWITCH_THREADS) || arg.equals(SWITCH_THREADS2))
+						state = STATE_THREADS;
+					else if (arg.equals(SWITCH_SAMPLERATE) || arg.equals(SWITCH_SAMPLERATE2))
+						state = STATE_SAMPLERATE;
+					else if (arg.equals(SWITCH_NODITHER))
+						options.setDither(false);
 					else
 						options.sourceFiles.add(new File(arg));
 				}
@@ -407,6 +548,36 @@ public final class DMXConvertMain
 					state = STATE_START;
 				}
 				break;
+
+				case STATE_THREADS:
+				{
+					int n;
+					try {
+						n = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						throw new OptionParseException("ERROR: Thread count needs to be a number greater than 0.");
+					}
+					if (n < 1)
+						throw new OptionParseException("ERROR: Thread count needs to be a number greater than 0.");
+					options.threads = n;
+					state = STATE_START;
+				}
+				break;
+
+				case STATE_SAMPLERATE:
+				{
+					int n;
+					try {
+						n = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						throw new OptionParseException("ERROR: Sample rate needs to be a number greater than 0.");
+					}
+					if (n < 1)
+						throw new OptionParseException("ERROR: Sample rate needs to be a number greater than 0.");
+					options.sampleRate = n;
+					state = STATE_START;
+				}
+				break;
 			}
 		}
 
@@ -414,6 +585,10 @@ public final class DMXConvertMain
 			throw new OptionParseException("ERROR: Expected path to FFMpeg.");
 		if (state == STATE_OUTPUTDIR)
 			throw new OptionParseException("ERROR: Expected path to output directory.");
+		if (state == STATE_THREADS)
+			throw new OptionParseException("ERROR: Expected number after thread count switch.");
+		if (state == STATE_SAMPLERATE)
+			throw new OptionParseException("ERROR: Expected number after sample rate switch.");
 
 		return options;
 	}
@@ -514,6 +689,18 @@ public final class DMXConvertMain
 		out.println("    --jspi-only         If set, DMXConv does not attempt to read the incoming");
 		out.println("                        sound files using FFmpeg, only Java SPI and the");
 		out.println("                        classpath.");
+		out.println();
+		out.println("    --threads [num]     Sets the amount of files to convert at the same time");
+		out.println("    -t [num]            (and the maximum amount of FFmpeg processes running at");
+		out.println("                        once). Results are still reported in input order.");
+		out.println("                        Default is 1.");
+		out.println();
+		out.println("    --sample-rate [hz]  Resamples the output to the provided sample rate (for");
+		out.println("    -r [hz]             example, 11025 for vanilla-compatible sounds). If not");
+		out.println("                        set, the source sample rate is kept.");
+		out.println();
+		out.println("    --no-dither         If set, the output is not dithered when reduced to");
+		out.println("                        8-bit samples.");
 	}
 
 }
@@ -5,6 +5,7 @@
  ******************************************************************************/
 package net.mtrop.doom.tools;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -13,10 +14,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.Reader;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -31,17 +30,19 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 import com.blackrook.json.JSONConversionException;
 import com.blackrook.json.JSONObject;
-import com.blackrook.json.JSONReader;
-import com.blackrook.json.JSONWriter;
 
 import net.mtrop.doom.struct.io.IOUtils;
 import net.mtrop.doom.tools.WadScriptMain.Mode;
 import net.mtrop.doom.tools.WadScriptMain.Resolver;
 import net.mtrop.doom.tools.common.Common;
+import net.mtrop.doom.tools.common.ParseException;
 import net.mtrop.doom.tools.doommake.AutoBuildAgent;
+import net.mtrop.doom.tools.doommake.BuildGraph;
+import net.mtrop.doom.tools.doommake.BuildTimings;
 import net.mtrop.doom.tools.doommake.ProjectGenerator;
 import net.mtrop.doom.tools.doommake.ProjectModule;
 import net.mtrop.doom.tools.doommake.ProjectTemplate;
@@ -97,6 +98,10 @@ public final class DoomMakeMain
 	public static final String SWITCH_AGENT = "--auto-build";
 	public static final String SWITCH_AGENT_VERBOSE = "--auto-build-verbose";
 	public static final String SWITCH_AGENT_BYPASS = "--agent-bypass";
+	public static final String SWITCH_AGENT_SPAWN = "--auto-build-spawn";
+	public static final String SWITCH_AGENT_RECYCLE = "--auto-build-recycle";
+	public static final String SWITCH_AGENT_GRACE = "--auto-build-grace";
+	public static final String SWITCH_AGENT_MAXDELAY = "--auto-build-max-delay";
 	
 	public static final String SWITCH_SCRIPTFILE = "--script";
 	public static final String SWITCH_SCRIPTFILE2 = "-s";
@@ -106,14 +111,35 @@ public final class DoomMakeMain
 	public static final String SWITCH_ACTIVATIONDEPTH1 = "--activation-depth";
 	public static final String SWITCH_STACKDEPTH1 = "--stack-depth";
 	public static final String SWITCH_DISASSEMBLE1 = "--disassemble";
+	public static final String SWITCH_PROFILE1 = "--profile";
+	public static final String SWITCH_PROFILECOLLAPSED1 = "--profile-collapsed";
+	public static final String SWITCH_JOBS1 = "--jobs";
+	public static final String SWITCH_JOBS2 = "-j";
+	public static final String SWITCH_TIMINGS1 = "--timings";
 
 	private static final String SHELL_OPTIONS = "-Xms64M -Xmx768M";
 	private static final String SHELL_RESOURCE_CMD = "shell/embed/app-name.cmd";
 	private static final String SHELL_RESOURCE_SH = "shell/embed/app-name.sh";
 	
 	private static final String PROPERTY_DOOMMAKE_PROJECT_ENCODING = "doommake.project.encoding";
+	private static final String PROPERTY_DOOMMAKE_TARGETS_FILE = "doommake.file.targets";
+	private static final String DEFAULT_TARGETS_FILE = "doommake.targets";
+	private static final String PROPERTY_DOOMMAKE_TIMINGS_FILE = "doommake.file.timings";
+	private static final String DEFAULT_TIMINGS_FILE = "timings.jsonl";
+	private static final String PROPERTY_DOOMMAKE_TIMINGS_BUILDS = "doommake.timings.builds";
+	private static final int DEFAULT_TIMINGS_BUILDS = 10;
+
+	/** DoomMake functions that are timed with the "--timings" switch. */
+	private static final String[] TIMED_FUNCTIONS = {
+		"ZIPDIR", "ZIPFILES", "UNZIP", "HASHDIR", "HASHDIRCONTENTS", "DIRFINGERPRINT", "COPYDIR", "FETCH"
+	};
+
+	/** Default amount of in-process agent builds between recycles. */
+	private static final int AGENT_RECYCLE_BUILDS_DEFAULT = 25;
+	/** Fraction of max heap in use after an in-process agent build that forces a recycle. */
+	private static final double AGENT_RECYCLE_MEMORY_FRACTION = 0.75;
 	
-	// WadScript-specific
+	// WadScript-specific. Shared between calls, so that compiled scripts can be reused.
 	private static final Resolver[] RESOLVERS_DOOMMAKE = 
 	{
 		new Resolver("DoomMake Functions", DoomMakeFunctions.createResolver()),
@@ -156,6 +182,11 @@ public final class DoomMakeMain
 		private boolean guiNewProject;
 		private boolean agent;
 		private boolean verboseAgent;
+		private boolean agentSpawn;
+		private int agentRecycleBuilds;
+		private long agentGraceMillis;
+		private long agentMaxDelayMillis;
+		private boolean isolated;
 
 		private boolean agentBypass;
 		private ProjectType projectType;
@@ -165,6 +196,10 @@ public final class DoomMakeMain
 		private Integer runawayLimit;
 		private Integer activationDepth;
 		private Integer stackDepth;
+		private boolean profile;
+		private File profileCollapsedFile;
+		private int jobs;
+		private boolean timings;
 
 		private String targetName;
 
@@ -186,6 +221,11 @@ public final class DoomMakeMain
 			this.guiNewProject = false;
 			this.agent = false;
 			this.verboseAgent = false;
+			this.agentSpawn = false;
+			this.agentRecycleBuilds = AGENT_RECYCLE_BUILDS_DEFAULT;
+			this.agentGraceMillis = AutoBuildAgent.DEFAULT_GRACE_PERIOD_MILLIS;
+			this.agentMaxDelayMillis = AutoBuildAgent.DEFAULT_MAX_DELAY_MILLIS;
+			this.isolated = false;
 			
 			this.agentBypass = false;
 			this.projectType = null;
@@ -195,6 +235,10 @@ public final class DoomMakeMain
 			this.runawayLimit = 0;
 			this.activationDepth = 256;
 			this.stackDepth = 2048;
+			this.profile = false;
+			this.profileCollapsedFile = null;
+			this.jobs = 1;
+			this.timings = false;
 			this.propertiesFile = new File("doommake.properties");
 			this.scriptFile = new File("doommake.script");
 			this.targetName = "make";
@@ -237,6 +281,30 @@ public final class DoomMakeMain
 			return this;
 		}
 
+		public Options setProfile(boolean profile)
+		{
+			this.profile = profile;
+			return this;
+		}
+		
+		public Options setProfileCollapsedFile(File profileCollapsedFile)
+		{
+			this.profileCollapsedFile = profileCollapsedFile;
+			return this;
+		}
+
+		public Options setJobs(int jobs)
+		{
+			this.jobs = jobs;
+			return this;
+		}
+		
+		public Options setTimings(boolean timings)
+		{
+			this.timings = timings;
+			return this;
+		}
+		
 		public Options setTargetName(String targetName) 
 		{
 			this.targetName = targetName;
@@ -289,10 +357,14 @@ public final class DoomMakeMain
 	private static class Context implements Callable<Integer>
 	{
 		private Options options;
+		private BuildTimings timings;
+		private Resolver[] timedResolvers;
 	
 		private Context(Options options)
 		{
 			this.options = options;
+			this.timings = null;
+			this.timedResolvers = null;
 		}
 		
 		@Override
@@ -441,8 +513,28 @@ public final class DoomMakeMain
 			
 			final AutoBuildAgent agent = new AutoBuildAgent(workDir, new AutoBuildAgent.Listener() 
 			{
+				/** In-process builds since the last recycle. */
+				private int builds = 0;
+				
 				@Override
 				public int callBuild(String target) 
+				{
+					if (options.agentSpawn)
+						return spawnBuild();
+					
+					try {
+						return inProcessBuild();
+					} finally {
+						if (++builds >= options.agentRecycleBuilds || isMemoryLow())
+						{
+							recycle();
+							builds = 0;
+						}
+					}
+				}
+				
+				// Runs a build in a new JVM.
+				private int spawnBuild()
 				{
 					try {
 						return InstancedFuture.instance(Common.spawnJava(DoomMakeMain.class)
@@ -456,6 +548,41 @@ public final class DoomMakeMain
 					}
 				}
 				
+				// Runs a build in this JVM, in a fresh script instance with its own scopes.
+				// The project properties are loaded into the system properties, so those are restored afterward.
+				private int inProcessBuild()
+				{
+					Properties saved = (Properties)System.getProperties().clone();
+					try {
+						Options buildOptions = options(options.stdout, options.stderr, options.stdin, SWITCH_AGENT_BYPASS);
+						buildOptions.isolated = true;
+						DoomMakeFunctions.clearBuildFlags();
+						return (new Context(buildOptions)).call();
+					} catch (Throwable t) {
+						options.stderr.println("ERROR: " + t.getClass().getSimpleName() + ": " + t.getLocalizedMessage());
+						return ERROR_UNKNOWN;
+					} finally {
+						System.setProperties(saved);
+					}
+				}
+				
+				private boolean isMemoryLow()
+				{
+					Runtime runtime = Runtime.getRuntime();
+					long used = runtime.totalMemory() - runtime.freeMemory();
+					return used > runtime.maxMemory() * AGENT_RECYCLE_MEMORY_FRACTION;
+				}
+				
+				// Drops everything kept warm between in-process builds.
+				private void recycle()
+				{
+					if (options.verboseAgent)
+						options.stdout.println("Recycling build caches...");
+					WadScriptMain.clearCompiledScripts();
+					DoomMakeFunctions.clearContentHashes();
+					System.gc();
+				}
+				
 				@Override
 				public void onBuildPrepared() 
 				{
@@ -534,7 +661,7 @@ public final class DoomMakeMain
 					if (options.verboseAgent)
 						options.stdout.println(message);
 				}
-			});
+			}, options.agentGraceMillis, options.agentMaxDelayMillis);
 
 			agent.start();
 
@@ -568,22 +695,111 @@ public final class DoomMakeMain
 				encodingName = Charset.defaultCharset().displayName();
 			}
 			
+			if (options.mode != Mode.EXECUTE || !options.timings)
+				return executeTargets(encodingName);
+			
+			// New wrappers for each build, so that compiled scripts from other builds are not reused.
+			timings = new BuildTimings(options.targetName);
+			timedResolvers = new Resolver[]{
+				new Resolver(RESOLVERS_DOOMMAKE[0].sectionName, timings.wrap(RESOLVERS_DOOMMAKE[0].sectionName, null, RESOLVERS_DOOMMAKE[0].resolver, TIMED_FUNCTIONS)),
+				new Resolver(RESOLVERS_DOOMMAKE[1].sectionName, "TOOL", timings.wrap(RESOLVERS_DOOMMAKE[1].sectionName, "TOOL", RESOLVERS_DOOMMAKE[1].resolver))
+			};
+			int result = executeTargets(encodingName);
+			
+			Properties properties = System.getProperties();
+			File buildDir = getProjectPropertyPath(new File("."), properties, "doommake.dir.build", "build");
+			String timingsFile = properties.getProperty(PROPERTY_DOOMMAKE_TIMINGS_FILE, DEFAULT_TIMINGS_FILE);
+			if (ObjectUtils.isEmpty(timingsFile))
+				timingsFile = DEFAULT_TIMINGS_FILE;
+			File historyFile = new File(buildDir.getPath() + File.separator + timingsFile);
+			int compareCount;
+			try {
+				compareCount = Integer.parseInt(properties.getProperty(PROPERTY_DOOMMAKE_TIMINGS_BUILDS, String.valueOf(DEFAULT_TIMINGS_BUILDS)));
+			} catch (NumberFormatException e) {
+				compareCount = DEFAULT_TIMINGS_BUILDS;
+			}
+			
+			options.stderr.println();
+			try {
+				if (!FileUtils.createPathForFile(historyFile))
+					throw new IOException("Could not create directories for timings file.");
+				timings.finish(historyFile, result, compareCount, options.stderr);
+			} catch (IOException e) {
+				options.stderr.println("ERROR: Could not write timings file: " + e.getLocalizedMessage());
+			}
+			return result;
+		}
+		
+		private int executeTargets(String encodingName) 
+		{
+			File targetsFile = getProjectPropertyPath(new File("."), System.getProperties(), PROPERTY_DOOMMAKE_TARGETS_FILE, DEFAULT_TARGETS_FILE);
+			if (options.mode == Mode.EXECUTE && targetsFile.isFile())
+			{
+				BuildGraph graph;
+				try {
+					graph = BuildGraph.read(targetsFile);
+				} catch (IOException e) {
+					options.stderr.println("ERROR: Could not read target file: " + e.getLocalizedMessage());
+					return ERROR_IOERROR;
+				} catch (ParseException e) {
+					options.stderr.println("ERROR: " + e.getLocalizedMessage());
+					return ERROR_BAD_PROJECT;
+				}
+				
+				if (graph.contains(options.targetName))
+				{
+					// Targets that can run at the same time can't share a global scope or STDIN.
+					final String charsetName = encodingName;
+					final boolean parallel = options.jobs > 1;
+					try {
+						return graph.execute(options.targetName, options.jobs, (target, out, err) -> executeScript(
+							target, 
+							charsetName, 
+							options.isolated || parallel, 
+							out, 
+							err, 
+							parallel ? new ByteArrayInputStream(new byte[0]) : options.stdin
+						), options.stdout, options.stderr);
+					} catch (ParseException e) {
+						options.stderr.println("ERROR: " + e.getLocalizedMessage());
+						return ERROR_BAD_PROJECT;
+					}
+				}
+			}
+			
+			return executeScript(options.targetName, encodingName, options.isolated, options.stdout, options.stderr, options.stdin);
+		}
+
+		private int executeScript(String entryPointName, String encodingName, boolean isolated, PrintStream stdout, PrintStream stderr, InputStream stdin) 
+		{
 			try {
-				WadScriptMain.Options wsOptions = WadScriptMain.options(options.stdout, options.stderr, options.stdin)
+				WadScriptMain.Options wsOptions = WadScriptMain.options(stdout, stderr, stdin)
 					.setMode(options.mode)
 					.setDocsTitle("DoomMake Functions")
-					.setEntryPointName(options.targetName)
+					.setEntryPointName(entryPointName)
 					.setStackDepth(options.stackDepth)
 					.setActivationDepth(options.activationDepth)
 					.setRunawayLimit(options.runawayLimit)
+					.setIsolated(isolated)
+					.setProfile(options.profile)
+					.setProfileCollapsedFile(options.profileCollapsedFile)
 					.setScriptFile(options.scriptFile)
 					.setScriptCharsetName(encodingName)
-					.addResolver("DoomMake Functions", DoomMakeFunctions.createResolver())
-					.addResolver("Tool Invocation", "TOOL", ToolInvocationFunctions.createResolver())
 				;
+				for (Resolver resolver : (timings != null ? timedResolvers : RESOLVERS_DOOMMAKE))
+					wsOptions.addResolver(resolver.sectionName, resolver.namespace, resolver.resolver);
 				for (Object obj : options.args)
 					wsOptions.addArg(obj);
-				return WadScriptMain.call(wsOptions);
+				
+				if (timings == null)
+					return WadScriptMain.call(wsOptions);
+				
+				long start = System.nanoTime();
+				try {
+					return WadScriptMain.call(wsOptions);
+				} finally {
+					timings.record(BuildTimings.STAGE_TARGET_PREFIX + entryPointName, System.nanoTime() - start);
+				}
 			} catch (OptionParseException e) {
 				/** Will not be thrown. */
 				return ERROR_UNKNOWN;
@@ -780,6 +996,11 @@ public final class DoomMakeMain
 		final int STATE_SWITCHES_STACK = 4;
 		final int STATE_SWITCHES_RUNAWAY = 5;
 		final int STATE_MODULENAME = 6;
+		final int STATE_SWITCHES_PROFILECOLLAPSED = 7;
+		final int STATE_SWITCHES_AGENT_RECYCLE = 8;
+		final int STATE_SWITCHES_AGENT_GRACE = 9;
+		final int STATE_SWITCHES_AGENT_MAXDELAY = 10;
+		final int STATE_SWITCHES_JOBS = 11;
 		int state = STATE_START;
 		
 		boolean target = false;
@@ -807,6 +1028,14 @@ public final class DoomMakeMain
 					}
 					else if (arg.equalsIgnoreCase(SWITCH_AGENT_BYPASS))
 						options.agentBypass = true;
+					else if (arg.equalsIgnoreCase(SWITCH_AGENT_SPAWN))
+						options.agentSpawn = true;
+					else if (arg.equalsIgnoreCase(SWITCH_AGENT_RECYCLE))
+						state = STATE_SWITCHES_AGENT_RECYCLE;
+					else if (arg.equalsIgnoreCase(SWITCH_AGENT_GRACE))
+						state = STATE_SWITCHES_AGENT_GRACE;
+					else if (arg.equalsIgnoreCase(SWITCH_AGENT_MAXDELAY))
+						state = STATE_SWITCHES_AGENT_MAXDELAY;
 					else if (arg.equalsIgnoreCase(SWITCH_GUI))
 						options.gui = true;
 					else if (arg.equalsIgnoreCase(SWITCH_STUDIO))
@@ -846,6 +1075,14 @@ public final class DoomMakeMain
 						state = STATE_SWITCHES_ACTIVATION;
 					else if (SWITCH_STACKDEPTH1.equalsIgnoreCase(arg))
 						state = STATE_SWITCHES_STACK;
+					else if (SWITCH_PROFILE1.equalsIgnoreCase(arg))
+						options.profile = true;
+					else if (SWITCH_PROFILECOLLAPSED1.equalsIgnoreCase(arg))
+						state = STATE_SWITCHES_PROFILECOLLAPSED;
+					else if (SWITCH_JOBS1.equalsIgnoreCase(arg) || SWITCH_JOBS2.equalsIgnoreCase(arg))
+						state = STATE_SWITCHES_JOBS;
+					else if (SWITCH_TIMINGS1.equalsIgnoreCase(arg))
+						options.timings = true;
 					else if (target)
 						options.args.add(arg);
 					else
@@ -870,6 +1107,65 @@ public final class DoomMakeMain
 				}
 				break;
 				
+				case STATE_SWITCHES_AGENT_RECYCLE:
+				{
+					try {
+						options.agentRecycleBuilds = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						options.agentRecycleBuilds = 0;
+					}
+					if (options.agentRecycleBuilds <= 0)
+						throw new OptionParseException("Auto-build recycle count needs to be a number greater than 0.");
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_SWITCHES_AGENT_GRACE:
+				{
+					try {
+						options.agentGraceMillis = Long.parseLong(arg);
+					} catch (NumberFormatException e) {
+						options.agentGraceMillis = -1L;
+					}
+					if (options.agentGraceMillis < 0L)
+						throw new OptionParseException("Auto-build grace period needs to be a number of milliseconds, 0 or greater.");
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_SWITCHES_AGENT_MAXDELAY:
+				{
+					try {
+						options.agentMaxDelayMillis = Long.parseLong(arg);
+					} catch (NumberFormatException e) {
+						options.agentMaxDelayMillis = -1L;
+					}
+					if (options.agentMaxDelayMillis < 0L)
+						throw new OptionParseException("Auto-build max delay needs to be a number of milliseconds, 0 or greater.");
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_SWITCHES_JOBS:
+				{
+					try {
+						options.jobs = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						options.jobs = 0;
+					}
+					if (options.jobs <= 0)
+						throw new OptionParseException("Jobs needs to be a number greater than 0.");
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_SWITCHES_PROFILECOLLAPSED:
+				{
+					options.profileCollapsedFile = new File(arg);
+					state = STATE_START;
+				}
+				break;
+				
 				case STATE_MODULENAME:
 				{
 					options.templateNames.add(arg);
@@ -932,6 +1228,16 @@ public final class DoomMakeMain
 			throw new OptionParseException("ERROR: Expected number after stack depth switch.");
 		if (state == STATE_SWITCHES_RUNAWAY)
 			throw new OptionParseException("ERROR: Expected number after runaway limit switch.");
+		if (state == STATE_SWITCHES_PROFILECOLLAPSED)
+			throw new OptionParseException("ERROR: Expected file path after profile collapsed switch.");
+		if (state == STATE_SWITCHES_AGENT_RECYCLE)
+			throw new OptionParseException("ERROR: Expected number after auto-build recycle switch.");
+		if (state == STATE_SWITCHES_AGENT_GRACE)
+			throw new OptionParseException("ERROR: Expected number after auto-build grace switch.");
+		if (state == STATE_SWITCHES_AGENT_MAXDELAY)
+			throw new OptionParseException("ERROR: Expected number after auto-build max delay switch.");
+		if (state == STATE_SWITCHES_JOBS)
+			throw new OptionParseException("ERROR: Expected number after jobs switch.");
 		
 		return options;
 	}
@@ -1015,16 +1321,7 @@ public final class DoomMakeMain
 		if (!FileUtils.createPathForFile(fullFilePath))
 			throw new IOException("Could not create directories for lock file.");
 		
-		if (!fullFilePath.exists())
-			return JSONObject.createEmptyObject();
-		
-		JSONObject lockRoot;
-		try (Reader reader = new InputStreamReader(new FileInputStream(fullFilePath), "UTF-8"))
-		{
-			lockRoot = JSONReader.readJSON(reader);
-		}
-		
-		return lockRoot;
+		return DoomMakeFunctions.readLockFile(fullFilePath);
 	}
 
 	/**
@@ -1036,18 +1333,22 @@ public final class DoomMakeMain
 	 */
 	public static void writeLockObject(File projectDirectory, Properties properties, JSONObject lockRoot) throws IOException
 	{
-		File fullFilePath = getLockFile(projectDirectory, properties);
-	
-		if (!FileUtils.createPathForFile(fullFilePath))
-			throw new IOException("Could not create directories for lock file.");
-		
-		JSONWriter.Options jsonOptions = new JSONWriter.Options();
-		jsonOptions.setIndentation("\t");
-	
-		try (Writer writer = new OutputStreamWriter(new FileOutputStream(fullFilePath), "UTF-8"))
-		{
-			JSONWriter.writeJSON(lockRoot, jsonOptions, writer);
-		}
+		DoomMakeFunctions.writeLockFile(getLockFile(projectDirectory, properties), lockRoot);
+	}
+
+	/**
+	 * Reads the lock JSON file, changes it, and writes it back, 
+	 * with no other lock file reads or writes in this process in between 
+	 * (including ones made by build scripts).
+	 * @param projectDirectory the project directory root.
+	 * @param properties the properties to inspect for the lock file name.
+	 * @param updater the function that changes the lock object.
+	 * @throws IOException if the file could not be opened, read, or written.
+	 * @throws JSONConversionException if the JSON is malformed.
+	 */
+	public static void updateLockObject(File projectDirectory, Properties properties, Consumer<JSONObject> updater) throws IOException
+	{
+		DoomMakeFunctions.updateLockFile(getLockFile(projectDirectory, properties), updater);
 	}
 
 	/**
@@ -1168,6 +1469,24 @@ public final class DoomMakeMain
 		out.println("    --stack-depth [num]            Sets the stack value depth to [num].");
 		out.println("                                       Default: 2048");
 		out.println();
+		out.println("    --jobs, -j [num]               If the target is in the project's target");
+		out.println("                                       file (\"doommake.targets\"), run up to");
+		out.println("                                       [num] of its dependency targets at once.");
+		out.println("                                       Default: 1");
+		out.println();
+		out.println("    --profile                      Times all host function calls (including");
+		out.println("                                       TOOL:: calls) and prints a report to");
+		out.println("                                       STDERR after the target ends. Script");
+		out.println("                                       functions are not timed on their own.");
+		out.println("    --profile-collapsed [file]     Times all host function calls and writes");
+		out.println("                                       the call paths to [file] in collapsed");
+		out.println("                                       stack format (for flame graphs).");
+		out.println("    --timings                      Records the wall time of each target,");
+		out.println("                                       TOOL:: call, and file/zip/hash/fetch");
+		out.println("                                       function, appends it to a history file");
+		out.println("                                       in the build directory, and prints a");
+		out.println("                                       comparison to the last builds.");
+		out.println();
 		out.println("-----------------------------------------------------------------------------");
 		out.println();
 		out.println("    --targets                      Displays all available targets for this");
@@ -1188,6 +1507,24 @@ public final class DoomMakeMain
 		out.println("    --auto-build-verbose           Same as above, except it produces more");
 		out.println("                                       verbose output.");
 		out.println();
+		out.println("The agent runs each build inside its own process, reusing compiled scripts");
+		out.println("between builds. These switches change that:");
+		out.println();
+		out.println("    --auto-build-spawn             Run each build in a new Java process instead.");
+		out.println();
+		out.println("    --auto-build-recycle [num]     Drop the reused build state after [num]");
+		out.println("                                       builds (or sooner, if memory runs low).");
+		out.println("                                       Default: " + AGENT_RECYCLE_BUILDS_DEFAULT);
+		out.println();
+		out.println("    --auto-build-grace [ms]        Wait [ms] milliseconds after the last change");
+		out.println("                                       before building.");
+		out.println("                                       Default: " + AutoBuildAgent.DEFAULT_GRACE_PERIOD_MILLIS);
+		out.println();
+		out.println("    --auto-build-max-delay [ms]    Build at most [ms] milliseconds after the");
+		out.println("                                       first change, even if changes keep");
+		out.println("                                       happening.");
+		out.println("                                       Default: " + AutoBuildAgent.DEFAULT_MAX_DELAY_MILLIS);
+		out.println();
 		out.println("While the agent is listening on a project, any attempt to run any DoomMake");
 		out.println("targets on that project will error out. In order to run targets, you can use:");
 		out.println();
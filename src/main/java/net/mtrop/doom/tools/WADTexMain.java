@@ -6,6 +6,7 @@
 package net.mtrop.doom.tools;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -17,7 +18,17 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.mtrop.doom.WadFile;
 import net.mtrop.doom.object.BinaryObject;
@@ -32,6 +43,7 @@ import net.mtrop.doom.tools.common.Utility;
 import net.mtrop.doom.tools.exception.OptionParseException;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
+import net.mtrop.doom.tools.struct.TokenScanner;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.util.NameUtils;
 import net.mtrop.doom.util.TextureUtils;
@@ -65,6 +77,15 @@ public final class WADTexMain
 	public static final String SWITCH_NAME1 = "--entry-name";
 	public static final String SWITCH_NAME2 = "-n";
 	public static final String SWITCH_STRIFE = "--strife";
+	public static final String SWITCH_BATCH1 = "--batch";
+	public static final String SWITCH_BATCH2 = "-b";
+	public static final String SWITCH_THREADS1 = "--threads";
+	public static final String SWITCH_THREADS2 = "-t";
+
+	private static final String BATCH_MODE_IMPORT = "import";
+	private static final String BATCH_MODE_ADD = "add";
+	private static final String BATCH_MODE_EXPORT = "export";
+	private static final String BATCH_FLAG_STRIFE = "strife";
 
 	public static final String WADTEX_OUTPUT_HEADER = (new StringBuilder())
 		.append("; File generated by WADTEX v").append(Version.WADTEX).append(" by Matt Tropiano").append('\n')
@@ -90,6 +111,8 @@ public final class WADTexMain
 		private File sourceFile;
 		private File wadFile;
 		private String entryName;
+		private File batchFile;
+		private int threads;
 		
 		private Options()
 		{
@@ -105,6 +128,8 @@ public final class WADTexMain
 			this.sourceFile = null;
 			this.wadFile = null;
 			this.entryName = null;
+			this.batchFile = null;
+			this.threads = Runtime.getRuntime().availableProcessors();
 		}
 		
 		public Options setStdout(OutputStream out) 
@@ -161,6 +186,32 @@ public final class WADTexMain
 			return this;
 		}
 		
+		public Options setBatchFile(File batchFile) 
+		{
+			this.batchFile = batchFile;
+			return this;
+		}
+		
+		public Options setThreads(int threads) 
+		{
+			this.threads = threads;
+			return this;
+		}
+		
+	}
+	
+	/**
+	 * A single batch manifest entry.
+	 */
+	private static class BatchEntry
+	{
+		private int line;
+		private File wadFile;
+		private String entryName;
+		private File sourceFile;
+		private boolean exportMode;
+		private boolean additive;
+		private boolean strife;
 	}
 	
 	/**
@@ -175,7 +226,6 @@ public final class WADTexMain
 			this.options = options;
 		}
 
-		@SuppressWarnings("unchecked")
 		@Override
 		public Integer call()
 		{
@@ -205,6 +255,9 @@ public final class WADTexMain
 				return ERROR_NONE;
 			}
 			
+			if (options.batchFile != null)
+				return callBatch();
+			
 			if (options.wadFile == null)
 			{
 				options.stderr.println("ERROR: No WAD file specified.");
@@ -226,48 +279,282 @@ public final class WADTexMain
 				return ERROR_MISSING_DATA;
 			}
 
-			WadFile wad = null;
+			WadFile wad;
+			if ((wad = openWad(options.wadFile, !options.exportMode, options.stderr)) == null)
+				return ERROR_BAD_INPUTOUTPUT_FILE;
+			
+			try
+			{
+				PatchNames patchNames = readPatchNames(wad);
+				String textureLumpName = options.entryName != null 
+					? NameUtils.toValidEntryName(options.entryName)
+					: NameUtils.toValidEntryName(FileUtils.getFileNameWithoutExtension(options.sourceFile));
+				return processTextureLump(
+					wad, options.wadFile, patchNames, textureLumpName, options.sourceFile, 
+					options.exportMode, options.additive, options.strife, 
+					options.stdout, options.stderr
+				);
+			}
+			catch (IOException e)
+			{
+				options.stderr.printf("ERROR: %s\n", e.getLocalizedMessage());
+				return ERROR_BAD_INPUTOUTPUT_FILE;
+			}
+			finally
+			{
+				IOUtils.close(wad);
+			}
+		}
+		
+		/**
+		 * Processes a batch manifest.
+		 * Entries that refer to the same WAD are processed in manifest order on one open WAD,
+		 * sharing one read of its PNAMES. Different WADs are processed in parallel.
+		 * @return the error code.
+		 */
+		private int callBatch()
+		{
+			List<BatchEntry> entries;
+			try {
+				entries = readBatchFile(options.batchFile);
+			} catch (FileNotFoundException e) {
+				options.stderr.printf("ERROR: File %s not found.\n", options.batchFile.getPath());
+				return ERROR_BAD_INPUTOUTPUT_FILE;
+			} catch (IOException e) {
+				options.stderr.printf("ERROR: %s\n", e.getLocalizedMessage());
+				return ERROR_BAD_INPUTOUTPUT_FILE;
+			} catch (ParseException e) {
+				options.stderr.printf("ERROR: %s, %s\n", options.batchFile.getPath(), e.getLocalizedMessage());
+				return ERROR_BAD_PARSE;
+			}
+			
+			if (entries.isEmpty())
+			{
+				options.stderr.printf("ERROR: No entries in batch file %s.\n", options.batchFile.getPath());
+				return ERROR_MISSING_DATA;
+			}
+			
+			// Group by WAD, keeping first-seen order.
+			Map<File, List<BatchEntry>> wadGroups = new LinkedHashMap<>();
+			for (BatchEntry entry : entries)
+			{
+				File key;
+				try {
+					key = entry.wadFile.getCanonicalFile();
+				} catch (IOException e) {
+					key = entry.wadFile.getAbsoluteFile();
+				}
+				wadGroups.computeIfAbsent(key, (k) -> new LinkedList<>()).add(entry);
+			}
+			
+			int threadCount = Math.max(1, Math.min(options.threads, wadGroups.size()));
+			final AtomicInteger threadId = new AtomicInteger(0);
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+				Thread out = new Thread(runnable, "WADTexWorker-" + threadId.getAndIncrement());
+				out.setDaemon(true);
+				return out;
+			});
+			
+			int result = ERROR_NONE;
+			try {
+				List<WadBatch> batches = new ArrayList<>(wadGroups.size());
+				List<Future<Integer>> results = new ArrayList<>(wadGroups.size());
+				for (List<BatchEntry> group : wadGroups.values())
+				{
+					WadBatch batch = new WadBatch(group);
+					batches.add(batch);
+					results.add(executor.submit(batch));
+				}
+				
+				// Report in manifest order.
+				for (int i = 0; i < batches.size(); i++)
+				{
+					WadBatch batch = batches.get(i);
+					int batchResult;
+					try {
+						batchResult = results.get(i).get();
+					} catch (ExecutionException e) {
+						batch.err.printf("ERROR: %s\n", e.getCause().getLocalizedMessage());
+						batchResult = ERROR_UNKNOWN;
+					}
+					batch.flush(options.stdout, options.stderr);
+					if (result == ERROR_NONE)
+						result = batchResult;
+				}
+			} catch (InterruptedException e) {
+				options.stderr.println("ERROR: Batch interrupted.");
+				result = ERROR_UNKNOWN;
+			} finally {
+				executor.shutdownNow();
+			}
+			
+			return result;
+		}
+		
+		/**
+		 * Reads a batch manifest.
+		 * Each non-blank line is: <code>[wadfile] [entryname or -] [deutexfile] [import | add | export] (strife)</code>.
+		 * Lines that start with <code>#</code> or <code>;</code> are comments.
+		 * Relative paths are resolved against the manifest's parent directory.
+		 */
+		private List<BatchEntry> readBatchFile(File batchFile) throws IOException, ParseException
+		{
+			List<BatchEntry> out = new LinkedList<>();
+			File parent = batchFile.getAbsoluteFile().getParentFile();
+			int i = 0;
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(batchFile))))
+			{
+				String line;
+				while ((line = br.readLine()) != null)
+				{
+					i++;
+					line = line.trim();
+					if (line.length() == 0)
+						continue;
+					if (line.startsWith("#") || line.startsWith(";"))
+						continue;
+					
+					try (TokenScanner scanner = new TokenScanner(line))
+					{
+						BatchEntry entry = new BatchEntry();
+						entry.line = i;
+						
+						if (!scanner.hasNext())
+							throw new ParseException("Line " + i + ": Expected WAD file.");
+						entry.wadFile = resolveFile(parent, scanner.nextString());
+						
+						if (!scanner.hasNext())
+							throw new ParseException("Line " + i + ": Expected entry name (or \"-\") after WAD file.");
+						String entryName = scanner.nextString();
+						
+						if (!scanner.hasNext())
+							throw new ParseException("Line " + i + ": Expected DEUTEX file after entry name.");
+						entry.sourceFile = resolveFile(parent, scanner.nextString());
+						entry.entryName = "-".equals(entryName) 
+							? NameUtils.toValidEntryName(FileUtils.getFileNameWithoutExtension(entry.sourceFile))
+							: NameUtils.toValidEntryName(entryName);
+						
+						if (!scanner.hasNext())
+							throw new ParseException("Line " + i + ": Expected mode (import, add, export) after DEUTEX file.");
+						String mode = scanner.nextString();
+						if (BATCH_MODE_IMPORT.equalsIgnoreCase(mode))
+						{
+							entry.exportMode = false;
+							entry.additive = false;
+						}
+						else if (BATCH_MODE_ADD.equalsIgnoreCase(mode))
+						{
+							entry.exportMode = false;
+							entry.additive = true;
+						}
+						else if (BATCH_MODE_EXPORT.equalsIgnoreCase(mode))
+						{
+							entry.exportMode = true;
+							entry.additive = false;
+						}
+						else
+							throw new ParseException("Line " + i + ": Expected mode (import, add, export) after DEUTEX file.");
+						
+						entry.strife = options.strife;
+						if (scanner.hasNext())
+						{
+							String flag = scanner.nextString();
+							if (BATCH_FLAG_STRIFE.equalsIgnoreCase(flag))
+								entry.strife = true;
+							else
+								throw new ParseException("Line " + i + ": Unexpected token: " + flag);
+						}
+						
+						out.add(entry);
+					}
+				}
+			}
+			return out;
+		}
+		
+		// Resolves a manifest path.
+		private File resolveFile(File parent, String path)
+		{
+			File out = new File(path);
+			return out.isAbsolute() || parent == null ? out : new File(parent, path);
+		}
+		
+		/**
+		 * Opens a WAD file, reporting errors.
+		 * @param wadFile the WAD file.
+		 * @param create if true, create it if it does not exist.
+		 * @param err the error stream.
+		 * @return the open WAD, or null on error.
+		 */
+		private WadFile openWad(File wadFile, boolean create, PrintStream err)
+		{
 			try 
 			{
-				if (!options.exportMode && !options.wadFile.exists())
-					wad = WadFile.createWadFile(options.wadFile);
+				if (create && !wadFile.exists())
+					return WadFile.createWadFile(wadFile);
 				else
-					wad = new WadFile(options.wadFile);
+					return new WadFile(wadFile);
 			}
 			catch (FileNotFoundException e)
 			{
-				options.stderr.printf("ERROR: File %s not found.\n", options.wadFile.getPath());
-				return ERROR_BAD_INPUTOUTPUT_FILE;
+				err.printf("ERROR: File %s not found.\n", wadFile.getPath());
+				return null;
 			}
 			catch (IOException e)
 			{
-				options.stderr.printf("ERROR: %s.\n", e.getLocalizedMessage());
-				return ERROR_BAD_INPUTOUTPUT_FILE;
+				err.printf("ERROR: %s.\n", e.getLocalizedMessage());
+				return null;
 			}
 			catch (SecurityException e)
 			{
-				options.stderr.printf("ERROR: File %s not readable (access denied).\n", options.wadFile.getPath());
-				return ERROR_BAD_INPUTOUTPUT_FILE;
+				err.printf("ERROR: File %s not readable (access denied).\n", wadFile.getPath());
+				return null;
 			}
+		}
+		
+		// Reads PNAMES from a WAD, or returns a new one if not present.
+		private PatchNames readPatchNames(WadFile wad) throws IOException
+		{
+			PatchNames patchNames;
+			if ((patchNames = wad.getDataAs("PNAMES", PatchNames.class)) == null)
+				patchNames = new PatchNames();
+			return patchNames;
+		}
 		
+		/**
+		 * Imports or exports a single texture lump.
+		 * @param wad the open WAD.
+		 * @param wadFile the WAD file (for output).
+		 * @param patchNames the WAD's current patch names. Altered on import.
+		 * @param textureLumpName the texture lump name.
+		 * @param sourceFile the DEUTEX file to read or write.
+		 * @param exportMode if true, export, else import.
+		 * @param additive if true (on import), append to the existing texture lump.
+		 * @param forceStrife if true, force Strife format.
+		 * @param out the output stream.
+		 * @param err the error stream.
+		 * @return the error code.
+		 * @throws IOException if a WAD read/write error occurs.
+		 */
+		private int processTextureLump(
+			WadFile wad, 
+			File wadFile,
+			PatchNames patchNames, 
+			String textureLumpName, 
+			File sourceFile, 
+			boolean exportMode, 
+			boolean additive, 
+			boolean forceStrife, 
+			PrintStream out, 
+			PrintStream err
+		) throws IOException
+		{
 			String streamName = null;
 			BufferedReader reader = null;
 			PrintWriter writer = null;
 		
 			try
 			{
-				PatchNames patchNames;
-				boolean replacePatchNames = true;
-				if ((patchNames = wad.getDataAs("PNAMES", PatchNames.class)) == null)
-				{
-					patchNames = new PatchNames();
-					replacePatchNames = false;
-				}
-		
-				String textureLumpName = options.entryName != null 
-					? NameUtils.toValidEntryName(options.entryName)
-					: NameUtils.toValidEntryName(FileUtils.getFileNameWithoutExtension(options.sourceFile));
-			
 				CommonTextureList<?> textures;
 				boolean replaceTextures;
 				boolean strife;
@@ -276,7 +563,7 @@ public final class WADTexMain
 					replaceTextures = true;
 					byte[] data = wad.getData(textureLumpName);
 					
-					if (options.additive)
+					if (additive)
 					{
 						if (TextureUtils.isStrifeTextureData(data))
 						{
@@ -289,7 +576,7 @@ public final class WADTexMain
 							textures = BinaryObject.create(DoomTextureList.class, data);
 						}
 					}
-					else if (options.strife)
+					else if (forceStrife)
 					{
 						strife = true;
 						textures = new StrifeTextureList();
@@ -300,7 +587,7 @@ public final class WADTexMain
 						textures = new DoomTextureList();
 					}
 				}
-				else if (options.strife)
+				else if (forceStrife)
 				{
 					replaceTextures = false;
 					strife = true;
@@ -314,104 +601,175 @@ public final class WADTexMain
 				}
 				
 				// Force Strife format if specified.
-				if (options.strife)
+				if (forceStrife)
 					strife = true;
 				
 				TextureSet textureSet;
 				
-				if (options.exportMode)
+				if (exportMode)
 				{
 					textureSet = new TextureSet(patchNames, textures);
 		
 					try
 					{
-						writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.sourceFile), Charset.forName("ASCII")), true);
-						streamName = options.sourceFile.getPath();
+						writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(sourceFile), Charset.forName("ASCII")), true);
+						streamName = sourceFile.getPath();
 					}
 					catch (IOException e)
 					{
-						options.stderr.printf("ERROR: File %s not writable.\n", options.sourceFile.getPath());
+						err.printf("ERROR: File %s not writable.\n", sourceFile.getPath());
 						return ERROR_BAD_INPUTOUTPUT_FILE;
 					}
 					catch (SecurityException e)
 					{
-						options.stderr.printf("ERROR: File %s not writable (access denied).\n", options.sourceFile.getPath());
+						err.printf("ERROR: File %s not writable (access denied).\n", sourceFile.getPath());
 						return ERROR_BAD_INPUTOUTPUT_FILE;
 					}
 		
 					Utility.writeDEUTEXFile(textureSet, WADTEX_OUTPUT_HEADER, writer);
-					options.stdout.printf("Wrote `%s`.\n", streamName);
+					out.printf("Wrote `%s`.\n", streamName);
 				}
 				else // import mode
 				{
 					try
 					{
-						reader = new BufferedReader(new InputStreamReader(new FileInputStream(options.sourceFile)));
-						streamName = options.sourceFile.getPath();
+						reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFile)));
+						streamName = sourceFile.getPath();
 					}
 					catch (FileNotFoundException e)
 					{
-						options.stderr.printf("ERROR: File %s not found.\n", options.sourceFile.getPath());
+						err.printf("ERROR: File %s not found.\n", sourceFile.getPath());
 						return ERROR_BAD_INPUTOUTPUT_FILE;
 					}
 					catch (SecurityException e)
 					{
-						options.stderr.printf("ERROR: File %s not readable (access denied).\n", options.sourceFile.getPath());
+						err.printf("ERROR: File %s not readable (access denied).\n", sourceFile.getPath());
 						return ERROR_BAD_INPUTOUTPUT_FILE;
 					}
 		
-					textureSet = Utility.readDEUTEXFile(reader, patchNames, textures);
-					if (strife)
-						textureSet.export(patchNames, (CommonTextureList<StrifeTextureList.Texture>)(textures = new StrifeTextureList(128)));
-					else
-						textureSet.export(patchNames, (CommonTextureList<DoomTextureList.Texture>)(textures = new DoomTextureList(128)));
+					textureSet = additive && replaceTextures
+						? Utility.mergeDEUTEXFile(reader, patchNames, textures)
+						: Utility.readDEUTEXFile(reader, patchNames, textures);
+					textures = strife ? new StrifeTextureList(128) : new DoomTextureList(128);
+					Utility.exportTextureSet(textureSet, patchNames, textures);
 		
-					if (replacePatchNames)
+					int patchNamesIndex;
+					if ((patchNamesIndex = wad.indexOf("PNAMES")) >= 0)
 					{
-						wad.replaceEntry(wad.indexOf("PNAMES"), patchNames);
+						wad.replaceEntry(patchNamesIndex, patchNames);
 						if (options.verbose)
-							options.stdout.printf("Replaced `PNAMES` in `%s`.\n", options.wadFile.getPath());
+							out.printf("Replaced `PNAMES` in `%s`.\n", wadFile.getPath());
 					}
 					else
 					{
 						wad.addData("PNAMES", patchNames);
 						if (options.verbose)
-							options.stdout.printf("Added `PNAMES` to `%s`.\n", options.wadFile.getPath());
+							out.printf("Added `PNAMES` to `%s`.\n", wadFile.getPath());
 					}
 					
 					if (replaceTextures)
 					{
 						wad.replaceEntry(wad.indexOf(textureLumpName), textures);
 						if (options.verbose)
-							options.stdout.printf("Replaced `%s` in `%s`.\n", textureLumpName, options.wadFile.getPath());
+							out.printf("Replaced `%s` in `%s`.\n", textureLumpName, wadFile.getPath());
 					}
 					else
 					{
 						wad.addData(textureLumpName, textures);
 						if (options.verbose)
-							options.stdout.printf("Added `%s` to `%s`.\n", textureLumpName, options.wadFile.getPath());
+							out.printf("Added `%s` to `%s`.\n", textureLumpName, wadFile.getPath());
 					}
 					
-					options.stdout.printf("Imported into `%s`.\n", options.wadFile.getPath());
+					out.printf("Imported into `%s`.\n", wadFile.getPath());
 				}
 				
 				return ERROR_NONE;
 			}
-			catch (IOException e)
-			{
-				options.stderr.printf("ERROR: %s\n", e.getLocalizedMessage());
-				return ERROR_BAD_INPUTOUTPUT_FILE;
-			}
 			catch (ParseException e)
 			{
-				options.stderr.printf("ERROR: %s, %s\n", streamName, e.getLocalizedMessage());
+				err.printf("ERROR: %s, %s\n", streamName, e.getLocalizedMessage());
 				return ERROR_BAD_PARSE;
 			}
 			finally
 			{
 				IOUtils.close(reader);
 				IOUtils.close(writer);
-				IOUtils.close(wad);
+			}
+		}
+		
+		/**
+		 * All batch entries for one WAD, with buffered output for in-order reporting.
+		 */
+		private class WadBatch implements Callable<Integer>
+		{
+			private List<BatchEntry> entries;
+			private ByteArrayOutputStream outBuffer;
+			private ByteArrayOutputStream errBuffer;
+			private PrintStream out;
+			private PrintStream err;
+			
+			private WadBatch(List<BatchEntry> entries)
+			{
+				this.entries = entries;
+				this.outBuffer = new ByteArrayOutputStream();
+				this.errBuffer = new ByteArrayOutputStream();
+				this.out = new PrintStream(outBuffer, true);
+				this.err = new PrintStream(errBuffer, true);
+			}
+			
+			@Override
+			public Integer call()
+			{
+				BatchEntry first = entries.get(0);
+				boolean create = false;
+				for (BatchEntry entry : entries)
+					create = create || !entry.exportMode;
+				
+				WadFile wad;
+				if ((wad = openWad(first.wadFile, create, err)) == null)
+					return ERROR_BAD_INPUTOUTPUT_FILE;
+
+				int result = ERROR_NONE;
+				BatchEntry current = first;
+				try
+				{
+					PatchNames patchNames = readPatchNames(wad);
+					for (BatchEntry entry : entries)
+					{
+						current = entry;
+						int entryResult = processTextureLump(
+							wad, entry.wadFile, patchNames, entry.entryName, entry.sourceFile, 
+							entry.exportMode, entry.additive, entry.strife, 
+							out, err
+						);
+						if (entryResult != ERROR_NONE)
+						{
+							err.printf("ERROR: Batch line %d failed.\n", entry.line);
+							if (result == ERROR_NONE)
+								result = entryResult;
+						}
+					}
+				}
+				catch (IOException e)
+				{
+					err.printf("ERROR: Batch line %d: %s\n", current.line, e.getLocalizedMessage());
+					if (result == ERROR_NONE)
+						result = ERROR_BAD_INPUTOUTPUT_FILE;
+				}
+				finally
+				{
+					IOUtils.close(wad);
+				}
+				return result;
+			}
+			
+			// Writes the buffered output to the target streams.
+			private void flush(PrintStream stdout, PrintStream stderr)
+			{
+				out.flush();
+				err.flush();
+				stdout.print(new String(outBuffer.toByteArray()));
+				stderr.print(new String(errBuffer.toByteArray()));
 			}
 		}
 		
@@ -434,6 +792,8 @@ public final class WADTexMain
 		final int STATE_START = 0;
 		final int STATE_IMPORTEXPORT = 1;
 		final int STATE_NAMEOVERRIDE = 2;
+		final int STATE_BATCH = 3;
+		final int STATE_THREADS = 4;
 		int state = STATE_START;
 		
 		int i = 0;
@@ -470,6 +830,14 @@ public final class WADTexMain
 					{
 						state = STATE_NAMEOVERRIDE;
 					}
+					else if (arg.equals(SWITCH_BATCH1) || arg.equals(SWITCH_BATCH2))
+					{
+						state = STATE_BATCH;
+					}
+					else if (arg.equals(SWITCH_THREADS1) || arg.equals(SWITCH_THREADS2))
+					{
+						state = STATE_THREADS;
+					}
 					else
 						options.wadFile = new File(arg);
 				}
@@ -488,6 +856,28 @@ public final class WADTexMain
 					state = STATE_START;
 				}
 				break;
+				
+				case STATE_BATCH:
+				{
+					options.batchFile = new File(arg);
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_THREADS:
+				{
+					int n;
+					try {
+						n = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						throw new OptionParseException("ERROR: Thread count needs to be a number greater than 0.");
+					}
+					if (n < 1)
+						throw new OptionParseException("ERROR: Thread count needs to be a number greater than 0.");
+					options.threads = n;
+					state = STATE_START;
+				}
+				break;
 			}
 			i++;
 		}
@@ -496,6 +886,10 @@ public final class WADTexMain
 			throw new OptionParseException("ERROR: Expected file after import/export switch.");
 		if (state == STATE_NAMEOVERRIDE)
 			throw new OptionParseException("ERROR: Expected file after name switch.");
+		if (state == STATE_BATCH)
+			throw new OptionParseException("ERROR: Expected file after batch switch.");
+		if (state == STATE_THREADS)
+			throw new OptionParseException("ERROR: Expected number after thread count switch.");
 
 		
 		return options;
@@ -560,6 +954,7 @@ public final class WADTexMain
 	private static void usage(PrintStream out)
 	{
 		out.println("Usage: wadtex [--help | -h | --version] [file] [mode] [switches]");
+		out.println("       wadtex --batch [manifest] [switches]");
 	}
 
 	/**
@@ -597,9 +992,27 @@ public final class WADTexMain
 		out.println();
 	    out.println("    --strife            Force Strife format on import (conversion or new).");
 		out.println();
+	    out.println("    --batch [manifest]  Batch mode. Reads a list of import/export jobs from");
+	    out.println("    -b [manifest]       [manifest], one per line:");
+	    out.println();
+	    out.println("                            [wad] [entry] [deutexfile] [mode] (strife)");
+	    out.println();
+	    out.println("                        [entry] is the texture lump name, or \"-\" to take it");
+	    out.println("                        from [deutexfile]'s name. [mode] is \"import\",");
+	    out.println("                        \"add\", or \"export\". Lines starting with \"#\" or");
+	    out.println("                        \";\" are comments. Relative paths are relative to");
+	    out.println("                        the manifest file.");
+	    out.println("                        Each WAD is opened once and its PNAMES read once,");
+	    out.println("                        and jobs on the same WAD run in manifest order.");
+	    out.println("                        Different WADs are processed in parallel.");
+		out.println();
 		out.println("[switches]:");
 		out.println("    --verbose           Prints verbose output.");
 		out.println("    -v");
+		out.println();
+		out.println("    --threads [num]     Sets the maximum amount of WADs processed at once in");
+		out.println("    -t [num]            batch mode. Default is the amount of available");
+		out.println("                        processors.");
 	}
 
 }
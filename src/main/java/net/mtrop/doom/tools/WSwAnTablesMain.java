@@ -18,6 +18,8 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import net.mtrop.doom.WadFile;
@@ -25,6 +27,7 @@ import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.texture.Animated;
 import net.mtrop.doom.texture.Switches;
 import net.mtrop.doom.tools.common.ParseException;
+import net.mtrop.doom.tools.common.SwitchAnimatedMerger;
 import net.mtrop.doom.tools.common.Utility;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
@@ -54,6 +57,8 @@ public final class WSwAnTablesMain
 	public static final String SWITCH_IMPORT2 = "-i";
 	public static final String SWITCH_ADDSOURCE1 = "--import-source";
 	public static final String SWITCH_ADDSOURCE2 = "-s";
+	public static final String SWITCH_MERGE1 = "--merge";
+	public static final String SWITCH_MERGE2 = "-m";
 
 	public static final String SWANTBLS_OUTPUT_HEADER = (new StringBuilder())
 		.append("# Table file generated by WSWANTBL v").append(Version.WSWANTBL).append(" by Matt Tropiano")
@@ -76,6 +81,7 @@ public final class WSwAnTablesMain
 		private boolean importSource;
 		private File sourceFile;
 		private File wadFile;
+		private List<File> mergeSources;
 		
 		private Options()
 		{
@@ -91,6 +97,7 @@ public final class WSwAnTablesMain
 			this.importSource = false;
 			this.sourceFile = null;
 			this.wadFile = null;
+			this.mergeSources = new LinkedList<>();
 		}
 		
 		public Options setStdout(OutputStream out) 
@@ -134,6 +141,12 @@ public final class WSwAnTablesMain
 			return this;
 		}
 		
+		public Options addMergeSource(File mergeSource)
+		{
+			this.mergeSources.add(mergeSource);
+			return this;
+		}
+		
 	}
 	
 	/**
@@ -244,6 +257,24 @@ public final class WSwAnTablesMain
 					switches = new Switches();
 					replaceSwitches = false;
 				}
+				
+				// Merge sources, if any, into the WAD's tables: later entries replace earlier ones.
+				SwitchAnimatedMerger merger = null;
+				if (!options.mergeSources.isEmpty())
+				{
+					merger = new SwitchAnimatedMerger(true);
+					merger.addAll(animated, switches);
+					for (File source : options.mergeSources)
+					{
+						streamName = source.getPath();
+						merger.addSource(source);
+						if (options.verbose)
+							options.stdout.printf("Merged `%s`.\n", source.getPath());
+					}
+					streamName = null;
+					animated = merger.createAnimated();
+					switches = merger.createSwitches();
+				}
 		
 				if (options.exportMode)
 				{
@@ -287,7 +318,16 @@ public final class WSwAnTablesMain
 						return ERROR_BAD_INPUTOUTPUT_FILE;
 					}
 		
-					Utility.readSwitchAnimatedTables(reader, animated, switches);
+					if (merger != null)
+					{
+						merger.addSwitchAnimatedTables(reader);
+						animated = merger.createAnimated();
+						switches = merger.createSwitches();
+					}
+					else
+					{
+						Utility.readSwitchAnimatedTables(reader, animated, switches);
+					}
 		
 					if (replaceAnimated)
 					{
@@ -371,6 +411,7 @@ public final class WSwAnTablesMain
 
 		final int STATE_START = 0;
 		final int STATE_IMPORTEXPORT = 1;
+		final int STATE_MERGE = 2;
 		int state = STATE_START;
 		
 		int i = 0;
@@ -391,6 +432,8 @@ public final class WSwAnTablesMain
 						options.version = true;
 					else if (arg.equals(SWITCH_ADDSOURCE1) || arg.equals(SWITCH_ADDSOURCE2))
 						options.importSource = true;
+					else if (arg.equals(SWITCH_MERGE1) || arg.equals(SWITCH_MERGE2))
+						state = STATE_MERGE;
 					else if (arg.equals(SWITCH_EXPORT1) || arg.equals(SWITCH_EXPORT2))
 					{
 						state = STATE_IMPORTEXPORT;
@@ -412,6 +455,13 @@ public final class WSwAnTablesMain
 					state = STATE_START;
 				}
 				break;
+				
+				case STATE_MERGE:
+				{
+					options.mergeSources.add(new File(arg));
+					state = STATE_START;
+				}
+				break;
 			}
 			i++;
 		}
@@ -501,6 +551,14 @@ public final class WSwAnTablesMain
 	    out.println("    --import-source     If Import Mode is active, the source is imported");
 	    out.println("    -s                  as \"DEFSWANI\" in the WAD file, as well.");
 		out.println();
+	    out.println("    --merge [srcfile]   Merges the ANIMATED and SWITCHES tables of [srcfile]");
+	    out.println("    -m [srcfile]        (a WAD or a SWANTBLS/DEFSWANI text file) with [file]'s");
+	    out.println("                        tables before export or import. Can be specified");
+	    out.println("                        more than once. Sources are merged in order: an");
+	    out.println("                        entry with the same name as an earlier one (by");
+	    out.println("                        starting texture/flat, or \"off\" switch texture)");
+	    out.println("                        replaces it.");
+		out.println();
 		out.println("[switches]:");
 		out.println("    --verbose           Prints verbose output.");
 		out.println("    -v");
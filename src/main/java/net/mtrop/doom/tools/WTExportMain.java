@@ -38,6 +38,7 @@ import net.mtrop.doom.texture.StrifeTextureList;
 import net.mtrop.doom.texture.Switches;
 import net.mtrop.doom.texture.TextureSet;
 import net.mtrop.doom.texture.TextureSet.Texture;
+import net.mtrop.doom.tools.common.SwitchAnimatedMerger;
 import net.mtrop.doom.tools.exception.OptionParseException;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
@@ -902,35 +903,30 @@ public final class WTExportMain
 		 */
 		private boolean mergeAnimatedAndSwitches(ExportSet exportSet)
 		{
+			// Priority order: the first WAD that provides an entry wins.
+			SwitchAnimatedMerger merger = new SwitchAnimatedMerger(false);
+			
+			Set<String> textureNames = new HashSet<>();
+			for (TextureSet.Texture texture : exportSet.textureSet)
+				textureNames.add(texture.getName());
+			
 			if (!options.noAnimated)
 			{
 				options.println("    Merging ANIMATED...");
 				for (WadUnit unit : wadPriority)
 				{
 					// did we pull any animated textures? if so, copy the entries.
-					
 					for (Animated.Entry entry : unit.animated)
 					{
 						if (entry.isTexture())
 						{
-							if (exportSet.textureSet.contains(entry.getFirstName()))
-							{
-								exportSet.animatedData.addEntry(Animated.texture(entry.getLastName(), entry.getFirstName(), entry.getTicks(), entry.getAllowsDecals()));
+							if (textureNames.contains(entry.getFirstName()) && merger.addAnimated(entry))
 								options.printf("        Texture %s to %s (%d tics)...\n", entry.getFirstName(), entry.getLastName(), entry.getTicks());
-							}
 						}
 						else
 						{
-							if (exportSet.flatHash.contains(entry.getFirstName()))
-							{
-								exportSet.animatedData.addEntry(Animated.flat(entry.getLastName(), entry.getFirstName(), entry.getTicks()));
+							if ((exportSet.flatHash.contains(entry.getFirstName()) || baseUnit.flatIndices.containsKey(entry.getFirstName())) && merger.addAnimated(entry))
 								options.printf("        Flat %s to %s (%d tics)...\n", entry.getFirstName(), entry.getLastName(), entry.getTicks());
-							}
-							else if (baseUnit.flatIndices.containsKey(entry.getFirstName()))
-							{
-								exportSet.animatedData.addEntry(Animated.flat(entry.getLastName(), entry.getFirstName(), entry.getTicks()));
-								options.printf("        Flat %s to %s (%d tics)...\n", entry.getFirstName(), entry.getLastName(), entry.getTicks());
-							}
 						}
 					}
 				}
@@ -944,20 +940,14 @@ public final class WTExportMain
 					// did we pull any switch textures? if so, copy the entries.
 					for (Switches.Entry entry : unit.switches)
 					{
-						if (exportSet.textureSet.contains(entry.getOffName()))
-						{
-							exportSet.switchesData.addEntry(entry.getOffName(), entry.getOnName(), entry.getGame());
+						if ((textureNames.contains(entry.getOffName()) || textureNames.contains(entry.getOnName())) && merger.addSwitch(entry))
 							options.printf("        Switch %s / %s (%s)...\n", entry.getOffName(), entry.getOnName(), entry.getGame().name());
-						}
-						else if (exportSet.textureSet.contains(entry.getOnName()))
-						{
-							exportSet.switchesData.addEntry(entry.getOffName(), entry.getOnName(), entry.getGame());
-							options.printf("        Switch %s / %s (%s)...\n", entry.getOffName(), entry.getOnName(), entry.getGame().name());
-						}
 					}
 				}
 			}
 			
+			exportSet.animatedData = merger.createAnimated();
+			exportSet.switchesData = merger.createSwitches();
 			return true;
 		}
 
@@ -6,6 +6,8 @@
 package net.mtrop.doom.tools;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -16,8 +18,15 @@ import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 
 import com.blackrook.rookscript.Script;
@@ -64,6 +73,7 @@ import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.tools.struct.util.ObjectUtils;
 import net.mtrop.doom.tools.wadscript.DoomMapFunctions;
 import net.mtrop.doom.tools.wadscript.PK3Functions;
+import net.mtrop.doom.tools.wadscript.ScriptProfiler;
 import net.mtrop.doom.tools.wadscript.UtilityFunctions;
 import net.mtrop.doom.tools.wadscript.WadFunctions;
 
@@ -108,6 +118,8 @@ public final class WadScriptMain
 	public static final String SWITCH_RUNAWAYLIMIT1 = "--runaway-limit";
 	public static final String SWITCH_ACTIVATIONDEPTH1 = "--activation-depth";
 	public static final String SWITCH_STACKDEPTH1 = "--stack-depth";
+	public static final String SWITCH_PROFILE1 = "--profile";
+	public static final String SWITCH_PROFILECOLLAPSED1 = "--profile-collapsed";
 	public static final String SWITCH_SEPARATOR = "--";
 	public static final String SWITCH_SEPARATORBASH = "--X";
 	
@@ -150,6 +162,21 @@ public final class WadScriptMain
 		new Scope("GLOBAL", new DefaultVariableResolver())
 	};
 	
+	/** Maximum amount of compiled scripts kept for reuse. */
+	private static final int COMPILED_SCRIPTS_MAX = 16;
+	
+	/** Compiled scripts, by absolute script path and charset, least recently used first. */
+	private static final Map<String, CompiledScript> COMPILED_SCRIPTS = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = -2830455310426582163L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest)
+		{
+			return size() > COMPILED_SCRIPTS_MAX;
+		}
+	};
+	
 	/**
 	 * A resolver encapsulator for all scripts.
 	 */
@@ -189,6 +216,98 @@ public final class WadScriptMain
 		}
 	}
 	
+	/**
+	 * A compiled script, plus what it was compiled from and against.
+	 * It is reusable as long as none of its source files changed (by content), and it is used with the same 
+	 * function resolvers and scopes. A compiled script may hold on to the resolvers and scopes it was compiled with,
+	 * so both are compared by identity.
+	 */
+	private static class CompiledScript
+	{
+		private final Script script;
+		private final Resolver[] resolvers;
+		private final ScriptVariableResolver[] scopes;
+		private final File[] sources;
+		private final long[] lengths;
+		private final byte[][] hashes;
+
+		private CompiledScript(Script script, List<Resolver> resolvers, List<Scope> scopes, List<File> sources) throws IOException
+		{
+			this.script = script;
+			this.resolvers = resolvers.toArray(new Resolver[resolvers.size()]);
+			this.scopes = new ScriptVariableResolver[scopes.size()];
+			for (int i = 0; i < this.scopes.length; i++)
+				this.scopes[i] = scopes.get(i).variableResolver;
+			this.sources = sources.toArray(new File[sources.size()]);
+			this.lengths = new long[this.sources.length];
+			this.hashes = new byte[this.sources.length][];
+			for (int i = 0; i < this.sources.length; i++)
+			{
+				this.lengths[i] = this.sources[i].length();
+				this.hashes[i] = hashFile(this.sources[i]);
+			}
+		}
+
+		/**
+		 * Checks if this script can be reused.
+		 * @param resolvers the added resolvers that the script would be used with.
+		 * @param scopes the scopes that the script would be used with.
+		 * @return true if the resolvers and scopes are the same and no source file changed since compile.
+		 */
+		private boolean isCurrent(List<Resolver> resolvers, List<Scope> scopes)
+		{
+			if (this.scopes.length != scopes.size())
+				return false;
+			for (int i = 0; i < this.scopes.length; i++)
+			{
+				if (this.scopes[i] != scopes.get(i).variableResolver)
+					return false;
+			}
+
+			if (this.resolvers.length != resolvers.size())
+				return false;
+			int r = 0;
+			for (Resolver resolver : resolvers)
+			{
+				Resolver compiled = this.resolvers[r++];
+				if (compiled.resolver != resolver.resolver 
+					|| !Objects.equals(compiled.sectionName, resolver.sectionName) 
+					|| !Objects.equals(compiled.namespace, resolver.namespace)
+				)
+					return false;
+			}
+			try {
+				for (int i = 0; i < sources.length; i++)
+				{
+					if (lengths[i] != sources[i].length() || !Arrays.equals(hashes[i], hashFile(sources[i])))
+						return false;
+				}
+			} catch (IOException e) {
+				return false;
+			}
+			return true;
+		}
+		
+		// Hashes a source file's contents.
+		private static byte[] hashFile(File file) throws IOException
+		{
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException("SHA-1 is not available.", e);
+			}
+			try (InputStream in = new FileInputStream(file))
+			{
+				byte[] buffer = new byte[8192];
+				int buf;
+				while ((buf = in.read(buffer)) > 0)
+					digest.update(buffer, 0, buf);
+			}
+			return digest.digest();
+		}
+	}
+
 	private interface UsageRendererType
 	{
 		/**
@@ -760,6 +879,9 @@ public final class WadScriptMain
 		private Integer runawayLimit;
 		private Integer activationDepth;
 		private Integer stackDepth;
+		private boolean isolated;
+		private boolean profile;
+		private File profileCollapsedFile;
 		private List<Object> parameterList;
 		private List<Object> argList;
 		private List<Resolver> resolvers;
@@ -779,6 +901,9 @@ public final class WadScriptMain
 			this.runawayLimit = 0;
 			this.activationDepth = 256;
 			this.stackDepth = 2048;
+			this.isolated = false;
+			this.profile = false;
+			this.profileCollapsedFile = null;
 			this.parameterList = new LinkedList<>();
 			this.argList = new LinkedList<>();
 			this.resolvers = new LinkedList<>();
@@ -855,6 +980,30 @@ public final class WadScriptMain
 			return this;
 		}
 		
+		/**
+		 * Sets if the script instance gets its own fresh copies of the built-in scopes,
+		 * instead of the ones shared by this process (for repeated runs in the same process).
+		 * @param isolated true to isolate, false to share.
+		 * @return this Options object.
+		 */
+		public Options setIsolated(boolean isolated)
+		{
+			this.isolated = isolated;
+			return this;
+		}
+		
+		public Options setProfile(boolean profile)
+		{
+			this.profile = profile;
+			return this;
+		}
+		
+		public Options setProfileCollapsedFile(File profileCollapsedFile)
+		{
+			this.profileCollapsedFile = profileCollapsedFile;
+			return this;
+		}
+		
 		public Options addEntryParameterArg(Object arg)
 		{
 			this.parameterList.add(arg);
@@ -890,10 +1039,12 @@ public final class WadScriptMain
 	private static class Context implements Callable<Integer>
 	{
 		private Options options;
+		private ScriptProfiler profiler;
 		
 		private Context(Options options)
 		{
 			this.options = options;
+			this.profiler = null;
 		}
 		
 		@Override
@@ -1003,87 +1154,13 @@ public final class WadScriptMain
 		
 			ScriptInstance instance;
 			
+			if (options.mode == Mode.EXECUTE && (options.profile || options.profileCollapsedFile != null))
+				profiler = new ScriptProfiler();
+			
 			try 
 			{
-				final Charset INCLUDER_CHARSET = options.scriptCharset;
-				ScriptInstanceBuilder builder = ScriptInstance.createBuilder()
-					.withSource(options.scriptFile)
-					.withEnvironment(ScriptEnvironment.create(options.stdout, options.stderr, options.stdin))
-					.withScriptStack(options.activationDepth, options.stackDepth)
-					.withRunawayLimit(options.runawayLimit)
-					.usingReaderIncluder(new ScriptReaderIncluder()
-					{
-						@Override
-						public String getIncludeResourcePath(String streamName, String path) throws IOException
-						{
-							return PreprocessorLexer.DEFAULT_INCLUDER.getIncludeResourcePath(streamName, path);
-						}
-						
-						@Override
-						public InputStream getIncludeResource(String path) throws IOException 
-						{
-							return PreprocessorLexer.DEFAULT_INCLUDER.getIncludeResource(path);
-						}
-						
-						@Override
-						public Charset getEncodingForIncludedResource(String path) 
-						{
-							return INCLUDER_CHARSET;
-						}
-					})
-				;
-
-				// ============ Add Functions =============
-				
-				final Resolver[] RESOLVERS = ArrayUtils.joinArrays(RESOLVERS_BASE, RESOLVERS_WADSCRIPT);
-				
-				for (int i = 0; i < RESOLVERS.length; i++)
-				{
-					if (i == 0)
-					{
-						if (RESOLVERS[i].namespace != null)
-							builder.withFunctionResolver(RESOLVERS[i].namespace, RESOLVERS[i].resolver);
-						else
-							builder.withFunctionResolver(RESOLVERS[i].resolver);
-					}
-					else 
-					{
-						if (RESOLVERS[i].namespace != null)
-							builder.andFunctionResolver(RESOLVERS[i].namespace, RESOLVERS[i].resolver);
-						else
-							builder.andFunctionResolver(RESOLVERS[i].resolver);
-					} 
-				}
-				
-				for (Resolver resolver : options.resolvers)
-				{
-					if (resolver.namespace != null)
-						builder.andFunctionResolver(resolver.namespace, resolver.resolver);
-					else
-						builder.andFunctionResolver(resolver.resolver);
-				}
-				
-				// ============== Add Scopes ==============
-
-				for (int i = 0; i < SCOPES.length; i++)
-				{
-					if (i == 0)
-					{
-						builder.withScope(SCOPES[i].scopeName, SCOPES[i].variableResolver);
-					}
-					else 
-					{
-						builder.andScope(SCOPES[i].scopeName, SCOPES[i].variableResolver);
-					} 
-				}
-				
-				for (Scope scope : options.scopes)
-				{
-					builder.andScope(scope.scopeName, scope.variableResolver);
-				}
-				
-				instance = builder.createInstance();
-				
+				instance = createInstance(false);
+				DoomMapFunctions.setWorkerFactory(instance, () -> createInstance(true));
 			} 
 			catch (ScriptInstanceBuilder.BuilderException e) 
 			{
@@ -1159,10 +1236,20 @@ public final class WadScriptMain
 				try {
 					ScriptValue retval = ScriptValue.create(null);
 					
-					if (entryPoint.getParameterCount() > 0)
-						instance.call(options.entryPointName, entryParams);
-					else
-						instance.call(options.entryPointName);
+					if (profiler != null)
+						profiler.start(options.entryPointName);
+					try {
+						if (entryPoint.getParameterCount() > 0)
+							instance.call(options.entryPointName, entryParams);
+						else
+							instance.call(options.entryPointName);
+					} finally {
+						if (profiler != null)
+						{
+							profiler.stop();
+							writeProfile();
+						}
+					}
 
 					instance.popStackValue(retval);
 					
@@ -1187,6 +1274,182 @@ public final class WadScriptMain
 			return -1;
 		}
 
+		/**
+		 * Creates a script instance for the script file.
+		 * If the script was already compiled in this process against the same resolvers and scopes, and none of its 
+		 * source files (the script and everything it included) changed in content since, the compiled script is reused.
+		 * Isolated and worker instances get new scopes, so their scripts are always compiled anew (and not kept).
+		 * @param worker if true, the built-in scopes are fresh, empty copies, for isolated worker instances.
+		 * @return a new instance.
+		 * @throws ScriptInstanceBuilder.BuilderException if the script could not be compiled or the instance could not be created.
+		 */
+		private ScriptInstance createInstance(boolean worker) throws ScriptInstanceBuilder.BuilderException
+		{
+			String key = options.scriptFile.getAbsolutePath() + "|" + options.scriptCharset.name();
+			
+			CompiledScript compiled;
+			synchronized (COMPILED_SCRIPTS)
+			{
+				compiled = COMPILED_SCRIPTS.get(key);
+			}
+			List<Scope> scopes = createScopes(worker || options.isolated);
+			// Profiled instances are always compiled against their own wrapped resolvers.
+			if (profiler == null && compiled != null && compiled.isCurrent(options.resolvers, scopes))
+				return createBuilder(scopes).withScript(compiled.script).createInstance();
+			
+			final Charset INCLUDER_CHARSET = options.scriptCharset;
+			final List<File> sources = new ArrayList<>();
+			sources.add(options.scriptFile);
+			ScriptInstance instance = createBuilder(scopes)
+				.withSource(options.scriptFile)
+				.usingReaderIncluder(new ScriptReaderIncluder()
+				{
+					@Override
+					public String getIncludeResourcePath(String streamName, String path) throws IOException
+					{
+						return PreprocessorLexer.DEFAULT_INCLUDER.getIncludeResourcePath(streamName, path);
+					}
+					
+					@Override
+					public InputStream getIncludeResource(String path) throws IOException 
+					{
+						// Classpath resources can't change, so only files are tracked.
+						File file = new File(path);
+						if (file.isFile())
+							sources.add(file);
+						return PreprocessorLexer.DEFAULT_INCLUDER.getIncludeResource(path);
+					}
+					
+					@Override
+					public Charset getEncodingForIncludedResource(String path) 
+					{
+						return INCLUDER_CHARSET;
+					}
+				})
+				.createInstance();
+			
+			if (profiler == null && !worker && !options.isolated)
+			{
+				try {
+					CompiledScript entry = new CompiledScript(instance.getScript(), options.resolvers, scopes, sources);
+					synchronized (COMPILED_SCRIPTS)
+					{
+						COMPILED_SCRIPTS.put(key, entry);
+					}
+				} catch (IOException e) {
+					// Source could not be read back - just don't keep it.
+				}
+			}
+			return instance;
+		}
+
+		/**
+		 * Creates a script instance builder with all of the resolvers and scopes for this tool set on it.
+		 * The script source is not set.
+		 * @param scopes the scopes to add (see {@link #createScopes(boolean)}).
+		 * @return a new builder.
+		 * @throws ScriptInstanceBuilder.BuilderException if the builder could not be set up.
+		 */
+		private ScriptInstanceBuilder createBuilder(List<Scope> scopes) throws ScriptInstanceBuilder.BuilderException
+		{
+			ScriptInstanceBuilder builder = ScriptInstance.createBuilder()
+				.withEnvironment(ScriptEnvironment.create(options.stdout, options.stderr, options.stdin))
+				.withScriptStack(options.activationDepth, options.stackDepth)
+				.withRunawayLimit(options.runawayLimit)
+			;
+
+			// ============ Add Functions =============
+			
+			final Resolver[] RESOLVERS = ArrayUtils.joinArrays(RESOLVERS_BASE, RESOLVERS_WADSCRIPT);
+			
+			for (int i = 0; i < RESOLVERS.length; i++)
+			{
+				ScriptFunctionResolver resolver = getResolver(RESOLVERS[i]);
+				if (i == 0)
+				{
+					if (RESOLVERS[i].namespace != null)
+						builder.withFunctionResolver(RESOLVERS[i].namespace, resolver);
+					else
+						builder.withFunctionResolver(resolver);
+				}
+				else 
+				{
+					if (RESOLVERS[i].namespace != null)
+						builder.andFunctionResolver(RESOLVERS[i].namespace, resolver);
+					else
+						builder.andFunctionResolver(resolver);
+				} 
+			}
+			
+			for (Resolver resolver : options.resolvers)
+			{
+				if (resolver.namespace != null)
+					builder.andFunctionResolver(resolver.namespace, getResolver(resolver));
+				else
+					builder.andFunctionResolver(getResolver(resolver));
+			}
+			
+			// ============== Add Scopes ==============
+
+			for (int i = 0; i < scopes.size(); i++)
+			{
+				Scope scope = scopes.get(i);
+				if (i == 0)
+				{
+					builder.withScope(scope.scopeName, scope.variableResolver);
+				}
+				else 
+				{
+					builder.andScope(scope.scopeName, scope.variableResolver);
+				} 
+			}
+			return builder;
+		}
+
+		/**
+		 * Creates the list of scopes for a new instance: the built-in scopes, then the added ones.
+		 * @param worker if true, the built-in scopes are fresh, empty copies, for isolated worker instances.
+		 * @return the list of scopes.
+		 */
+		private List<Scope> createScopes(boolean worker)
+		{
+			List<Scope> out = new ArrayList<>(SCOPES.length + options.scopes.size());
+			for (int i = 0; i < SCOPES.length; i++)
+			{
+				// Workers get their own copies of the built-in scopes.
+				out.add(worker ? new Scope(SCOPES[i].scopeName, new DefaultVariableResolver()) : SCOPES[i]);
+			}
+			out.addAll(options.scopes);
+			return out;
+		}
+
+		// Gets a resolver, wrapped for profiling if profiling.
+		private ScriptFunctionResolver getResolver(Resolver resolver)
+		{
+			return profiler != null ? profiler.wrap(resolver.sectionName, resolver.namespace, resolver.resolver) : resolver.resolver;
+		}
+		
+		// Writes the profiler results.
+		private void writeProfile()
+		{
+			if (options.profile)
+			{
+				options.stderr.println();
+				profiler.printReport(options.stderr);
+			}
+			if (options.profileCollapsedFile != null)
+			{
+				try (PrintStream out = new PrintStream(new FileOutputStream(options.profileCollapsedFile), true, "UTF-8"))
+				{
+					profiler.printCollapsed(out);
+				} 
+				catch (IOException e) 
+				{
+					options.stderr.println("ERROR: Could not write profile file: " + e.getLocalizedMessage());
+				}
+			}
+		}
+
 		private void doDisassemble(PrintStream out, ScriptInstance instance)
 		{
 			StringWriter sw = new StringWriter();
@@ -1234,6 +1497,14 @@ public final class WadScriptMain
 			out.println("                                     Default: 256");
 			out.println("    --stack-depth [num]          Sets the stack value depth to [num].");
 			out.println("                                     Default: 2048");
+			out.println("    --profile                    Times all host function calls and prints a");
+			out.println("                                     report to STDERR after the script ends.");
+			out.println("                                     Script functions are not timed on their");
+			out.println("                                     own: time outside of host functions is");
+			out.println("                                     reported as one script total.");
+			out.println("    --profile-collapsed [file]   Times all host function calls and writes");
+			out.println("                                     the call paths to [file] in collapsed");
+			out.println("                                     stack format (for flame graphs).");
 			out.println("    --                           All tokens after this one are interpreted");
 			out.println("                                     literally as args for the script.");
 			out.println("                                     Normally, all unrecognized switches");
@@ -1360,6 +1631,7 @@ public final class WadScriptMain
 		final int STATE_SWITCHES_STACK = SWITCHES + 2;
 		final int STATE_SWITCHES_RUNAWAY = SWITCHES + 3;
 		final int STATE_SWITCHES_CHARSET = SWITCHES + 4;
+		final int STATE_SWITCHES_PROFILECOLLAPSED = SWITCHES + 5;
 		int state = STATE_START;
 		
 		for (int i = 0; i < args.length; i++)
@@ -1400,6 +1672,10 @@ public final class WadScriptMain
 						state = STATE_SWITCHES_ACTIVATION;
 					else if (SWITCH_STACKDEPTH1.equalsIgnoreCase(arg))
 						state = STATE_SWITCHES_STACK;
+					else if (SWITCH_PROFILE1.equalsIgnoreCase(arg))
+						options.profile = true;
+					else if (SWITCH_PROFILECOLLAPSED1.equalsIgnoreCase(arg))
+						state = STATE_SWITCHES_PROFILECOLLAPSED;
 					else if (SWITCH_SEPARATOR.equalsIgnoreCase(arg))
 						state = STATE_ARGS;
 					else if (SWITCH_SEPARATORBASH.equalsIgnoreCase(arg))
@@ -1411,6 +1687,13 @@ public final class WadScriptMain
 				}
 				break;
 				
+				case STATE_SWITCHES_PROFILECOLLAPSED:
+				{
+					options.profileCollapsedFile = new File(arg);
+					state = STATE_START;
+				}
+				break;
+				
 				case STATE_SWITCHES_ENTRY:
 				{
 					arg = arg.trim();
@@ -1499,10 +1782,23 @@ public final class WadScriptMain
 			throw new OptionParseException("ERROR: Expected number after runaway limit switch.");
 		if (state == STATE_SWITCHES_CHARSET)
 			throw new OptionParseException("ERROR: Expected charset name after charset switch.");
+		if (state == STATE_SWITCHES_PROFILECOLLAPSED)
+			throw new OptionParseException("ERROR: Expected file path after profile collapsed switch.");
 		
 		return options;
 	}
 
+	/**
+	 * Clears all compiled scripts kept for reuse in this process.
+	 */
+	public static void clearCompiledScripts()
+	{
+		synchronized (COMPILED_SCRIPTS)
+		{
+			COMPILED_SCRIPTS.clear();
+		}
+	}
+
 	/**
 	 * Calls the utility using a set of options.
 	 * @param options the options to call with.
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import net.mtrop.doom.Wad;
+import net.mtrop.doom.WadFile;
+import net.mtrop.doom.texture.Animated;
+import net.mtrop.doom.texture.Switches;
+
+/**
+ * Merges ANIMATED and SWITCHES tables from many sources into one pair of tables.
+ * <p>Entries are indexed by name: animated textures and animated flats by their starting name
+ * (each in their own namespace), and switches by their "off" texture name.
+ * A duplicate either replaces the existing entry in place or is ignored, depending on
+ * how this merger was created. Entry order is the order in which names were first seen.
+ * @author Matthew Tropiano
+ */
+public class SwitchAnimatedMerger
+{
+	/** If true, later entries replace earlier ones with the same name. */
+	private boolean replace;
+
+	private Map<String, Animated.Entry> animatedTextures;
+	private Map<String, Animated.Entry> animatedFlats;
+	private Map<String, Switches.Entry> switches;
+
+	/**
+	 * Creates a new merger.
+	 * @param replace if true, an entry added later replaces an existing entry with the same name (load-order behavior).
+	 * 		If false, the first entry added wins (priority-order behavior).
+	 */
+	public SwitchAnimatedMerger(boolean replace)
+	{
+		this.replace = replace;
+		this.animatedTextures = new LinkedHashMap<>();
+		this.animatedFlats = new LinkedHashMap<>();
+		this.switches = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Adds an animated entry.
+	 * @param entry the entry to add.
+	 * @return true if added or replaced, false if ignored.
+	 */
+	public boolean addAnimated(Animated.Entry entry)
+	{
+		Map<String, Animated.Entry> map = entry.isTexture() ? animatedTextures : animatedFlats;
+		if (!replace && map.containsKey(entry.getFirstName()))
+			return false;
+		map.put(entry.getFirstName(), entry);
+		return true;
+	}
+
+	/**
+	 * Adds a switch entry.
+	 * @param entry the entry to add.
+	 * @return true if added or replaced, false if ignored.
+	 */
+	public boolean addSwitch(Switches.Entry entry)
+	{
+		if (!replace && switches.containsKey(entry.getOffName()))
+			return false;
+		switches.put(entry.getOffName(), entry);
+		return true;
+	}
+
+	/**
+	 * Adds all entries of an ANIMATED table that pass a filter.
+	 * @param animated the table.
+	 * @param filter the filter (entries that return true are added).
+	 * @return the amount of entries added or replaced.
+	 */
+	public int addAnimated(Animated animated, Predicate<Animated.Entry> filter)
+	{
+		int out = 0;
+		for (Animated.Entry entry : animated)
+			if (filter.test(entry) && addAnimated(entry))
+				out++;
+		return out;
+	}
+
+	/**
+	 * Adds all entries of a SWITCHES table that pass a filter.
+	 * @param switches the table.
+	 * @param filter the filter (entries that return true are added).
+	 * @return the amount of entries added or replaced.
+	 */
+	public int addSwitches(Switches switches, Predicate<Switches.Entry> filter)
+	{
+		int out = 0;
+		for (Switches.Entry entry : switches)
+			if (filter.test(entry) && addSwitch(entry))
+				out++;
+		return out;
+	}
+
+	/**
+	 * Adds all entries of an ANIMATED and a SWITCHES table.
+	 * @param animated the animated table (can be null).
+	 * @param switches the switches table (can be null).
+	 */
+	public void addAll(Animated animated, Switches switches)
+	{
+		if (animated != null)
+			addAnimated(animated, (entry) -> true);
+		if (switches != null)
+			addSwitches(switches, (entry) -> true);
+	}
+
+	/**
+	 * Adds all entries from SWANTBLS (DEFSWANI) text.
+	 * @param reader the reader to read from.
+	 * @throws IOException if an I/O Error occurs during read.
+	 * @throws ParseException if an error occurs during parse.
+	 */
+	public void addSwitchAnimatedTables(BufferedReader reader) throws IOException, ParseException
+	{
+		Animated animated = new Animated();
+		Switches switches = new Switches();
+		Utility.readSwitchAnimatedTables(reader, animated, switches);
+		addAll(animated, switches);
+	}
+
+	/**
+	 * Adds all entries from a file: either the ANIMATED and SWITCHES lumps in a WAD,
+	 * or a SWANTBLS (DEFSWANI) text file.
+	 * @param file the source file.
+	 * @throws IOException if an I/O Error occurs during read.
+	 * @throws ParseException if an error occurs during parse.
+	 */
+	public void addSource(File file) throws IOException, ParseException
+	{
+		if (Wad.isWAD(file))
+		{
+			try (WadFile wad = new WadFile(file))
+			{
+				addAll(wad.getDataAs("ANIMATED", Animated.class), wad.getDataAs("SWITCHES", Switches.class));
+			}
+		}
+		else
+		{
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII)))
+			{
+				addSwitchAnimatedTables(reader);
+			}
+		}
+	}
+
+	/**
+	 * @return the amount of animated entries (textures and flats).
+	 */
+	public int getAnimatedCount()
+	{
+		return animatedTextures.size() + animatedFlats.size();
+	}
+
+	/**
+	 * @return the amount of switch entries.
+	 */
+	public int getSwitchesCount()
+	{
+		return switches.size();
+	}
+
+	/**
+	 * Creates the merged ANIMATED table.
+	 * Textures come before flats.
+	 * @return a new table.
+	 */
+	public Animated createAnimated()
+	{
+		Animated out = new Animated();
+		for (Animated.Entry entry : animatedTextures.values())
+			out.addEntry(Animated.texture(entry.getLastName(), entry.getFirstName(), entry.getTicks(), entry.getAllowsDecals()));
+		for (Animated.Entry entry : animatedFlats.values())
+			out.addEntry(Animated.flat(entry.getLastName(), entry.getFirstName(), entry.getTicks()));
+		return out;
+	}
+
+	/**
+	 * Creates the merged SWITCHES table.
+	 * @return a new table.
+	 */
+	public Switches createSwitches()
+	{
+		Switches out = new Switches();
+		for (Switches.Entry entry : switches.values())
+			out.addEntry(entry.getOffName(), entry.getOnName(), entry.getGame());
+		return out;
+	}
+
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.common;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads UDMF text as a series of raw chunks, one per global attribute or object,
+ * without interpreting any of the values inside them.
+ * Each chunk keeps the exact text it was read from, including the whitespace and comments before it,
+ * so that writing every chunk's text back out reproduces the input exactly.
+ * @author Matthew Tropiano
+ */
+public class UDMFChunkReader
+{
+	/** The source reader. */
+	private Reader reader;
+	/** The next character, or -2 if not read yet. */
+	private int next;
+	/** The current line number. */
+	private int line;
+
+	/**
+	 * Creates a new chunk reader.
+	 * @param reader the source reader (should be buffered).
+	 */
+	public UDMFChunkReader(Reader reader)
+	{
+		this.reader = reader;
+		this.next = -2;
+		this.line = 1;
+	}
+
+	/**
+	 * Reads the next chunk.
+	 * If only whitespace or comments remain, this returns a trailing chunk.
+	 * @return the next chunk, or null if there is nothing left to read.
+	 * @throws IOException if a read error occurs or the text is malformed.
+	 */
+	public Chunk next() throws IOException
+	{
+		StringBuilder prefix = new StringBuilder();
+		readSpace(prefix);
+		if (peek() < 0)
+			return prefix.length() > 0 ? new Chunk(Chunk.Type.TRAILING, null, prefix.toString(), "") : null;
+
+		StringBuilder text = new StringBuilder(256);
+		StringBuilder name = new StringBuilder(16);
+		int c;
+		while ((c = peek()) >= 0 && c != '=' && c != '{' && c != ';' && c != '/' && !Character.isWhitespace(c))
+		{
+			name.append((char)c);
+			text.append((char)read());
+		}
+		if (name.length() == 0)
+			throw new IOException("Malformed UDMF: expected an identifier on line " + line + ".");
+
+		readSpace(text);
+		c = read();
+		if (c == '=')
+		{
+			text.append((char)c);
+			readUntil(text, ';');
+			return new Chunk(Chunk.Type.ATTRIBUTE, name.toString(), prefix.toString(), text.toString());
+		}
+		else if (c == '{')
+		{
+			text.append((char)c);
+			readUntil(text, '}');
+			return new Chunk(Chunk.Type.OBJECT, name.toString(), prefix.toString(), text.toString());
+		}
+		else
+		{
+			throw new IOException("Malformed UDMF: expected \"=\" or \"{\" after \"" + name + "\" on line " + line + ".");
+		}
+	}
+
+	// Reads whitespace and comments.
+	private void readSpace(StringBuilder out) throws IOException
+	{
+		int c;
+		while ((c = peek()) >= 0)
+		{
+			if (Character.isWhitespace(c))
+				out.append((char)read());
+			else if (c == '/')
+			{
+				read();
+				int c2 = peek();
+				if (c2 == '/')
+				{
+					out.append('/');
+					while ((c = peek()) >= 0 && c != '\n')
+						out.append((char)read());
+				}
+				else if (c2 == '*')
+				{
+					out.append('/').append((char)read());
+					readBlockComment(out);
+				}
+				else
+				{
+					throw new IOException("Malformed UDMF: unexpected \"/\" on line " + line + ".");
+				}
+			}
+			else
+				break;
+		}
+	}
+
+	// Reads everything up to and including an end character outside of strings and comments.
+	private void readUntil(StringBuilder out, char end) throws IOException
+	{
+		int c;
+		while ((c = read()) >= 0)
+		{
+			out.append((char)c);
+			if (c == end)
+				return;
+			else if (c == '"')
+				readString(out);
+			else if (c == '/' && peek() == '/')
+			{
+				while ((c = peek()) >= 0 && c != '\n')
+					out.append((char)read());
+			}
+			else if (c == '/' && peek() == '*')
+			{
+				out.append((char)read());
+				readBlockComment(out);
+			}
+		}
+		throw new IOException("Malformed UDMF: expected \"" + end + "\" before end of data.");
+	}
+
+	// Reads the rest of a string (after the starting quote).
+	private void readString(StringBuilder out) throws IOException
+	{
+		int c;
+		while ((c = read()) >= 0)
+		{
+			out.append((char)c);
+			if (c == '\\')
+			{
+				if ((c = read()) < 0)
+					break;
+				out.append((char)c);
+			}
+			else if (c == '"')
+				return;
+		}
+		throw new IOException("Malformed UDMF: unterminated string before end of data.");
+	}
+
+	// Reads the rest of a block comment (after the starting slash-star).
+	private void readBlockComment(StringBuilder out) throws IOException
+	{
+		int c;
+		boolean star = false;
+		while ((c = read()) >= 0)
+		{
+			out.append((char)c);
+			if (star && c == '/')
+				return;
+			star = c == '*';
+		}
+		throw new IOException("Malformed UDMF: unterminated comment before end of data.");
+	}
+
+	private int peek() throws IOException
+	{
+		if (next == -2)
+			next = reader.read();
+		return next;
+	}
+
+	private int read() throws IOException
+	{
+		int out = peek();
+		next = -2;
+		if (out == '\n')
+			line++;
+		return out;
+	}
+
+	/**
+	 * A single raw chunk of UDMF text.
+	 */
+	public static class Chunk
+	{
+		/** Chunk type. */
+		public enum Type
+		{
+			/** A global attribute assignment. */
+			ATTRIBUTE,
+			/** A structure/object block. */
+			OBJECT,
+			/** Whitespace and comments at the end of the data. */
+			TRAILING;
+		}
+
+		private Type type;
+		private String name;
+		private String prefix;
+		private String text;
+
+		private Chunk(Type type, String name, String prefix, String text)
+		{
+			this.type = type;
+			this.name = name;
+			this.prefix = prefix;
+			this.text = text;
+		}
+
+		/**
+		 * @return the chunk type.
+		 */
+		public Type getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the attribute name or object type name, or null if trailing.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the whitespace and comments before this chunk.
+		 */
+		public String getPrefix()
+		{
+			return prefix;
+		}
+
+		/**
+		 * @return the raw text of this chunk, from the name to the ending semicolon or brace.
+		 */
+		public String getText()
+		{
+			return text;
+		}
+	}
+
+}
@@ -6,19 +6,29 @@
 package net.mtrop.doom.tools.common;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 
 import net.mtrop.doom.texture.Animated;
+import net.mtrop.doom.texture.CommonPatch;
+import net.mtrop.doom.texture.CommonTexture;
 import net.mtrop.doom.texture.CommonTextureList;
+import net.mtrop.doom.texture.DoomTextureList;
 import net.mtrop.doom.texture.PatchNames;
+import net.mtrop.doom.texture.StrifeTextureList;
 import net.mtrop.doom.texture.Switches;
 import net.mtrop.doom.texture.TextureSet;
 import net.mtrop.doom.texture.TextureSet.Patch;
@@ -156,6 +166,124 @@ public final class Utility
 		return textureSet;
 	}
 	
+	/**
+	 * Parses a DEUTEX texture file and merges it into an existing texture list, 
+	 * replacing existing textures in place (by name) and appending new ones.
+	 * <p>Textures are matched through a hash index, so the merge is linear in the 
+	 * amount of existing plus incoming textures, rather than a name search per texture.
+	 * If the file defines the same texture more than once, the last definition wins, 
+	 * at the position of its first definition.
+	 * @param reader the reader to read from.
+	 * @param startingPatches the starting PNAMES.
+	 * @param startingTextureList the starting TEXTUREX.
+	 * @return a combined texture set.
+	 * @throws IOException if an I/O Error occurs during read.
+	 * @throws ParseException if an error occurs during parse.
+	 */
+	public static TextureSet mergeDEUTEXFile(BufferedReader reader, PatchNames startingPatches, CommonTextureList<?> startingTextureList) throws IOException, ParseException
+	{
+		CommonTextureList<?> emptyList = startingTextureList instanceof StrifeTextureList 
+			? new StrifeTextureList() 
+			: new DoomTextureList();
+		
+		TextureSet incoming = readDEUTEXFile(reader, new PatchNames(), emptyList);
+		
+		Map<String, Texture> incomingMap = new HashMap<>();
+		for (Texture texture : incoming)
+			incomingMap.put(texture.getName(), texture);
+
+		TextureSet out = new TextureSet(startingPatches, emptyList);
+		for (Texture texture : new TextureSet(startingPatches, startingTextureList))
+		{
+			Texture replacement = incomingMap.remove(texture.getName());
+			copyTexture(replacement != null ? replacement : texture, out);
+		}
+		
+		for (Texture texture : incoming)
+		{
+			Texture added;
+			if ((added = incomingMap.remove(texture.getName())) != null)
+				copyTexture(added, out);
+		}
+		
+		return out;
+	}
+	
+	// Copies a texture into a texture set.
+	private static void copyTexture(Texture source, TextureSet target)
+	{
+		Texture texture = target.createTexture(source.getName());
+		texture.setWidth(source.getWidth());
+		texture.setHeight(source.getHeight());
+		for (Patch patch : source)
+		{
+			Patch copy = texture.createPatch(patch.getName());
+			copy.setOriginX(patch.getOriginX());
+			copy.setOriginY(patch.getOriginY());
+		}
+	}
+	
+	/**
+	 * Exports a texture set to a patch names lump and a texture list, through a patch name index.
+	 * Patch names already in the patch names lump keep their indices, and new ones are appended, 
+	 * which is what {@link TextureSet#export(PatchNames, CommonTextureList)} does, 
+	 * but without searching the patch names for every patch.
+	 * @param textureSet the texture set to export.
+	 * @param patchNames the patch names lump to add new patch names to.
+	 * @param textureList the texture list to add the textures to.
+	 * @throws IOException if the patch names lump could not be rebuilt.
+	 */
+	public static void exportTextureSet(TextureSet textureSet, PatchNames patchNames, CommonTextureList<?> textureList) throws IOException
+	{
+		List<String> names = new ArrayList<>(patchNames.size());
+		Map<String, Integer> patchIndex = new HashMap<>();
+		for (int i = 0; i < patchNames.size(); i++)
+		{
+			String name = patchNames.get(i);
+			names.add(name);
+			patchIndex.putIfAbsent(name.toUpperCase(), i);
+		}
+		int startCount = names.size();
+		
+		for (Texture texture : textureSet)
+		{
+			CommonTexture<?> exported = textureList.createTexture(texture.getName());
+			exported.setWidth(texture.getWidth());
+			exported.setHeight(texture.getHeight());
+			for (Patch patch : texture)
+			{
+				String name = patch.getName();
+				Integer index = patchIndex.get(name.toUpperCase());
+				if (index == null)
+				{
+					index = names.size();
+					names.add(name);
+					patchIndex.put(name.toUpperCase(), index);
+				}
+				CommonPatch exportedPatch = exported.createPatch();
+				exportedPatch.setOriginX(patch.getOriginX());
+				exportedPatch.setOriginY(patch.getOriginY());
+				exportedPatch.setPatchIndex(index);
+			}
+		}
+		
+		if (names.size() == startCount)
+			return;
+		
+		// Rebuild the lump in one go (adding names one at a time checks for duplicates per name).
+		ByteBuffer buffer = ByteBuffer.allocate(4 + names.size() * 8).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(names.size());
+		for (String name : names)
+		{
+			byte[] nameBytes = new byte[8];
+			byte[] ascii = name.getBytes(StandardCharsets.US_ASCII);
+			System.arraycopy(ascii, 0, nameBytes, 0, Math.min(ascii.length, 8));
+			buffer.put(nameBytes);
+		}
+		patchNames.clear();
+		patchNames.readBytes(new ByteArrayInputStream(buffer.array()));
+	}
+	
 	/**
 	 * Writes DEUTEX data to a print writer.
 	 * @param textureSet the texture set to export. 
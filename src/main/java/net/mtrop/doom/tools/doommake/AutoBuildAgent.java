@@ -18,9 +18,12 @@ import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.blackrook.json.JSONConversionException;
-import com.blackrook.json.JSONObject;
 
 import net.mtrop.doom.tools.DoomMakeMain;
 import net.mtrop.doom.tools.struct.util.FileUtils;
@@ -33,6 +36,11 @@ import net.mtrop.doom.tools.struct.util.IOUtils;
  */
 public class AutoBuildAgent 
 {
+	/** Default grace period after the last change before a build starts, in milliseconds. */
+	public static final long DEFAULT_GRACE_PERIOD_MILLIS = 1000L;
+	/** Default maximum delay after the first change before a build starts, in milliseconds. */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 10000L;
+	
 	/** The project directory. */
 	private File projectDirectory;
 	/** Agent listener. */
@@ -46,20 +54,37 @@ public class AutoBuildAgent
     private File projectPropertiesPath;
     /** Source directory. */
     private File sourceDirectory;
+    /** Build grace period. */
+    private long gracePeriodMillis;
+    /** Build max delay. */
+    private long maxDelayMillis;
     
     /** "Currently building" internal flag. */
     private volatile boolean currentlyBuilding;
     /** Watcher thread. */
     private volatile WatchThread watchThread;
-    /** Watcher thread. */
-    private volatile BuildThread buildThread;
+    /** Build scheduler. */
+    private volatile BuildScheduler buildScheduler;
     
 	/**
-	 * Creates an auto-build agent class.
+	 * Creates an auto-build agent class, with the default grace period and max delay.
 	 * @param projectDirectory the project directory to listen to.
 	 * @param listener the listener for this agent.
 	 */
 	public AutoBuildAgent(File projectDirectory, Listener listener)
+	{
+		this(projectDirectory, listener, DEFAULT_GRACE_PERIOD_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+	}
+	
+	/**
+	 * Creates an auto-build agent class.
+	 * @param projectDirectory the project directory to listen to.
+	 * @param listener the listener for this agent.
+	 * @param gracePeriodMillis the time to wait after the last detected change before building, in milliseconds.
+	 * @param maxDelayMillis the longest time to wait after the first detected change before building, in milliseconds,
+	 * 		even if changes keep happening.
+	 */
+	public AutoBuildAgent(File projectDirectory, Listener listener, long gracePeriodMillis, long maxDelayMillis)
 	{
 		this.projectDirectory = Objects.requireNonNull(projectDirectory);
 		this.listener = Objects.requireNonNull(listener);
@@ -69,9 +94,12 @@ public class AutoBuildAgent
 		this.projectPropertiesPath = new File(projectDirectory.getPath() + File.separator + "doommake.project.properties");
 		this.sourceDirectory = DoomMakeMain.getProjectPropertyPath(projectDirectory, mergedProperties, "doommake.dir.src", "src");
 		
+		this.gracePeriodMillis = gracePeriodMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		
 		this.currentlyBuilding = false;
 		this.watchThread = null;
-		this.buildThread = null;
+		this.buildScheduler = null;
 	}
 	
 	/**
@@ -91,8 +119,8 @@ public class AutoBuildAgent
 			watchThread = null;
 			throw e;
 		}
-		buildThread = new BuildThread(projectDirectory, 1000L);
-		buildThread.start();
+		buildScheduler = new BuildScheduler(projectDirectory, gracePeriodMillis, maxDelayMillis);
+		buildScheduler.start();
 
 		try {
 			setAgentLock();
@@ -117,10 +145,10 @@ public class AutoBuildAgent
 			watchThread.interrupt();
 			watchThread = null;
 		}
-		if (buildThread != null)
+		if (buildScheduler != null)
 		{
-			buildThread.interrupt();
-			buildThread = null;
+			buildScheduler.shutDown();
+			buildScheduler = null;
 		}
 	}
 	
@@ -157,8 +185,9 @@ public class AutoBuildAgent
 	// Called when a file is created in a watched directory.
 	private void processFileCreation(File file)
 	{
-		// If a build is running, watched directories may have contents changed during it. Ignore these changes!
-		if (currentlyBuilding)
+		// If a build is running, watched directories may have contents changed during it. 
+		// Ignore these changes, unless they are source changes (those are coalesced into one more build).
+		if (currentlyBuilding && !isSourceFile(file))
 			return;
 		
 		// Add directories not in the project root.
@@ -170,14 +199,15 @@ public class AutoBuildAgent
 			watchThread.registerSubdirectoriesOf(file);
 		
 		fireFileCreate(file);
-		buildThread.trigger();
+		triggerBuild();
 	}
 	
 	// Called when a file is modified in a watched directory.
 	private void processFileModify(File file)
 	{
-		// If a build is running, watched directories may have contents changed during it. Ignore these changes!
-		if (currentlyBuilding)
+		// If a build is running, watched directories may have contents changed during it. 
+		// Ignore these changes, unless they are source changes (those are coalesced into one more build).
+		if (currentlyBuilding && !isSourceFile(file))
 			return;
 
 		if (FileUtils.filePathEquals(file, propertiesPath) || FileUtils.filePathEquals(file, projectPropertiesPath))
@@ -190,18 +220,37 @@ public class AutoBuildAgent
 		}
 		
 		fireFileModify(file);
-		buildThread.trigger();
+		triggerBuild();
 	}
 	
 	// Called when a file is deleted in a watched directory.
 	private void processFileDelete(File file)
 	{
-		// If a build is running, watched directories may have contents changed. Ignore these changes!
-		if (currentlyBuilding)
+		// If a build is running, watched directories may have contents changed. 
+		// Ignore these changes, unless they are source changes (those are coalesced into one more build).
+		if (currentlyBuilding && !isSourceFile(file))
 			return;
 
 		fireFileDelete(file);
-		buildThread.trigger();
+		triggerBuild();
+	}
+	
+	// Checks if a file is in the source directory tree.
+	private boolean isSourceFile(File file)
+	{
+		for (File f = file; f != null; f = f.getParentFile())
+		{
+			if (FileUtils.filePathEquals(f, sourceDirectory))
+				return true;
+		}
+		return false;
+	}
+	
+	private void triggerBuild()
+	{
+		BuildScheduler scheduler = buildScheduler;
+		if (scheduler != null)
+			scheduler.trigger();
 	}
 	
 	private void fireAgentStarted()
@@ -327,9 +376,7 @@ public class AutoBuildAgent
 	 */
 	private void setAgentLock() throws IOException
 	{
-		JSONObject lockRoot = DoomMakeMain.readLockObject(projectDirectory, mergedProperties);
-		lockRoot.addMember(DoomMakeMain.JSON_AGENT_LOCK_KEY, true);
-		DoomMakeMain.writeLockObject(projectDirectory, mergedProperties, lockRoot);
+		DoomMakeMain.updateLockObject(projectDirectory, mergedProperties, (lockRoot) -> lockRoot.addMember(DoomMakeMain.JSON_AGENT_LOCK_KEY, true));
 	}
 	
 	/**
@@ -340,9 +387,7 @@ public class AutoBuildAgent
 	 */
 	private void unsetAgentLock() throws IOException
 	{
-		JSONObject lockRoot = DoomMakeMain.readLockObject(projectDirectory, mergedProperties);
-		lockRoot.addMember(DoomMakeMain.JSON_AGENT_LOCK_KEY, false);
-		DoomMakeMain.writeLockObject(projectDirectory, mergedProperties, lockRoot);
+		DoomMakeMain.updateLockObject(projectDirectory, mergedProperties, (lockRoot) -> lockRoot.addMember(DoomMakeMain.JSON_AGENT_LOCK_KEY, false));
 	}
 
 	/**
@@ -574,63 +619,126 @@ public class AutoBuildAgent
 		}
 	}
 	
-	// Auto-build kickoff thread.
-	private class BuildThread extends Thread
+	// Auto-build scheduler: debounces triggers and runs builds on a single thread.
+	private class BuildScheduler
 	{
-		private final Object MUTEX = new Object();
-
+		/** Build executor (one thread). */
+		private final ScheduledExecutorService executor;
 		/** Grace period. */
-		private long gracePeriodMillis;
-		/** Target time. */
-		private long targetTime;
+		private final long gracePeriodMillis;
+		/** Max delay from the first trigger to the build. */
+		private final long maxDelayMillis;
 		
-		private BuildThread(File directory, long gracePeriodMillis)
+		/** Scheduled build, if any. */
+		private ScheduledFuture<?> pending;
+		/** Generation of the last scheduled build. Builds that are not the latest generation do nothing. */
+		private long generation;
+		/** Time of the first trigger for the scheduled build. */
+		private long firstTriggerTime;
+		/** If true, a build is running. */
+		private boolean building;
+		/** If true, another build was triggered while building. */
+		private boolean rerun;
+		
+		private BuildScheduler(File directory, long gracePeriodMillis, long maxDelayMillis)
 		{
-			super("AutoBuildThread-" + directory.getName());
-			setDaemon(false);
+			final String threadName = "AutoBuildThread-" + directory.getName();
+			this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread out = new Thread(runnable, threadName);
+				out.setDaemon(false);
+				return out;
+			});
 			this.gracePeriodMillis = gracePeriodMillis;
-			this.targetTime = -1L;
+			this.maxDelayMillis = Math.max(gracePeriodMillis, maxDelayMillis);
+			this.pending = null;
+			this.generation = 0L;
+			this.firstTriggerTime = -1L;
+			this.building = false;
+			this.rerun = false;
+		}
+		
+		/**
+		 * Schedules the first build right away.
+		 */
+		public synchronized void start()
+		{
+			firstTriggerTime = System.currentTimeMillis();
+			schedule(0L);
 		}
 		
 		/**
 		 * Trigger a build.
-		 * Resets the grace period countdown.
+		 * Resets the grace period countdown, but never delays the build more than the max delay
+		 * after the first trigger. If a build is running, exactly one more build is run after it.
 		 */
-		public void trigger()
+		public synchronized void trigger()
 		{
-			long systime = System.currentTimeMillis();
-			if (systime > targetTime)
-				fireBuildPrepared();
-			targetTime = gracePeriodMillis + systime;
+			if (executor.isShutdown())
+				return;
 			
-			synchronized (MUTEX)
+			if (building)
+			{
+				if (!rerun)
+					fireBuildPrepared();
+				rerun = true;
+				return;
+			}
+			
+			long now = System.currentTimeMillis();
+			if (pending == null)
+			{
+				firstTriggerTime = now;
+				fireBuildPrepared();
+			}
+			else
 			{
-				MUTEX.notify();
+				pending.cancel(false);
 			}
+			
+			schedule(Math.max(0L, Math.min(gracePeriodMillis, firstTriggerTime + maxDelayMillis - now)));
 		}
 		
-		@Override
-		public void run()
+		/**
+		 * Stops the scheduler. A running build is interrupted.
+		 */
+		public void shutDown()
+		{
+			executor.shutdownNow();
+			fireVerboseMessage(String.format("Auto-build scheduler for %s shut down.", projectDirectory.getAbsolutePath()));
+		}
+		
+		// Schedules a build, superseding any scheduled build (even one that already started but has not begun building).
+		// Must be called while holding this object's monitor.
+		private void schedule(long delayMillis)
 		{
+			final long buildGeneration = ++generation;
+			pending = executor.schedule(() -> runBuild(buildGeneration), delayMillis, TimeUnit.MILLISECONDS);
+		}
+		
+		private void runBuild(long buildGeneration)
+		{
+			synchronized (this)
+			{
+				// A trigger came in after this task started, but before it got here: the newer build replaces it.
+				if (buildGeneration != generation)
+					return;
+				pending = null;
+				building = true;
+			}
+			
 			try {
-				while (true)
+				build("make");
+			} finally {
+				synchronized (this)
 				{
-					long systime = System.currentTimeMillis();
-					if (systime < targetTime)
+					building = false;
+					if (rerun && !executor.isShutdown())
 					{
-						Thread.sleep(1);
-					}
-					else if (!isInterrupted())
-					{
-						build("make");
-						synchronized (MUTEX) 
-						{
-							MUTEX.wait();
-						}
+						rerun = false;
+						firstTriggerTime = System.currentTimeMillis();
+						schedule(gracePeriodMillis);
 					}
 				}
-			} catch (InterruptedException e) {
-				fireVerboseMessage(String.format("Auto-build trigger thread for %s interrupted. Terminating.", projectDirectory.getAbsolutePath()));
 			}
 		}
 		
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.mtrop.doom.tools.common.ParseException;
+
+/**
+ * A set of build targets and the targets they depend on, run as a dependency graph.
+ * <p>Targets are read from a descriptor file (a properties file). Each target is a script entry point,
+ * and is declared with any of these keys:
+ * <pre>
+ * [target].depends = [target], [target], ...
+ * [target].inputs = [file or directory], ...
+ * [target].outputs = [file], ...
+ * </pre>
+ * When a target is run, every target it depends on is run first, once. Targets that do not depend on each other
+ * can run at the same time. A target with both inputs and outputs is skipped if all of its outputs exist and are
+ * not older than any of its inputs (directories are checked recursively), and none of the targets it depends on ran.
+ * @author Matthew Tropiano
+ */
+public class BuildGraph
+{
+	/** Key suffix for dependencies. */
+	public static final String KEY_DEPENDS = "depends";
+	/** Key suffix for inputs. */
+	public static final String KEY_INPUTS = "inputs";
+	/** Key suffix for outputs. */
+	public static final String KEY_OUTPUTS = "outputs";
+
+	/** Targets by name. */
+	private Map<String, Target> targets;
+
+	/**
+	 * Creates a new, empty graph.
+	 */
+	public BuildGraph()
+	{
+		this.targets = new TreeMap<>();
+	}
+
+	/**
+	 * Reads a graph from a target descriptor file.
+	 * @param file the file to read.
+	 * @return the new graph.
+	 * @throws IOException if the file could not be read.
+	 * @throws ParseException if a key is not a target declaration.
+	 */
+	public static BuildGraph read(File file) throws IOException, ParseException
+	{
+		Properties properties = new Properties();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+		{
+			properties.load(reader);
+		}
+
+		BuildGraph out = new BuildGraph();
+		for (String key : properties.stringPropertyNames())
+		{
+			int dot = key.lastIndexOf('.');
+			if (dot <= 0)
+				throw new ParseException("Bad key \"" + key + "\" in " + file.getPath() + ": expected [target]." + KEY_DEPENDS + ", [target]." + KEY_INPUTS + ", or [target]." + KEY_OUTPUTS + ".");
+
+			Target target = out.getTarget(key.substring(0, dot));
+			List<String> values = split(properties.getProperty(key));
+			String type = key.substring(dot + 1);
+			if (type.equals(KEY_DEPENDS))
+				target.depends.addAll(values);
+			else if (type.equals(KEY_INPUTS))
+				for (String value : values)
+					target.inputs.add(new File(value));
+			else if (type.equals(KEY_OUTPUTS))
+				for (String value : values)
+					target.outputs.add(new File(value));
+			else
+				throw new ParseException("Bad key \"" + key + "\" in " + file.getPath() + ": expected [target]." + KEY_DEPENDS + ", [target]." + KEY_INPUTS + ", or [target]." + KEY_OUTPUTS + ".");
+		}
+
+		// Dependencies that are not declared are targets with no dependencies.
+		for (Target target : new ArrayList<>(out.targets.values()))
+			for (String name : target.depends)
+				out.getTarget(name);
+
+		return out;
+	}
+
+	// Splits a comma-separated list.
+	private static List<String> split(String value)
+	{
+		List<String> out = new ArrayList<>();
+		for (String s : value.split(","))
+		{
+			s = s.trim();
+			if (!s.isEmpty())
+				out.add(s);
+		}
+		return out;
+	}
+
+	// Gets or creates a target.
+	private Target getTarget(String name)
+	{
+		return targets.computeIfAbsent(name, Target::new);
+	}
+
+	/**
+	 * @param name the target name.
+	 * @return true if this graph has the target, false if not.
+	 */
+	public boolean contains(String name)
+	{
+		return targets.containsKey(name);
+	}
+
+	/**
+	 * @return the names of all targets in this graph, sorted.
+	 */
+	public Set<String> getTargetNames()
+	{
+		return Collections.unmodifiableSet(targets.keySet());
+	}
+
+	/**
+	 * Gets a target and all of the targets that it depends on, in an order in which each target
+	 * comes after everything it depends on.
+	 * @param name the target name.
+	 * @return the list of target names.
+	 * @throws ParseException if the target is not in this graph, or there is a dependency cycle.
+	 */
+	public List<String> getBuildOrder(String name) throws ParseException
+	{
+		if (!contains(name))
+			throw new ParseException("No such target: " + name);
+		List<String> out = new ArrayList<>();
+		visit(name, new LinkedHashSet<>(), new HashSet<>(), out);
+		return out;
+	}
+
+	// Depth-first, dependencies first.
+	private void visit(String name, LinkedHashSet<String> path, Set<String> done, List<String> out) throws ParseException
+	{
+		if (done.contains(name))
+			return;
+		if (!path.add(name))
+		{
+			StringBuilder sb = new StringBuilder();
+			boolean found = false;
+			for (String step : path)
+			{
+				found = found || step.equals(name);
+				if (found)
+					sb.append(step).append(" -> ");
+			}
+			throw new ParseException("Dependency cycle: " + sb.append(name));
+		}
+		for (String dependency : targets.get(name).depends)
+			visit(dependency, path, done, out);
+		path.remove(name);
+		done.add(name);
+		out.add(name);
+	}
+
+	/**
+	 * Runs a target after all of the targets that it depends on.
+	 * If any target fails, no more targets are started, and the targets that are running are waited for.
+	 * <p>If more than one target can run at once, each target's output is captured and printed
+	 * all at once when it ends, so that the output of different targets does not mix.
+	 * @param name the target name.
+	 * @param jobs the maximum amount of targets to run at once.
+	 * @param runner the runner for each single target.
+	 * @param out the output stream for messages and target output.
+	 * @param err the error stream for messages and target output.
+	 * @return 0 if all targets succeeded or were skipped, or the result of the first target that failed.
+	 * @throws ParseException if the target is not in this graph, or there is a dependency cycle.
+	 */
+	public int execute(String name, int jobs, Runner runner, PrintStream out, PrintStream err) throws ParseException
+	{
+		List<String> order = getBuildOrder(name);
+		Set<String> ran = new HashSet<>();
+
+		if (jobs <= 1 || order.size() <= 1)
+		{
+			for (String target : order)
+			{
+				if (isUpToDate(target, ran))
+				{
+					out.println("[Skipped] Target \"" + target + "\" is up to date.");
+					continue;
+				}
+				ran.add(target);
+				int result = runner.run(target, out, err);
+				if (result != 0)
+				{
+					err.println("ERROR: Target \"" + target + "\" failed (" + result + ").");
+					return result;
+				}
+			}
+			return 0;
+		}
+
+		Map<String, Integer> waiting = new HashMap<>();
+		Map<String, List<String>> dependents = new HashMap<>();
+		Deque<String> ready = new ArrayDeque<>();
+		for (String target : order)
+		{
+			Set<String> depends = targets.get(target).depends;
+			waiting.put(target, depends.size());
+			for (String dependency : depends)
+				dependents.computeIfAbsent(dependency, (k) -> new ArrayList<>()).add(target);
+			if (depends.isEmpty())
+				ready.add(target);
+		}
+
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, order.size()), (runnable) -> {
+			Thread thread = new Thread(runnable, "DoomMakeTargetWorker-" + threadId.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<TargetResult> completion = new ExecutorCompletionService<>(executor);
+
+		int result = 0;
+		int running = 0;
+		try {
+			while (true)
+			{
+				while (result == 0 && !ready.isEmpty())
+				{
+					final String target = ready.poll();
+					if (isUpToDate(target, ran))
+					{
+						out.println("[Skipped] Target \"" + target + "\" is up to date.");
+						finish(target, waiting, dependents, ready);
+						continue;
+					}
+					ran.add(target);
+					completion.submit(() -> runCaptured(runner, target));
+					running++;
+				}
+
+				if (running == 0)
+					break;
+
+				TargetResult done;
+				try {
+					done = completion.take().get();
+				} catch (ExecutionException e) {
+					// runCaptured() catches everything, this should not happen.
+					err.println("ERROR: " + e.getCause().getClass().getSimpleName() + ": " + e.getCause().getLocalizedMessage());
+					return -1;
+				}
+				running--;
+
+				done.print(out, err);
+				if (done.result != 0)
+				{
+					err.println("ERROR: Target \"" + done.target + "\" failed (" + done.result + ").");
+					if (result == 0)
+						result = done.result;
+				}
+				else
+				{
+					finish(done.target, waiting, dependents, ready);
+				}
+			}
+		} catch (InterruptedException e) {
+			err.println("ERROR: Interrupted while waiting for targets.");
+			return -1;
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	// Marks a target as done and readies the targets that only waited on it.
+	private static void finish(String target, Map<String, Integer> waiting, Map<String, List<String>> dependents, Deque<String> ready)
+	{
+		List<String> list = dependents.get(target);
+		if (list == null)
+			return;
+		for (String dependent : list)
+		{
+			int count = waiting.get(dependent) - 1;
+			waiting.put(dependent, count);
+			if (count == 0)
+				ready.add(dependent);
+		}
+	}
+
+	// Runs a target with captured output.
+	private static TargetResult runCaptured(Runner runner, String target)
+	{
+		ByteArrayOutputStream outBytes = new ByteArrayOutputStream(1024);
+		ByteArrayOutputStream errBytes = new ByteArrayOutputStream(1024);
+		PrintStream out = new PrintStream(outBytes, true);
+		PrintStream err = new PrintStream(errBytes, true);
+		int result;
+		try {
+			result = runner.run(target, out, err);
+		} catch (Throwable t) {
+			err.println("ERROR: " + t.getClass().getSimpleName() + ": " + t.getLocalizedMessage());
+			result = -1;
+		}
+		out.flush();
+		err.flush();
+		return new TargetResult(target, result, outBytes.toByteArray(), errBytes.toByteArray());
+	}
+
+	/**
+	 * Checks if a target can be skipped.
+	 * @param name the target name.
+	 * @param ran the targets that ran in this build.
+	 * @return true if the target has inputs and outputs, all outputs exist and are not older than every input,
+	 * 		and none of its dependencies ran.
+	 */
+	private boolean isUpToDate(String name, Set<String> ran)
+	{
+		Target target = targets.get(name);
+		if (target.inputs.isEmpty() || target.outputs.isEmpty())
+			return false;
+		for (String dependency : target.depends)
+			if (ran.contains(dependency))
+				return false;
+
+		long oldestOutput = Long.MAX_VALUE;
+		for (File output : target.outputs)
+		{
+			if (!output.isFile())
+				return false;
+			oldestOutput = Math.min(oldestOutput, output.lastModified());
+		}
+
+		for (File input : target.inputs)
+		{
+			if (!input.exists())
+				return false;
+			if (getNewestModified(input) > oldestOutput)
+				return false;
+		}
+		return true;
+	}
+
+	// Gets the newest modified date of a file or anything in a directory.
+	private static long getNewestModified(File file)
+	{
+		long out = file.lastModified();
+		if (file.isDirectory())
+		{
+			File[] files = file.listFiles();
+			if (files != null) for (File f : files)
+				out = Math.max(out, getNewestModified(f));
+		}
+		return out;
+	}
+
+	/**
+	 * Runs a single target.
+	 */
+	@FunctionalInterface
+	public interface Runner
+	{
+		/**
+		 * Runs a single target.
+		 * @param target the target name.
+		 * @param out the output stream to use.
+		 * @param err the error stream to use.
+		 * @return the result (0 is success).
+		 */
+		int run(String target, PrintStream out, PrintStream err);
+	}
+
+	/** A single target. */
+	private static class Target
+	{
+		private Set<String> depends;
+		private List<File> inputs;
+		private List<File> outputs;
+
+		private Target(String name)
+		{
+			this.depends = new LinkedHashSet<>();
+			this.inputs = new ArrayList<>();
+			this.outputs = new ArrayList<>();
+		}
+	}
+
+	/** A finished target with captured output. */
+	private static class TargetResult
+	{
+		private String target;
+		private int result;
+		private byte[] out;
+		private byte[] err;
+
+		private TargetResult(String target, int result, byte[] out, byte[] err)
+		{
+			this.target = target;
+			this.result = result;
+			this.out = out;
+			this.err = err;
+		}
+
+		private void print(PrintStream outStream, PrintStream errStream)
+		{
+			outStream.write(out, 0, out.length);
+			outStream.flush();
+			errStream.write(err, 0, err.length);
+			errStream.flush();
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.blackrook.json.JSONConversionException;
+import com.blackrook.json.JSONObject;
+import com.blackrook.json.JSONReader;
+import com.blackrook.json.JSONWriter;
+import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
+
+import net.mtrop.doom.tools.wadscript.RecordingResolver;
+
+/**
+ * Collects wall times for the stages of a DoomMake build (targets, tool calls, and heavy host functions),
+ * and keeps a history of them in a JSON-lines file, one build per line.
+ * <p>Host function resolvers are wrapped with {@link #wrap(String, String, ScriptFunctionResolver, String...)}
+ * for each build, and record into that build's timings only.
+ * @author Matthew Tropiano
+ */
+public class BuildTimings
+{
+	/** Stage name prefix for targets. */
+	public static final String STAGE_TARGET_PREFIX = "target:";
+	/** Stage name for the whole build. */
+	public static final String STAGE_TOTAL = "(total)";
+
+	private static final String JSON_TIME = "time";
+	private static final String JSON_TARGET = "target";
+	private static final String JSON_RESULT = "result";
+	private static final String JSON_STAGES = "stages";
+	private static final String JSON_NAME = "name";
+	private static final String JSON_CALLS = "calls";
+	private static final String JSON_MILLIS = "millis";
+
+	/** The target that was built. */
+	private final String targetName;
+	/** Stats by stage, in order of first record. */
+	private final Map<String, Stat> stages;
+	/** Build start time (epoch). */
+	private final long startTime;
+	/** Build start time. */
+	private final long startNanos;
+	/** Records calls to wrapped functions. */
+	private final RecordingResolver.Recorder recorder;
+
+	/**
+	 * Creates a new set of timings and starts the build clock.
+	 * @param targetName the name of the target that is being built.
+	 */
+	public BuildTimings(String targetName)
+	{
+		this.targetName = targetName;
+		this.stages = new LinkedHashMap<>();
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+		this.recorder = new RecordingResolver.Recorder()
+		{
+			@Override
+			public Object begin(String sectionName, String functionName)
+			{
+				return null;
+			}
+			
+			@Override
+			public void end(String sectionName, String functionName, Object state, long nanos)
+			{
+				record(functionName, nanos);
+			}
+		};
+	}
+
+	/**
+	 * Wraps a function resolver so that some (or all) of its functions are timed as stages of this build.
+	 * Each stage is named after the function, plus its namespace, if any (e.g. <code>TOOL::DECOHACK</code>).
+	 * @param sectionName the resolver section name.
+	 * @param namespace the namespace that the resolver is added with, or null for none.
+	 * @param resolver the resolver to wrap.
+	 * @param functionNames the names of the functions to time. If none are provided, all are timed.
+	 * @return a new resolver.
+	 */
+	public ScriptFunctionResolver wrap(String sectionName, String namespace, ScriptFunctionResolver resolver, String ... functionNames)
+	{
+		return new RecordingResolver(sectionName, namespace, resolver, recorder, functionNames);
+	}
+
+	/**
+	 * Records a finished stage.
+	 * Safe to call from many threads.
+	 * @param stageName the stage name.
+	 * @param nanos the time taken, in nanoseconds.
+	 */
+	public synchronized void record(String stageName, long nanos)
+	{
+		stages.computeIfAbsent(stageName, (k) -> new Stat()).add(nanos);
+	}
+
+	/**
+	 * Stops the build clock, appends this build to a history file, and prints a summary table that
+	 * compares each stage against the same stage in previous builds of the same target.
+	 * @param historyFile the history file (created if it does not exist).
+	 * @param result the build's result code.
+	 * @param compareCount the maximum amount of previous builds to compare against.
+	 * @param out the output stream for the summary.
+	 * @throws IOException if the history file could not be read or written.
+	 */
+	public void finish(File historyFile, int result, int compareCount, PrintStream out) throws IOException
+	{
+		record(STAGE_TOTAL, System.nanoTime() - startNanos);
+
+		Map<String, List<Double>> previous = readHistory(historyFile, compareCount);
+
+		JSONObject entry = toJSON(result);
+		StringWriter sw = new StringWriter();
+		JSONWriter.writeJSON(entry, new JSONWriter.Options(), sw);
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(historyFile, true), StandardCharsets.UTF_8))
+		{
+			writer.append(sw.toString().replaceAll("[\\r\\n]+", "")).append('\n');
+		}
+
+		printSummary(out, previous);
+	}
+
+	// Converts these timings into a JSON object.
+	private synchronized JSONObject toJSON(int result)
+	{
+		JSONObject stageArray = JSONObject.createEmptyArray();
+		for (Map.Entry<String, Stat> stage : stages.entrySet())
+		{
+			JSONObject stageObject = JSONObject.createEmptyObject();
+			stageObject.addMember(JSON_NAME, stage.getKey());
+			stageObject.addMember(JSON_CALLS, stage.getValue().calls);
+			stageObject.addMember(JSON_MILLIS, millis(stage.getValue().nanos));
+			stageArray.append(stageObject);
+		}
+		JSONObject out = JSONObject.createEmptyObject();
+		out.addMember(JSON_TIME, startTime);
+		out.addMember(JSON_TARGET, targetName);
+		out.addMember(JSON_RESULT, result);
+		out.addMember(JSON_STAGES, stageArray);
+		return out;
+	}
+
+	/**
+	 * Reads the stage times of the last successful builds of this target.
+	 * Malformed lines are skipped.
+	 * @return a map of stage name to times (in milliseconds), one per build that had the stage.
+	 */
+	private Map<String, List<Double>> readHistory(File historyFile, int compareCount) throws IOException
+	{
+		if (compareCount <= 0 || !historyFile.exists())
+			return Collections.emptyMap();
+
+		LinkedList<JSONObject> builds = new LinkedList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(historyFile), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if ((line = line.trim()).isEmpty())
+					continue;
+
+				JSONObject build;
+				try {
+					build = JSONReader.readJSON(new StringReader(line));
+				} catch (JSONConversionException e) {
+					continue;
+				}
+
+				if (build == null || !build.isObject())
+					continue;
+				JSONObject target = build.get(JSON_TARGET);
+				JSONObject result = build.get(JSON_RESULT);
+				if (target == null || result == null || !targetName.equals(target.getString()) || result.getLong() != 0L)
+					continue;
+
+				builds.add(build);
+				if (builds.size() > compareCount)
+					builds.removeFirst();
+			}
+		}
+
+		Map<String, List<Double>> out = new HashMap<>();
+		for (JSONObject build : builds)
+		{
+			JSONObject stageArray = build.get(JSON_STAGES);
+			if (stageArray == null || !stageArray.isArray())
+				continue;
+			for (int i = 0; i < stageArray.length(); i++)
+			{
+				JSONObject stage = stageArray.get(i);
+				JSONObject name = stage.get(JSON_NAME);
+				JSONObject millis = stage.get(JSON_MILLIS);
+				if (name != null && millis != null)
+					out.computeIfAbsent(name.getString(), (k) -> new ArrayList<>()).add(millis.getDouble());
+			}
+		}
+		return out;
+	}
+
+	// Prints the summary table, slowest stages first.
+	private synchronized void printSummary(PrintStream out, Map<String, List<Double>> previous)
+	{
+		List<Map.Entry<String, Stat>> list = new ArrayList<>(stages.entrySet());
+		list.sort((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos));
+
+		int builds = 0;
+		for (List<Double> times : previous.values())
+			builds = Math.max(builds, times.size());
+
+		out.printf("Timings for \"%s\" (compared to the average of the last %d successful build(s)):\n", targetName, builds);
+		out.printf("%-8s %12s %12s %9s  %s\n", "Calls", "Time ms", "Average ms", "Change", "Stage");
+		for (Map.Entry<String, Stat> entry : list)
+		{
+			Stat stat = entry.getValue();
+			double ms = millis(stat.nanos);
+			List<Double> times = previous.get(entry.getKey());
+			if (times == null || times.isEmpty())
+			{
+				out.printf("%-8d %12.3f %12s %9s  %s\n", stat.calls, ms, "-", "new", entry.getKey());
+			}
+			else
+			{
+				double average = 0.0;
+				for (Double d : times)
+					average += d;
+				average /= times.size();
+				String change = average > 0.0 ? String.format("%+.1f%%", (ms - average) * 100.0 / average) : "-";
+				out.printf("%-8d %12.3f %12.3f %9s  %s\n", stat.calls, ms, average, change, entry.getKey());
+			}
+		}
+	}
+
+	private static double millis(long nanos)
+	{
+		return nanos / 1000000.0;
+	}
+
+	/** Aggregate stage stats. */
+	private static class Stat
+	{
+		private long calls;
+		private long nanos;
+
+		private void add(long nanos)
+		{
+			this.calls++;
+			this.nanos += nanos;
+		}
+	}
+
+}
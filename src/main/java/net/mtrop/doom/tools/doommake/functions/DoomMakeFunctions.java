@@ -5,6 +5,7 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.doommake.functions;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -12,24 +13,56 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import com.blackrook.json.JSONConversionException;
+import com.blackrook.json.JSONObject;
+import com.blackrook.json.JSONReader;
+import com.blackrook.json.JSONWriter;
 import com.blackrook.rookscript.ScriptInstance;
+import com.blackrook.rookscript.ScriptIteratorType.IteratorPair;
 import com.blackrook.rookscript.ScriptValue;
 import com.blackrook.rookscript.ScriptValue.BufferType;
 import com.blackrook.rookscript.ScriptValue.Type;
@@ -39,6 +72,7 @@ import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
 import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
 import com.blackrook.rookscript.struct.PatternUtils;
 
+import net.mtrop.doom.tools.struct.ZipAppender;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.tools.common.Common;
@@ -165,7 +199,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		}
 	},
 	
-	COPYDIR(4)
+	COPYDIR(5)
 	{
 		@Override
 		protected Usage usage()
@@ -173,7 +207,8 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 			return ScriptFunctionUsage.create()
 				.instructions(
 					"Copies a series of files from one directory to another, replicating the tree in the destination. " +
-					"If the destination file exists, it is overwritten."
+					"If the destination file exists, it is overwritten, unless it has the same length and modified date as the source file, " +
+					"in which case it is not copied again (but is still returned in the list). Copied files keep the modified date of the source file."
 				)
 				.parameter("srcDir",
 					type(Type.STRING, "Path to source directory (base path)."),
@@ -190,9 +225,13 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 					type(Type.NULL, "Include everything."),
 					type(Type.STRING, "The pattern to match each file path against for inclusion. If matched, include.")
 				)
+				.parameter("threads",
+					type(Type.NULL, "Use the amount of available processors."),
+					type(Type.INTEGER, "The maximum amount of files to work on at the same time. 0 or less uses the amount of available processors.")
+				)
 				.returns(
 					type(Type.NULL, "If either file is null."),
-					type(Type.LIST, "[OBJECTREF:File, ...]", "The list of copied/created files (destination)."),
+					type(Type.LIST, "[OBJECTREF:File, ...]", "The list of copied/created files (destination), in source directory order."),
 					type(Type.ERROR, "BadFile", "If the source or destination directory does not exist."),
 					type(Type.ERROR, "BadPattern", "If the input RegEx pattern is malformed."),
 					type(Type.ERROR, "IOError", "If a read or write error occurs."),
@@ -207,6 +246,8 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
 			{
+				scriptInstance.popStackValue(temp);
+				int threads = getThreadCount(temp);
 				scriptInstance.popStackValue(temp);
 				String regex = temp.isNull() ? null : temp.asString();
 				scriptInstance.popStackValue(temp);
@@ -244,7 +285,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 				}
 				
 				returnValue.setEmptyList(128);
-				copyDir(srcDir, srcDir, destDir, recursive, filter, returnValue);
+				copyDir(srcDir, destDir, recursive, filter, threads, returnValue);
 				return true;
 			}
 			finally
@@ -317,10 +358,10 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 					return true;
 				}
 				
-				ZipOutputStream zos = null;
+				ZipTarget zos = null;
 				try 
 				{
-					zos = append && zipFile.exists() ? reopenZipFile(zipFile, returnValue) : new ZipOutputStream(new FileOutputStream(zipFile));
+					zos = openZipTarget(zipFile, append, false, returnValue);
 					if (returnValue.isError())
 					{
 						IOUtils.close(zos);
@@ -340,6 +381,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 							break;
 					}
 
+					closeZipTarget(zos, returnValue);
 					if (!returnValue.isError())
 					{
 						if (wasString)
@@ -366,7 +408,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		}
 	},
 	
-	ZIPDIR(6)
+	ZIPDIR(7)
 	{
 		@Override
 		protected Usage usage()
@@ -374,7 +416,8 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 			return ScriptFunctionUsage.create()
 				.instructions(
 					"Compresses a series of files into an archive from a directory, preserving directory trees. " +
-					"Always recurses directory structure. If the destination file exists, it is overwritten, unless [append] is true."
+					"Always recurses directory structure. If the destination file exists, it is overwritten, unless [append] is true. " +
+					"Entries are written in the same order, and with the same data, for any amount of threads."
 				)
 				.parameter("zipfile",
 					type(Type.STRING, "Path to source directory (base path)."),
@@ -399,6 +442,10 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 					type(Type.NULL, "Default: True."),
 					type(Type.BOOLEAN, "True to compress, false to not compress.")
 				)
+				.parameter("threads",
+					type(Type.NULL, "Use the amount of available processors."),
+					type(Type.INTEGER, "The maximum amount of files to work on at the same time. 0 or less uses the amount of available processors.")
+				)
 				.returns(
 					type(Type.NULL, "If [zipfile] is null."),
 					type(Type.STRING, "The path to the created file, if [zipfile] is a STRING."),
@@ -417,6 +464,8 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 			ScriptValue files = CACHEVALUE2.get();
 			try 
 			{
+				scriptInstance.popStackValue(temp);
+				int threads = getThreadCount(temp);
 				scriptInstance.popStackValue(temp);
 				boolean compressed = temp.isNull() ? true : temp.asBoolean();
 				scriptInstance.popStackValue(temp);
@@ -452,18 +501,23 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 					}
 				}
 				
-				ZipOutputStream zos = null;
+				ZipTarget zos = null;
 				try 
 				{
-					zos = append && zipFile.exists() ? reopenZipFile(zipFile, returnValue) : new ZipOutputStream(new FileOutputStream(zipFile, true));
+					// Always written with an appender where possible, so that the thread count does not change the output.
+					zos = openZipTarget(zipFile, append, true, returnValue);
 					if (returnValue.isError())
 					{
 						IOUtils.close(zos);
 						return true;
 					}
 
-					zipDir(zos, dir, dir, prefix, compressed, filter, returnValue);
+					if (threads > 1 && zos.getAppender() != null)
+						zipDirParallel(zos.getAppender(), dir, prefix, compressed, filter, threads, returnValue);
+					else
+						zipDir(zos, dir, dir, prefix, compressed, filter, returnValue);
 
+					closeZipTarget(zos, returnValue);
 					if (!returnValue.isError())
 					{
 						if (wasString)
@@ -764,125 +818,859 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		
 	},
 	
-	;
-	
-	private final int parameterCount;
-	private Usage usage;
-	private DoomMakeFunctions(int parameterCount)
-	{
-		this.parameterCount = parameterCount;
-		this.usage = null;
-	}
-	
-	private static final Charset UTF8 = Charset.forName("UTF-8");
-	
-	/**
-	 * @return a function resolver that handles all of the functions in this enum.
-	 */
-	public static final ScriptFunctionResolver createResolver()
-	{
-		return new EnumFunctionResolver(DoomMakeFunctions.values());
-	}
-
-	@Override
-	public int getParameterCount()
-	{
-		return parameterCount;
-	}
-
-	@Override
-	public Usage getUsage()
-	{
-		if (usage == null)
-			usage = usage();
-		return usage;
-	}
-	
-	protected abstract Usage usage();
-
-	@Override
-	public abstract boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue);
-
-	/**
-	 * Pops a variable off the stack and, using a temp variable, extracts a File/String.
-	 * @param scriptInstance the script instance.
-	 * @param temp the temporary script value.
-	 * @return a File object.
-	 */
-	private static File popFile(ScriptInstance scriptInstance, ScriptValue temp) 
+	HASHDIRCONTENTS(4)
 	{
-		scriptInstance.popStackValue(temp);
-		return getFile(temp);
-	}
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Hashes the contents of the files in a directory. Unlike HASHDIR(), the result depends only on " +
+					"the relative file paths and their data, so it does not change if a file is only touched. " +
+					"Files are visited in sorted path order and hashed in parallel, and the combined hash is a hash " +
+					"of each file's path and content hash, in that order. " +
+					"Content hashes are remembered for the rest of the run by file path, length, and modified date, " +
+					"so hashing an unchanged directory again only checks each file's length and date."
+				)
+				.parameter("path", 
+					type(Type.STRING, "Directory path."),
+					type(Type.OBJECTREF, "File", "Directory path.")
+				)
+				.parameter("recursive",
+					type(Type.BOOLEAN, "If true, scan recursively.")
+				)
+				.parameter("algorithm",
+					type(Type.NULL, "Use \"SHA-1\"."),
+					type(Type.STRING, "The name of the hashing algorithm to use.")
+				)
+				.parameter("threads",
+					type(Type.NULL, "Use the amount of available processors."),
+					type(Type.INTEGER, "The maximum amount of files to work on at the same time. 0 or less uses the amount of available processors.")
+				)
+				.returns(
+					type(Type.NULL, "If the provided directory is null."),
+					type(Type.BUFFER, "A buffer containing the resultant hash digest."),
+					type(Type.ERROR, "BadPath", "If the provided path is not a directory."),
+					type(Type.ERROR, "BadAlgorithm", "If the hash algorithm is not available."),
+					type(Type.ERROR, "IOError", "If a file could not be read."),
+					type(Type.ERROR, "Security", "If the OS is preventing file inspection.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				int threads = getThreadCount(temp);
+				scriptInstance.popStackValue(temp);
+				String algo = temp.isNull() ? "SHA-1" : temp.asString();
+				scriptInstance.popStackValue(temp);
+				boolean recursive = temp.asBoolean();
+				File pathDir = popFile(scriptInstance, temp);
+				
+				if (pathDir == null)
+				{
+					returnValue.setNull();
+					return true;
+				}
+				else if (!pathDir.exists())
+				{
+					returnValue.setError("BadPath", "Provided path does not exist.");
+					return true;
+				}
+				else if (!pathDir.isDirectory())
+				{
+					returnValue.setError("BadPath", "Provided path is not a directory.");
+					return true;
+				}
 
-	/**
-	 * Pops a variable off the stack and, using a temp variable, extracts a URL.
-	 * @param scriptInstance the script instance.
-	 * @param temp the temporary script value.
-	 * @return a URL object.
-	 */
-	private static URL popURL(ScriptInstance scriptInstance, ScriptValue temp) throws MalformedURLException 
-	{
-		scriptInstance.popStackValue(temp);
-		return getURL(temp);
-	}
+				MessageDigest digest;
+				try {
+					digest = MessageDigest.getInstance(algo);
+				} catch (NoSuchAlgorithmException e) {
+					returnValue.setError("BadAlgorithm", "Hash algorithm is not available: " + algo);
+					return true;
+				}
 
-	// Get file.
-	private static File getFile(ScriptValue temp) 
-	{
-		if (temp.isNull())
-			return null;
-		else if (temp.isObjectRef(File.class))
-			return temp.asObjectType(File.class);
-		else
-			return new File(temp.asString());
-	}
-	
-	// Get URL.
-	private static URL getURL(ScriptValue temp) throws MalformedURLException 
-	{
-		if (temp.isNull())
-			return null;
-		else if (temp.isObjectRef(URL.class))
-			return temp.asObjectType(URL.class);
-		else
-			return new URL(temp.asString());
-	}
+				byte[] hash;
+				try {
+					hash = digestDirectoryContents(digest, algo, recursive, pathDir, threads);
+				} catch (IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+					return true;
+				} catch (SecurityException e) {
+					returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+					return true;
+				}
+				
+				returnValue.setEmptyBuffer(hash.length);
+				returnValue.asObjectType(BufferType.class).readBytes(0, hash, 0, hash.length);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+		
+	},
 	
-	// Return value is file list.
-	private static void copyDir(File base, File srcDir, File destDir, boolean recursive, FileFilter filter, ScriptValue returnValue)
+	DIRFINGERPRINT(4)
 	{
-		ScriptValue fileValue = ScriptValue.create(null);
-		for (File f : srcDir.listFiles())
+		@Override
+		protected Usage usage() 
 		{
-			String treeName = f.getPath().substring(base.getPath().length());
-			if (f.isDirectory() && recursive)
-				copyDir(base, f, destDir, recursive, filter, returnValue);
-			else if (filter.accept(f))
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Creates a fingerprint of each file in a directory by hashing its contents (on as many threads as there are processors). " +
+					"If a previous fingerprint is provided, files with the same length and modified date as before " +
+					"are not read again, and keep their previous hash. Hashes are also shared with HASHDIRCONTENTS(). " +
+					"Use FINGERPRINTCHANGES() to find out which files changed between two fingerprints."
+				)
+				.parameter("path", 
+					type(Type.STRING, "Directory path."),
+					type(Type.OBJECTREF, "File", "Directory path.")
+				)
+				.parameter("recursive",
+					type(Type.BOOLEAN, "If true, scan recursively.")
+				)
+				.parameter("previous",
+					type(Type.NULL, "Hash all files."),
+					type(Type.MAP, "A fingerprint previously returned by this function for the same directory.")
+				)
+				.parameter("algorithm",
+					type(Type.NULL, "Use \"SHA-1\"."),
+					type(Type.STRING, "The name of the hashing algorithm to use.")
+				)
+				.returns(
+					type(Type.NULL, "If the provided directory is null."),
+					type(Type.MAP, "{[relativePath]:{hash:STRING, length:INTEGER, modified:INTEGER}, ...}", "A map of file path (relative to the directory, separated by \"/\") to file info and hex content hash."),
+					type(Type.ERROR, "BadPath", "If the provided path is not a directory."),
+					type(Type.ERROR, "BadAlgorithm", "If the hash algorithm is not available."),
+					type(Type.ERROR, "IOError", "If a file could not be read."),
+					type(Type.ERROR, "Security", "If the OS is preventing file inspection.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue previous = CACHEVALUE2.get();
+			try 
 			{
-				copyFile(f, new File(destDir.getPath() + treeName), true, fileValue);
-				if (fileValue.isError())
+				scriptInstance.popStackValue(temp);
+				String algo = temp.isNull() ? "SHA-1" : temp.asString();
+				scriptInstance.popStackValue(previous);
+				scriptInstance.popStackValue(temp);
+				boolean recursive = temp.asBoolean();
+				File pathDir = popFile(scriptInstance, temp);
+				
+				if (pathDir == null)
 				{
-					returnValue.set(fileValue);
-					break;
+					returnValue.setNull();
+					return true;
 				}
-				returnValue.listAdd(fileValue);
+				else if (!pathDir.exists())
+				{
+					returnValue.setError("BadPath", "Provided path does not exist.");
+					return true;
+				}
+				else if (!pathDir.isDirectory())
+				{
+					returnValue.setError("BadPath", "Provided path is not a directory.");
+					return true;
+				}
+
+				try {
+					MessageDigest.getInstance(algo);
+				} catch (NoSuchAlgorithmException e) {
+					returnValue.setError("BadAlgorithm", "Hash algorithm is not available: " + algo);
+					return true;
+				}
+
+				try {
+					fingerprintDirectory(algo, recursive, pathDir, previous.isMap() ? previous : null, Runtime.getRuntime().availableProcessors(), returnValue);
+				} catch (IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				} catch (SecurityException e) {
+					returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				previous.setNull();
 			}
 		}
-	}
+		
+	},
 	
-	// Return value is file.
-	private static void copyFile(File srcFile, File destFile, boolean createDirs, ScriptValue returnValue) 
+	FINGERPRINTCHANGES(2)
 	{
-		try (FileInputStream fis = new FileInputStream(srcFile)) 
-		{
-			writeFile(fis, destFile, createDirs, returnValue);
-		} 
-		catch (FileNotFoundException e) 
+		@Override
+		protected Usage usage() 
 		{
-			returnValue.setError("BadFile", e.getMessage(), e.getLocalizedMessage());
-		}
-		catch (IOException e) 
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Compares two directory fingerprints made by DIRFINGERPRINT() and returns which files were added, " +
+					"changed, or removed between them."
+				)
+				.parameter("previous",
+					type(Type.NULL, "No previous fingerprint (all files are added)."),
+					type(Type.MAP, "The older fingerprint.")
+				)
+				.parameter("current",
+					type(Type.MAP, "The newer fingerprint.")
+				)
+				.returns(
+					type(Type.MAP, "{added:LIST, changed:LIST, removed:LIST}", "The sorted lists of relative file paths that were added, changed, and removed. All lists are empty if nothing changed."),
+					type(Type.ERROR, "BadParameter", "If [current] is not a map.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue current = CACHEVALUE1.get();
+			ScriptValue previous = CACHEVALUE2.get();
+			ScriptValue temp = CACHEVALUE3.get();
+			try 
+			{
+				scriptInstance.popStackValue(current);
+				scriptInstance.popStackValue(previous);
+				if (!current.isMap())
+				{
+					returnValue.setError("BadParameter", "Current fingerprint is not a map.");
+					return true;
+				}
+				
+				ScriptValue field = ScriptValue.create(null);
+				Set<String> added = new TreeSet<>();
+				Set<String> changed = new TreeSet<>();
+				Set<String> removed = new TreeSet<>();
+				
+				for (IteratorPair pair : current)
+				{
+					String path = pair.getKey().asString();
+					String hash = getFingerprintHash(pair.getValue(), field);
+					if (!previous.isMap())
+					{
+						added.add(path);
+						continue;
+					}
+					previous.mapGet(path, temp);
+					if (temp.isNull())
+						added.add(path);
+					else if (hash == null || !hash.equals(getFingerprintHash(temp, field)))
+						changed.add(path);
+				}
+				if (previous.isMap()) for (IteratorPair pair : previous)
+				{
+					String path = pair.getKey().asString();
+					current.mapGet(path, temp);
+					if (temp.isNull())
+						removed.add(path);
+				}
+				
+				returnValue.setEmptyMap(3);
+				setStringList(temp, added);
+				returnValue.mapSet("added", temp);
+				setStringList(temp, changed);
+				returnValue.mapSet("changed", temp);
+				setStringList(temp, removed);
+				returnValue.mapSet("removed", temp);
+				return true;
+			}
+			finally
+			{
+				current.setNull();
+				previous.setNull();
+				temp.setNull();
+			}
+		}
+		
+	},
+	
+	SETBUILDFLAG(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Sets a build flag (usually the name of something that was built). Build flags are shared by all scripts " +
+					"run by the same DoomMake build, including targets that run at the same time as part of a target graph, " +
+					"and are cleared at the start of each build."
+				)
+				.parameter("name", 
+					type(Type.STRING, "The flag name.")
+				)
+				.returns(
+					type(Type.BOOLEAN, "True if the flag was not already set, false if it was.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				returnValue.set(BUILD_FLAGS.add(temp.asString()));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	HASBUILDFLAG(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Checks if a build flag was set by SETBUILDFLAG() during this build."
+				)
+				.parameter("name", 
+					type(Type.STRING, "The flag name.")
+				)
+				.returns(
+					type(Type.BOOLEAN, "True if the flag is set, false if not.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				returnValue.set(BUILD_FLAGS.contains(temp.asString()));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	READLOCK(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Reads a build lock file. The read never overlaps a write made with SETLOCKVALUE() (or by the agent) in this process, " +
+					"and lock files are replaced in one step when written, so a partly written file is never read."
+				)
+				.parameter("lockfile", 
+					type(Type.STRING, "Path to the lock file."),
+					type(Type.OBJECTREF, "File", "Path to the lock file.")
+				)
+				.returns(
+					type(Type.MAP, "The lock file contents (an empty map if the file does not exist)."),
+					type(Type.ERROR, "BadParameter", "If [lockfile] is null."),
+					type(Type.ERROR, "BadLock", "If the lock file is not valid JSON."),
+					type(Type.ERROR, "IOError", "If a read error occurs."),
+					type(Type.ERROR, "Security", "If the OS is preventing the read.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				File lockFile = popFile(scriptInstance, temp);
+				if (lockFile == null)
+				{
+					returnValue.setError("BadParameter", "No lock file provided.");
+					return true;
+				}
+				
+				try {
+					JSONObject lock = readLockFile(lockFile);
+					if (lock.isObject())
+						fromJSON(lock, returnValue);
+					else
+						returnValue.setEmptyMap();
+				} catch (JSONConversionException e) {
+					returnValue.setError("BadLock", "The lock file could not be read: " + e.getMessage());
+				} catch (IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				} catch (SecurityException e) {
+					returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	SETLOCKVALUE(4)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Sets one value in a section of a build lock file, reading the file again and writing it back in one step, " +
+					"so that other values written in the meantime (by targets that run at the same time, or by the agent) are kept. " +
+					"Null values in lists and maps are left out."
+				)
+				.parameter("lockfile", 
+					type(Type.STRING, "Path to the lock file."),
+					type(Type.OBJECTREF, "File", "Path to the lock file.")
+				)
+				.parameter("section", 
+					type(Type.STRING, "The name of the section (a top-level object, created if missing).")
+				)
+				.parameter("key", 
+					type(Type.STRING, "The key in the section.")
+				)
+				.parameter("value", 
+					type(Type.BOOLEAN, "The value to set."),
+					type(Type.INTEGER, "The value to set."),
+					type(Type.FLOAT, "The value to set."),
+					type(Type.STRING, "The value to set."),
+					type(Type.LIST, "The value to set."),
+					type(Type.MAP, "The value to set.")
+				)
+				.returns(
+					type(Type.BOOLEAN, "True."),
+					type(Type.ERROR, "BadParameter", "If [lockfile] is null or [value] is null."),
+					type(Type.ERROR, "BadLock", "If the lock file is not valid JSON."),
+					type(Type.ERROR, "IOError", "If a read or write error occurs."),
+					type(Type.ERROR, "Security", "If the OS is preventing the read or write.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue value = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(value);
+				scriptInstance.popStackValue(temp);
+				final String key = temp.asString();
+				scriptInstance.popStackValue(temp);
+				final String section = temp.asString();
+				File lockFile = popFile(scriptInstance, temp);
+				
+				if (lockFile == null)
+				{
+					returnValue.setError("BadParameter", "No lock file provided.");
+					return true;
+				}
+				if (value.isNull())
+				{
+					returnValue.setError("BadParameter", "Lock values cannot be null.");
+					return true;
+				}
+				
+				final JSONObject json = toJSON(value);
+				try {
+					updateLockFile(lockFile, (lock) -> {
+						JSONObject sectionObject = lock.get(section);
+						if (sectionObject == null || !sectionObject.isObject())
+						{
+							sectionObject = JSONObject.createEmptyObject();
+							lock.addMember(section, sectionObject);
+						}
+						sectionObject.addMember(key, json);
+					});
+					returnValue.set(true);
+				} catch (JSONConversionException e) {
+					returnValue.setError("BadLock", "The lock file could not be read: " + e.getMessage());
+				} catch (IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				} catch (SecurityException e) {
+					returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				value.setNull();
+			}
+		}
+	},
+	
+	;
+	
+	private final int parameterCount;
+	private Usage usage;
+	private DoomMakeFunctions(int parameterCount)
+	{
+		this.parameterCount = parameterCount;
+		this.usage = null;
+	}
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/** Build flags for the current build. */
+	private static final Set<String> BUILD_FLAGS = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Clears all build flags set by SETBUILDFLAG(). 
+	 * Should be called at the start of each build.
+	 */
+	public static void clearBuildFlags()
+	{
+		BUILD_FLAGS.clear();
+	}
+	
+	/** Guards reads and writes of lock files, so that concurrent updates do not overwrite each other. */
+	private static final Object LOCK_FILE_MUTEX = new Object();
+	
+	/**
+	 * Reads a lock JSON file.
+	 * If the file does not exist, an empty object is returned.
+	 * @param lockFile the lock file.
+	 * @return the parsed object.
+	 * @throws IOException if the file could not be opened or read.
+	 * @throws JSONConversionException if the JSON is malformed.
+	 */
+	public static JSONObject readLockFile(File lockFile) throws IOException
+	{
+		synchronized (LOCK_FILE_MUTEX)
+		{
+			if (!lockFile.exists())
+				return JSONObject.createEmptyObject();
+			
+			JSONObject lockRoot;
+			try (Reader reader = new InputStreamReader(new FileInputStream(lockFile), UTF8))
+			{
+				lockRoot = JSONReader.readJSON(reader);
+			}
+			return lockRoot != null ? lockRoot : JSONObject.createEmptyObject();
+		}
+	}
+	
+	/**
+	 * Writes a lock JSON file.
+	 * The file is written to a temporary file next to it first, and then moved over it,
+	 * so that readers never see a partly written file.
+	 * @param lockFile the lock file.
+	 * @param lockRoot the lock object.
+	 * @throws IOException if the file could not be opened or written.
+	 */
+	public static void writeLockFile(File lockFile, JSONObject lockRoot) throws IOException
+	{
+		synchronized (LOCK_FILE_MUTEX)
+		{
+			if (!FileUtils.createPathForFile(lockFile))
+				throw new IOException("Could not create directories for lock file.");
+			
+			JSONWriter.Options jsonOptions = new JSONWriter.Options();
+			jsonOptions.setIndentation("\t");
+			File tempFile = new File(lockFile.getPath() + ".tmp");
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), UTF8))
+			{
+				JSONWriter.writeJSON(lockRoot, jsonOptions, writer);
+			}
+			try {
+				Files.move(tempFile.toPath(), lockFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				tempFile.delete();
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Reads a lock JSON file, changes it, and writes it back, 
+	 * with no other lock file reads or writes in this process in between.
+	 * @param lockFile the lock file.
+	 * @param updater the function that changes the lock object.
+	 * @throws IOException if the file could not be read or written.
+	 * @throws JSONConversionException if the JSON is malformed.
+	 */
+	public static void updateLockFile(File lockFile, Consumer<JSONObject> updater) throws IOException
+	{
+		synchronized (LOCK_FILE_MUTEX)
+		{
+			JSONObject lockRoot = readLockFile(lockFile);
+			updater.accept(lockRoot);
+			writeLockFile(lockFile, lockRoot);
+		}
+	}
+	
+	// Converts JSON to a script value.
+	private static void fromJSON(JSONObject json, ScriptValue out)
+	{
+		if (json.isObject())
+		{
+			out.setEmptyMap();
+			for (String name : json.getMemberNames())
+			{
+				ScriptValue member = ScriptValue.create(null);
+				fromJSON(json.get(name), member);
+				out.mapSet(name, member);
+			}
+		}
+		else if (json.isArray())
+		{
+			out.setEmptyList(json.length());
+			for (int i = 0; i < json.length(); i++)
+			{
+				ScriptValue element = ScriptValue.create(null);
+				fromJSON(json.get(i), element);
+				out.listAdd(element);
+			}
+		}
+		else
+		{
+			out.set(json.getValue());
+		}
+	}
+	
+	// Converts a script value to JSON. Null values in lists and maps are left out.
+	private static JSONObject toJSON(ScriptValue value)
+	{
+		if (value.isBoolean())
+			return JSONObject.create(value.asBoolean());
+		else if (value.isInteger())
+			return JSONObject.create(value.asLong());
+		else if (value.isFloat())
+			return JSONObject.create(value.asDouble());
+		else if (value.isList())
+		{
+			JSONObject out = JSONObject.createEmptyArray();
+			ScriptValue element = ScriptValue.create(null);
+			for (int i = 0; i < value.length(); i++)
+			{
+				value.listGetByIndex(i, element);
+				if (!element.isNull())
+					out.append(toJSON(element));
+			}
+			return out;
+		}
+		else if (value.isMap())
+		{
+			JSONObject out = JSONObject.createEmptyObject();
+			for (IteratorPair pair : value)
+			{
+				if (!pair.getValue().isNull())
+					out.addMember(pair.getKey().asString(), toJSON(pair.getValue()));
+			}
+			return out;
+		}
+		else
+			return JSONObject.create(value.asString());
+	}
+	
+	/**
+	 * Clears the file content hashes kept for HASHDIRCONTENTS() and DIRFINGERPRINT().
+	 */
+	public static void clearContentHashes()
+	{
+		synchronized (CONTENT_HASHES)
+		{
+			CONTENT_HASHES.clear();
+		}
+	}
+	
+	/**
+	 * @return a function resolver that handles all of the functions in this enum.
+	 */
+	public static final ScriptFunctionResolver createResolver()
+	{
+		return new EnumFunctionResolver(DoomMakeFunctions.values());
+	}
+
+	@Override
+	public int getParameterCount()
+	{
+		return parameterCount;
+	}
+
+	@Override
+	public Usage getUsage()
+	{
+		if (usage == null)
+			usage = usage();
+		return usage;
+	}
+	
+	protected abstract Usage usage();
+
+	@Override
+	public abstract boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue);
+
+	/**
+	 * Pops a variable off the stack and, using a temp variable, extracts a File/String.
+	 * @param scriptInstance the script instance.
+	 * @param temp the temporary script value.
+	 * @return a File object.
+	 */
+	private static File popFile(ScriptInstance scriptInstance, ScriptValue temp) 
+	{
+		scriptInstance.popStackValue(temp);
+		return getFile(temp);
+	}
+
+	/**
+	 * Pops a variable off the stack and, using a temp variable, extracts a URL.
+	 * @param scriptInstance the script instance.
+	 * @param temp the temporary script value.
+	 * @return a URL object.
+	 */
+	private static URL popURL(ScriptInstance scriptInstance, ScriptValue temp) throws MalformedURLException 
+	{
+		scriptInstance.popStackValue(temp);
+		return getURL(temp);
+	}
+
+	// Get file.
+	private static File getFile(ScriptValue temp) 
+	{
+		if (temp.isNull())
+			return null;
+		else if (temp.isObjectRef(File.class))
+			return temp.asObjectType(File.class);
+		else
+			return new File(temp.asString());
+	}
+	
+	// Get URL.
+	private static URL getURL(ScriptValue temp) throws MalformedURLException 
+	{
+		if (temp.isNull())
+			return null;
+		else if (temp.isObjectRef(URL.class))
+			return temp.asObjectType(URL.class);
+		else
+			return new URL(temp.asString());
+	}
+	
+	// Return value is file list.
+	private static void copyDir(File srcDir, File destDir, boolean recursive, FileFilter filter, int threads, ScriptValue returnValue)
+	{
+		Map<File, File> files = new LinkedHashMap<>();
+		collectCopyFiles(srcDir, srcDir, destDir, recursive, filter, files);
+		
+		// Directories are made up front - concurrent mkdirs() on the same path can fail.
+		Set<File> dirs = new LinkedHashSet<>();
+		for (File destFile : files.values())
+			dirs.add(destFile.getAbsoluteFile().getParentFile());
+		for (File dir : dirs)
+		{
+			if (!FileUtils.createPath(dir.getPath()))
+			{
+				returnValue.setError("IOError", "Could not create directories for target file: " + dir.getPath());
+				return;
+			}
+		}
+		
+		List<Callable<File>> tasks = new ArrayList<>(files.size());
+		for (Map.Entry<File, File> entry : files.entrySet())
+		{
+			final File srcFile = entry.getKey();
+			final File destFile = entry.getValue();
+			tasks.add(() -> copyChangedFile(srcFile, destFile));
+		}
+		
+		ScriptValue fileValue = ScriptValue.create(null);
+		try 
+		{
+			for (Future<File> result : runTasks(tasks, threads, "DoomMakeCopyWorker-"))
+			{
+				fileValue.set(getTaskResult(result));
+				returnValue.listAdd(fileValue);
+			}
+		} 
+		catch (FileNotFoundException | NoSuchFileException e) 
+		{
+			returnValue.setError("BadFile", e.getMessage(), e.getLocalizedMessage());
+		}
+		catch (IOException e) 
+		{
+			returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+		}
+		catch (SecurityException e) 
+		{
+			returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+		}
+	}
+	
+	// Collects source files and their destinations, in directory order.
+	private static void collectCopyFiles(File base, File srcDir, File destDir, boolean recursive, FileFilter filter, Map<File, File> out)
+	{
+		for (File f : srcDir.listFiles())
+		{
+			String treeName = f.getPath().substring(base.getPath().length());
+			if (f.isDirectory())
+			{
+				if (recursive)
+					collectCopyFiles(base, f, destDir, recursive, filter, out);
+			}
+			else if (filter.accept(f))
+			{
+				out.put(f, new File(destDir.getPath() + treeName));
+			}
+		}
+	}
+	
+	// Copies a file (by the OS, if possible), unless the destination has the same length and date.
+	private static File copyChangedFile(File srcFile, File destFile) throws IOException
+	{
+		if (destFile.isFile() && destFile.length() == srcFile.length() && destFile.lastModified() == srcFile.lastModified())
+			return destFile;
+		Files.copy(srcFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		return destFile;
+	}
+	
+	// Return value is file.
+	private static void copyFile(File srcFile, File destFile, boolean createDirs, ScriptValue returnValue) 
+	{
+		if (srcFile.isDirectory())
+		{
+			returnValue.setError("BadFile", "Source file is a directory: " + srcFile.getPath());
+			return;
+		}
+		if (createDirs && !FileUtils.createPathForFile(destFile))
+		{
+			returnValue.setError("IOError", "Could not create directories for target file: " + destFile.getPath());
+			return;
+		}
+		try
+		{
+			Files.copy(srcFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			returnValue.set(destFile);
+		} 
+		catch (NoSuchFileException e) 
+		{
+			returnValue.setError("BadFile", e.getMessage(), e.getLocalizedMessage());
+		}
+		catch (IOException e) 
 		{
 			returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
 		}
@@ -985,7 +1773,147 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		return zout;
 	}
 	
-	private static void zipDir(ZipOutputStream zos, File base, File srcDir, String prefix, boolean compressed, FileFilter filter, ScriptValue returnValue)
+	/**
+	 * A destination for zipped files.
+	 */
+	private interface ZipTarget extends Closeable
+	{
+		void addFile(File srcFile, String entryName, boolean compressed) throws IOException;
+		
+		/**
+		 * @return the appender that this writes to, or null if it does not use one.
+		 */
+		ZipAppender getAppender();
+	}
+	
+	// Opens a zip for writing. Appends in place if possible, else rewrites the existing entries.
+	// If useAppender is true, new zips are also written with an appender.
+	private static ZipTarget openZipTarget(File zipFile, boolean append, boolean useAppender, ScriptValue returnValue) throws FileNotFoundException
+	{
+		if (append && zipFile.exists())
+		{
+			final ZipAppender appender;
+			try {
+				appender = new ZipAppender(zipFile);
+			} catch (ZipException e) {
+				// Can't be appended to in place - rewrite it.
+				ZipOutputStream zout = reopenZipFile(zipFile, returnValue);
+				return zout != null ? createZipTarget(zout) : null;
+			} catch (IOException e) {
+				returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				return null;
+			} catch (SecurityException e) {
+				returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+				return null;
+			}
+			return createZipTarget(appender);
+		}
+		else if (useAppender)
+		{
+			try {
+				return createZipTarget(ZipAppender.create(zipFile));
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				return null;
+			} catch (SecurityException e) {
+				returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+				return null;
+			}
+		}
+		return createZipTarget(new ZipOutputStream(new FileOutputStream(zipFile)));
+	}
+	
+	private static ZipTarget createZipTarget(final ZipAppender appender)
+	{
+		return new ZipTarget()
+		{
+			@Override
+			public void addFile(File srcFile, String entryName, boolean compressed) throws IOException
+			{
+				try (FileInputStream fis = new FileInputStream(srcFile))
+				{
+					appender.addEntry(entryName, srcFile.lastModified(), fis, compressed);
+				}
+			}
+			
+			@Override
+			public ZipAppender getAppender()
+			{
+				return appender;
+			}
+			
+			@Override
+			public void close() throws IOException
+			{
+				appender.close();
+			}
+		};
+	}
+	
+	private static ZipTarget createZipTarget(final ZipOutputStream zos)
+	{
+		return new ZipTarget()
+		{
+			@Override
+			public void addFile(File srcFile, String entryName, boolean compressed) throws IOException
+			{
+				ZipEntry entry = new ZipEntry(entryName);
+				entry.setTime(srcFile.lastModified());
+				if (!compressed)
+				{
+					// Stored entries need their size and CRC up front.
+					CRC32 crc = new CRC32();
+					long size = 0L;
+					try (FileInputStream fis = new FileInputStream(srcFile))
+					{
+						byte[] buffer = new byte[16384];
+						int buf;
+						while ((buf = fis.read(buffer)) > 0)
+						{
+							crc.update(buffer, 0, buf);
+							size += buf;
+						}
+					}
+					entry.setMethod(ZipEntry.STORED);
+					entry.setSize(size);
+					entry.setCompressedSize(size);
+					entry.setCrc(crc.getValue());
+				}
+				try (FileInputStream fis = new FileInputStream(srcFile))
+				{
+					zos.putNextEntry(entry);
+					IOUtils.relay(fis, zos);
+				}
+			}
+			
+			@Override
+			public ZipAppender getAppender()
+			{
+				return null;
+			}
+			
+			@Override
+			public void close() throws IOException
+			{
+				zos.close();
+			}
+		};
+	}
+	
+	// Closes a zip target, reporting errors (closing writes the directory).
+	private static void closeZipTarget(ZipTarget target, ScriptValue returnValue)
+	{
+		try {
+			target.close();
+		} catch (IOException e) {
+			if (!returnValue.isError())
+				returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+		}
+	}
+	
+	private static void zipDir(ZipTarget zos, File base, File srcDir, String prefix, boolean compressed, FileFilter filter, ScriptValue returnValue)
 	{
 		for (File f : srcDir.listFiles())
 		{
@@ -1003,13 +1931,126 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		}
 	}
 	
-	private static void zipFile(ZipOutputStream zos, File srcFile, String entryName, boolean compressed, ScriptValue returnValue) 
+	// Collects the files that zipDir() would add, in the same order, by entry name.
+	private static void collectZipFiles(File base, File srcDir, String prefix, FileFilter filter, Map<String, File> out)
+	{
+		for (File f : srcDir.listFiles())
+		{
+			String treeName = prefix + "/" + f.getPath().substring(base.getPath().length() + 1);
+			if (treeName.startsWith("/"))
+				treeName = treeName.substring(1);
+			
+			if (f.isDirectory())
+				collectZipFiles(base, f, prefix, filter, out);
+			else if (filter.accept(f))
+				out.put(treeName, f);
+		}
+	}
+	
+	/** Files at least this large are not compressed ahead of time, but streamed into the archive in turn. */
+	private static final long ZIP_PREPARE_MAX = 16L * 1024L * 1024L;
+	/** The maximum total size of the source files that are being compressed ahead of time. */
+	private static final long ZIP_PREPARE_WINDOW = 64L * 1024L * 1024L;
+	
+	/** A file queued for writing in a parallel zip. */
+	private static class PendingZipEntry
+	{
+		private final String name;
+		private final File file;
+		private final long length;
+		private final Future<ZipAppender.PreparedEntry> prepared;
+		
+		private PendingZipEntry(String name, File file, long length, Future<ZipAppender.PreparedEntry> prepared)
+		{
+			this.name = name;
+			this.file = file;
+			this.length = length;
+			this.prepared = prepared;
+		}
+	}
+	
+	// Compresses files on worker threads and writes them in order as they finish.
+	// Small files are compressed ahead of time into memory, bounded by count (threads * 2) and total source size.
+	// Large files are streamed straight into the archive when their turn comes.
+	private static void zipDirParallel(ZipAppender appender, File base, String prefix, final boolean compressed, FileFilter filter, int threads, ScriptValue returnValue)
+	{
+		Map<String, File> files = new LinkedHashMap<>();
+		collectZipFiles(base, base, prefix, filter, files);
+		if (files.isEmpty())
+			return;
+		
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()), (runnable) -> {
+			Thread out = new Thread(runnable, "DoomMakeZipWorker-" + threadId.getAndIncrement());
+			out.setDaemon(true);
+			return out;
+		});
+		
+		Deque<PendingZipEntry> pending = new ArrayDeque<>(threads * 2);
+		long pendingBytes = 0L;
+		Iterator<Map.Entry<String, File>> it = files.entrySet().iterator();
+		try {
+			while (it.hasNext() || !pending.isEmpty())
+			{
+				while (it.hasNext() && pending.size() < threads * 2 && (pending.isEmpty() || pendingBytes < ZIP_PREPARE_WINDOW))
+				{
+					Map.Entry<String, File> entry = it.next();
+					final String entryName = entry.getKey();
+					final File file = entry.getValue();
+					long length = file.length();
+					if (length >= ZIP_PREPARE_MAX)
+					{
+						pending.add(new PendingZipEntry(entryName, file, 0L, null));
+					}
+					else
+					{
+						pending.add(new PendingZipEntry(entryName, file, length, executor.submit(() -> {
+							try (FileInputStream fis = new FileInputStream(file))
+							{
+								return ZipAppender.prepare(entryName, file.lastModified(), fis, compressed);
+							}
+						})));
+						pendingBytes += length;
+					}
+				}
+				
+				PendingZipEntry next = pending.poll();
+				if (next.prepared != null)
+				{
+					appender.addEntry(next.prepared.get());
+					pendingBytes -= next.length;
+				}
+				else try (FileInputStream fis = new FileInputStream(next.file))
+				{
+					appender.addEntry(next.name, next.file.lastModified(), fis, compressed);
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof FileNotFoundException)
+				returnValue.setError("BadFile", cause.getMessage(), cause.getLocalizedMessage());
+			else if (cause instanceof SecurityException)
+				returnValue.setError("Security", cause.getMessage(), cause.getLocalizedMessage());
+			else
+				returnValue.setError("IOError", cause.getMessage(), cause.getLocalizedMessage());
+		} catch (InterruptedException e) {
+			returnValue.setError("IOError", "Compression was interrupted.");
+		} catch (FileNotFoundException e) {
+			returnValue.setError("BadFile", e.getMessage(), e.getLocalizedMessage());
+		} catch (IOException e) {
+			returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+		} catch (SecurityException e) {
+			returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static void zipFile(ZipTarget zos, File srcFile, String entryName, boolean compressed, ScriptValue returnValue) 
 	{
-		ZipEntry entry = new ZipEntry(entryName);
-		try (FileInputStream fis = new FileInputStream(srcFile))
+		try
 		{
-			zos.putNextEntry(entry);
-			IOUtils.relay(fis, zos);
+			zos.addFile(srcFile, entryName, compressed);
 		} 
 		catch (FileNotFoundException e) 
 		{
@@ -1074,8 +2115,281 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		}
 	}
 
+	/**
+	 * Gets the amount of threads to use from a "threads" parameter value.
+	 * @param value the parameter value.
+	 * @return the amount of threads: the value, or the amount of available processors if the value is null, or 0 or less.
+	 */
+	private static int getThreadCount(ScriptValue value)
+	{
+		int threads = value.isNull() ? 0 : value.asInt();
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Runs a list of tasks to completion, either on this thread (one thread, or one task) 
+	 * or on a temporary pool of daemon threads.
+	 * @param tasks the tasks to run.
+	 * @param threads the maximum amount of tasks to run at once.
+	 * @param threadPrefix the name prefix for pool threads.
+	 * @return the finished results, in task order.
+	 * @throws IOException if this thread was interrupted while waiting.
+	 */
+	private static <T> List<Future<T>> runTasks(List<Callable<T>> tasks, int threads, final String threadPrefix) throws IOException
+	{
+		List<Future<T>> results;
+		if (threads <= 1 || tasks.size() <= 1)
+		{
+			results = new ArrayList<>(tasks.size());
+			for (Callable<T> task : tasks)
+			{
+				FutureTask<T> future = new FutureTask<>(task);
+				future.run();
+				results.add(future);
+			}
+		}
+		else
+		{
+			final AtomicInteger threadId = new AtomicInteger(0);
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), (runnable) -> {
+				Thread out = new Thread(runnable, threadPrefix + threadId.getAndIncrement());
+				out.setDaemon(true);
+				return out;
+			});
+			try {
+				results = executor.invokeAll(tasks);
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for tasks.", e);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		return results;
+	}
+	
+	// Gets a finished task result, rethrowing its I/O or security exception.
+	private static <T> T getTaskResult(Future<T> future) throws IOException
+	{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for tasks.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			else if (cause instanceof SecurityException)
+				throw (SecurityException)cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	/**
+	 * Hashes the contents of all files in a directory.
+	 * The result is a hash of each file's relative path and content hash, in sorted path order.
+	 * @param digest the digest for the combined hash.
+	 * @param algorithm the digest algorithm name (for per-file digests).
+	 * @param recursive if true, scan recursively.
+	 * @param directory the directory.
+	 * @param threads the maximum amount of files to hash at once.
+	 * @return the combined hash.
+	 * @throws IOException if a file could not be read.
+	 */
+	private static byte[] digestDirectoryContents(MessageDigest digest, final String algorithm, boolean recursive, File directory, int threads) throws IOException
+	{
+		TreeMap<String, File> files = new TreeMap<>();
+		collectFiles(recursive, directory, directory, files);
+		
+		List<Callable<byte[]>> tasks = new ArrayList<>(files.size());
+		for (final File file : files.values())
+			tasks.add(() -> getContentHash(algorithm, file));
+		
+		List<Future<byte[]>> results = runTasks(tasks, threads, "DoomMakeHashWorker-");
+		
+		digest.reset();
+		int i = 0;
+		for (String path : files.keySet())
+		{
+			byte[] fileHash = getTaskResult(results.get(i++));
+			digest.update(path.getBytes(UTF8));
+			digest.update((byte)0);
+			digest.update(fileHash);
+		}
+		return digest.digest();
+	}
+	
+	// Collects all files by relative path ("/"-separated).
+	private static void collectFiles(boolean recursive, File base, File directory, Map<String, File> out)
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File f : files)
+		{
+			if (f.isDirectory())
+			{
+				if (recursive)
+					collectFiles(recursive, base, f, out);
+			}
+			else
+			{
+				out.put(f.getPath().substring(base.getPath().length() + 1).replace('\\', '/'), f);
+			}
+		}
+	}
+	
+	// Gets a file's content hash, from the cache if its length and date did not change.
+	private static byte[] getContentHash(String algorithm, File file) throws IOException, NoSuchAlgorithmException
+	{
+		String key = algorithm + ":" + file.getAbsolutePath();
+		long length = file.length();
+		long modified = file.lastModified();
+		
+		ContentHash cached;
+		synchronized (CONTENT_HASHES)
+		{
+			cached = CONTENT_HASHES.get(key);
+		}
+		if (cached != null && cached.length == length && cached.modified == modified)
+			return cached.hash;
+		
+		MessageDigest digest = MessageDigest.getInstance(algorithm);
+		try (FileInputStream in = new FileInputStream(file)) 
+		{
+			byte[] buffer = new byte[16384];
+			int buf;
+			while ((buf = in.read(buffer)) > 0)
+				digest.update(buffer, 0, buf);
+		}
+		byte[] hash = digest.digest();
+		synchronized (CONTENT_HASHES)
+		{
+			CONTENT_HASHES.put(key, new ContentHash(length, modified, hash));
+		}
+		return hash;
+	}
+	
+	/** A file content hash, plus the file state it was made from. */
+	private static class ContentHash
+	{
+		private final long length;
+		private final long modified;
+		private final byte[] hash;
+		
+		private ContentHash(long length, long modified, byte[] hash)
+		{
+			this.length = length;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+	
+	/** Maximum amount of cached file content hashes. */
+	private static final int CONTENT_HASHES_MAX = 65536;
+	
+	/** File content hashes, by algorithm and absolute path, least recently used first. */
+	private static final Map<String, ContentHash> CONTENT_HASHES = new LinkedHashMap<String, ContentHash>(1024, 0.75f, true)
+	{
+		private static final long serialVersionUID = 5418436419722307417L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ContentHash> eldest)
+		{
+			return size() > CONTENT_HASHES_MAX;
+		}
+	};
+	
+	/**
+	 * Fingerprints all files in a directory. 
+	 * Files that have the same length and modified date as in the previous fingerprint keep their previous hash,
+	 * and the rest are hashed in parallel (through the content hash cache).
+	 * @param algorithm the digest algorithm name.
+	 * @param recursive if true, scan recursively.
+	 * @param directory the directory.
+	 * @param previous the previous fingerprint map, or null for none.
+	 * @param threads the maximum amount of files to hash at once.
+	 * @param returnValue the output value, set to a map of relative path to file info.
+	 * @throws IOException if a file could not be read.
+	 */
+	private static void fingerprintDirectory(final String algorithm, boolean recursive, File directory, ScriptValue previous, int threads, ScriptValue returnValue) throws IOException
+	{
+		TreeMap<String, File> files = new TreeMap<>();
+		collectFiles(recursive, directory, directory, files);
+		
+		ScriptValue temp = ScriptValue.create(null);
+		ScriptValue field = ScriptValue.create(null);
+		Map<String, String> previousHashes = new HashMap<>();
+		List<Callable<byte[]>> tasks = new ArrayList<>(files.size());
+		for (Map.Entry<String, File> entry : files.entrySet())
+		{
+			final File file = entry.getValue();
+			String hash = null;
+			if (previous != null)
+			{
+				previous.mapGet(entry.getKey(), temp);
+				if (temp.isMap())
+				{
+					temp.mapGet("length", field);
+					boolean sameLength = field.isNumeric() && field.asLong() == file.length();
+					temp.mapGet("modified", field);
+					boolean sameModified = field.isNumeric() && field.asLong() == file.lastModified();
+					if (sameLength && sameModified)
+						hash = getFingerprintHash(temp, field);
+				}
+			}
+			if (hash != null)
+				previousHashes.put(entry.getKey(), hash);
+			else
+				tasks.add(() -> getContentHash(algorithm, file));
+		}
+		
+		List<Future<byte[]>> results = runTasks(tasks, threads, "DoomMakeHashWorker-");
+		
+		returnValue.setEmptyMap(files.size());
+		int i = 0;
+		for (Map.Entry<String, File> entry : files.entrySet())
+		{
+			String hash = previousHashes.get(entry.getKey());
+			if (hash == null)
+				hash = toHex(getTaskResult(results.get(i++)));
+			
+			ScriptValue fileInfo = ScriptValue.create(null);
+			fileInfo.setEmptyMap(3);
+			fileInfo.mapSet("hash", hash);
+			fileInfo.mapSet("length", entry.getValue().length());
+			fileInfo.mapSet("modified", entry.getValue().lastModified());
+			returnValue.mapSet(entry.getKey(), fileInfo);
+		}
+	}
+	
+	// Gets the hash from a fingerprint entry, or null if none.
+	private static String getFingerprintHash(ScriptValue entry, ScriptValue temp)
+	{
+		if (!entry.isMap())
+			return null;
+		entry.mapGet("hash", temp);
+		return temp.isNull() ? null : temp.asString();
+	}
+	
+	// Sets a value to a list of strings.
+	private static void setStringList(ScriptValue value, Set<String> strings)
+	{
+		value.setEmptyList(strings.size());
+		for (String s : strings)
+			value.listAdd(s);
+	}
+	
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b & 0x0ff));
+		return sb.toString();
+	}
+	
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 
 }
@@ -10,6 +10,7 @@ import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
 import java.io.File;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 
 import com.blackrook.rookscript.ScriptInstance;
 import com.blackrook.rookscript.ScriptIteratorType;
@@ -68,40 +69,31 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DoomToolsMain.Options options = DoomToolsMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
-				returnValue.set(DoomToolsMain.call(options));
-				return true;
+				return () -> DoomToolsMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
-			}
-			finally
-			{
-				temp.setNull();
+				return null;
 			}
 		}
 	},
@@ -141,41 +133,31 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
-				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				DoomMakeMain.Options options = DoomMakeMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
-				returnValue.set(DoomMakeMain.call(options));
-				return true;
+				return () -> DoomMakeMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
-			}
-			finally
-			{
-				temp.setNull();
+				return null;
 			}
 		}
 	},
@@ -217,41 +199,31 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
-				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				DecoHackMain.Options options = DecoHackMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
-				returnValue.set(DecoHackMain.call(options));
-				return true;
+				return () -> DecoHackMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
-			}
-			finally
-			{
-				temp.setNull();
+				return null;
 			}
 		}
 	},
@@ -289,41 +261,35 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue files = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DoomImageConvertMain.Options options = DoomImageConvertMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
-				returnValue.set(DoomImageConvertMain.call(options));
-				return true;
+				return () -> DoomImageConvertMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				files.setNull();
 			}
 		}
@@ -347,7 +313,10 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"outputdirectory:OBJECTREF(File)",
 							"ffmpegpath:OBJECTREF(File)",
 							"onlyffmpeg:BOOLEAN",
-							"onlyjspi:BOOLEAN"
+							"onlyjspi:BOOLEAN",
+							"threads:INTEGER",
+							"samplerate:INTEGER",
+							"dither:BOOLEAN"
 						) + "}",
 						"Map of options."
 					)
@@ -360,27 +329,23 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue files = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DMXConvertMain.Options options = DMXConvertMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 					
 					temp.mapGet("files", files);
@@ -396,18 +361,16 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 						}
 					}
 				}
-				returnValue.set(DMXConvertMain.call(options));
-				return true;
+				return () -> DMXConvertMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				files.setNull();
 			}
 		}
@@ -445,28 +408,23 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
-				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WadMergeMain.Options options = WadMergeMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}				
 
@@ -480,18 +438,16 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 					}
 				}
 
-				returnValue.set(WadMergeMain.call(options));
-				return true;
+				return () -> WadMergeMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				args.setNull();
 			}
 		}
@@ -532,28 +488,23 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
-				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WadScriptMain.Options options = WadScriptMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
 
@@ -567,18 +518,16 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 					}
 				}
 
-				returnValue.set(WadScriptMain.call(options));
-				return true;
+				return () -> WadScriptMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				args.setNull();
 			}
 		}
@@ -604,7 +553,9 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"exportMode:BOOLEAN",
 							"entryName:STRING",
 							"strife:BOOLEAN",
-							"verbose:BOOLEAN"
+							"verbose:BOOLEAN",
+							"batchFile:OBJECTREF(File)",
+							"threads:INTEGER"
 						) + "}",
 						"Map of options."
 					)
@@ -617,40 +568,31 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WADTexMain.Options options = WADTexMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
-				returnValue.set(WADTexMain.call(options));
-				return true;
+				return () -> WADTexMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
-			}
-			finally
-			{
-				temp.setNull();
+				return null;
 			}
 		}
 	},
@@ -673,7 +615,8 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"wadFile:OBJECTREF(File)",
 							"exportMode:BOOLEAN",
 							"importSource:BOOLEAN",
-							"verbose:BOOLEAN"
+							"verbose:BOOLEAN",
+							"mergeSources:LIST[STRING, ...]"
 						) + "}",
 						"Map of options."
 					)
@@ -686,37 +629,46 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue files = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WSwAnTablesMain.Options options = WSwAnTablesMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
+					}
+					
+					temp.mapGet("mergeSources", files);
+					if (!files.isNull() && files.isList())
+					{
+						for (ScriptIteratorType.IteratorPair pair : files)
+						{
+							ScriptValue value = pair.getValue();
+							if (value.isString())
+								options.addMergeSource(new File(value.asString()));
+							else if (value.isObjectType(File.class))
+								options.addMergeSource(value.asObjectType(File.class));
+						}
 					}
 				}
-				returnValue.set(WSwAnTablesMain.call(options));
-				return true;
+				return () -> WSwAnTablesMain.call(options);
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
+				files.setNull();
 			}
 		}
 	},
@@ -755,28 +707,23 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
-				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WTExportMain.Options options = WTExportMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
 				temp.mapGet("texturewads", args);
@@ -792,18 +739,16 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 					}
 				}
 
-				returnValue.set(WTExportMain.call(options));
-				return true;
+				return () -> WTExportMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				args.setNull();
 			}
 		}
@@ -841,27 +786,23 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue)
 		{
-			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
 			try 
 			{
-				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
-				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WTexScanMain.Options options = WTexScanMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
 					{
 						returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
-						return true;
+						return null;
 					}
 					else if (!temp.mapApply(options))
 					{
 						returnValue.setError("BadOptions", "Options Map could not be applied.");
-						return true;
+						return null;
 					}
 				}
 				temp.mapGet("wadfiles", args);
@@ -877,18 +818,16 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 					}
 				}
 
-				returnValue.set(WTexScanMain.call(options));
-				return true;
+				return () -> WTexScanMain.call(options);
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			} catch (ClassCastException e) {
 				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
-				return true;
+				return null;
 			}
 			finally
 			{
-				temp.setNull();
 				args.setNull();
 			}
 		}
@@ -905,11 +844,14 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 	}
 	
 	/**
-	 * @return a function resolver that handles all of the functions in this enum.
+	 * @return a function resolver that handles all of the functions in this enum, plus the {@link ToolTaskFunctions}.
 	 */
 	public static final ScriptFunctionResolver createResolver()
 	{
-		return new EnumFunctionResolver(ToolInvocationFunctions.values());
+		return new ToolResolver(
+			new EnumFunctionResolver(ToolInvocationFunctions.values()), 
+			new EnumFunctionResolver(ToolTaskFunctions.values())
+		);
 	}
 
 	@Override
@@ -928,8 +870,97 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 	
 	protected abstract Usage usage();
 
+	/**
+	 * Creates the options for a tool call from an options map, without calling it.
+	 * @param temp the options map value.
+	 * @param stdout the default standard out stream.
+	 * @param stderr the default standard error stream.
+	 * @param stdin the default standard in stream.
+	 * @param returnValue the value to set an error on, if the options are bad.
+	 * @return the call to make, or null if an error was set.
+	 */
+	protected abstract ToolCall prepare(ScriptValue temp, PrintStream stdout, PrintStream stderr, InputStream stdin, ScriptValue returnValue);
+
 	@Override
-	public abstract boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue);
+	public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+	{
+		ScriptValue temp = CACHEVALUE1.get();
+		try 
+		{
+			PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
+			PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
+			InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
+			scriptInstance.popStackValue(temp);
+			ToolCall call = prepare(temp, stdout, stderr, stdin, returnValue);
+			if (call != null)
+				returnValue.set(call.call());
+			return true;
+		}
+		finally
+		{
+			temp.setNull();
+		}
+	}
+
+	// Gets a tool function by name, or null if not a tool.
+	static ToolInvocationFunctions getTool(String name)
+	{
+		for (ToolInvocationFunctions function : values())
+			if (function.name().equalsIgnoreCase(name))
+				return function;
+		return null;
+	}
+
+	/**
+	 * A prepared tool call.
+	 */
+	@FunctionalInterface
+	protected interface ToolCall
+	{
+		/**
+		 * Calls the tool.
+		 * @return the tool's return code.
+		 */
+		int call();
+	}
+
+	/**
+	 * The resolver for the TOOL namespace: the tools, then the background call functions.
+	 */
+	private static class ToolResolver implements ScriptFunctionResolver
+	{
+		private final ScriptFunctionResolver tools;
+		private final ScriptFunctionResolver tasks;
+		
+		private ToolResolver(ScriptFunctionResolver tools, ScriptFunctionResolver tasks)
+		{
+			this.tools = tools;
+			this.tasks = tasks;
+		}
+		
+		@Override
+		public boolean containsFunction(String name)
+		{
+			return tools.containsFunction(name) || tasks.containsFunction(name);
+		}
+		
+		@Override
+		public ScriptFunctionType getFunction(String name)
+		{
+			ScriptFunctionType out = tools.getFunction(name);
+			return out != null ? out : tasks.getFunction(name);
+		}
+		
+		@Override
+		public ScriptFunctionType[] getFunctions()
+		{
+			ScriptFunctionType[] toolFunctions = tools.getFunctions();
+			ScriptFunctionType[] taskFunctions = tasks.getFunctions();
+			ScriptFunctionType[] out = Arrays.copyOf(toolFunctions, toolFunctions.length + taskFunctions.length);
+			System.arraycopy(taskFunctions, 0, out, toolFunctions.length, taskFunctions.length);
+			return out;
+		}
+	}
 
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
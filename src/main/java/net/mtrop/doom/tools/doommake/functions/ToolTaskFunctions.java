@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake.functions;
+
+import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackrook.rookscript.ScriptInstance;
+import com.blackrook.rookscript.ScriptValue;
+import com.blackrook.rookscript.ScriptValue.Type;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.lang.ScriptFunctionUsage;
+
+import net.mtrop.doom.tools.wadscript.RecordingResolver;
+
+/**
+ * Script functions for calling tools in the background (in the TOOL namespace, next to {@link ToolInvocationFunctions}).
+ * @author Matthew Tropiano
+ */
+public enum ToolTaskFunctions implements ScriptFunctionType
+{
+	ASYNC(2)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Starts calling a tool in the background and returns a handle to it right away. " +
+					"The tool takes the same options as its own function (for example, \"decohack\" takes the options of TOOL::DECOHACK). " +
+					"Unless overridden in the options, STDOUT and STDERR are captured separately for each call and printed when it is joined " +
+					"(see TOOL::JOIN and TOOL::JOINALL), so that output from tools running at the same time does not mix. STDIN is empty unless overridden. " +
+					"Calls that are never joined are waited for (and their output printed) when the script ends. " +
+					"At most as many calls as there are available processors run at once - the rest wait their turn. " +
+					"\"doommake\" cannot be called this way, as it changes process-wide settings while it runs."
+				)
+				.parameter("tool", 
+					type(Type.STRING, "The tool function name (case-insensitive, for example: \"decohack\", \"dimgconvert\", \"wadmerge\").")
+				)
+				.parameter("options", 
+					type(Type.MAP, "Map of options for the tool.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "ToolTask", "The handle to the running call."),
+					type(Type.ERROR, "BadTool", "If [tool] is not a tool function name, or is \"doommake\"."),
+					type(Type.ERROR, "BadOptions", "If the options map could not be applied.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue options = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(options);
+				scriptInstance.popStackValue(temp);
+				
+				ToolInvocationFunctions tool = ToolInvocationFunctions.getTool(temp.asString());
+				if (tool == null)
+				{
+					returnValue.setError("BadTool", "\"" + temp.asString() + "\" is not a tool function.");
+					return true;
+				}
+				// DoomMake sets System properties for the length of its run, so it cannot overlap other calls.
+				if (tool == ToolInvocationFunctions.DOOMMAKE)
+				{
+					returnValue.setError("BadTool", "\"" + temp.asString() + "\" cannot be called in the background.");
+					return true;
+				}
+				
+				ToolTask task = new ToolTask(tool.name());
+				ToolInvocationFunctions.ToolCall call = tool.prepare(options, task.stdout, task.stderr, new ByteArrayInputStream(new byte[0]), returnValue);
+				if (call == null)
+					return true;
+				
+				task.start(call);
+				scriptInstance.registerCloseable(() -> task.join(scriptInstance));
+				returnValue.set(task);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				options.setNull();
+			}
+		}
+	},
+
+	JOIN(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Waits for a tool call started with TOOL::ASYNC to finish, and prints its captured STDOUT and STDERR " +
+					"to this script's STDOUT and STDERR (only once, on the first join)."
+				)
+				.parameter("task", 
+					type(Type.OBJECTREF, "ToolTask", "The handle returned by TOOL::ASYNC.")
+				)
+				.returns(
+					type(Type.INTEGER, "The normal return of the tool's process."),
+					type(Type.ERROR, "BadParameter", "If [task] is not a ToolTask."),
+					type(Type.ERROR, "ToolError", "If the tool call threw an exception or the wait was interrupted.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(ToolTask.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a ToolTask.");
+					return true;
+				}
+				temp.asObjectType(ToolTask.class).join(scriptInstance, returnValue);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+
+	JOINALL(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Waits for many tool calls started with TOOL::ASYNC to finish, printing each call's captured output in list order " +
+					"(see TOOL::JOIN). All calls are waited for, even if one of them fails."
+				)
+				.parameter("tasks", 
+					type(Type.LIST, "[OBJECTREF:ToolTask, ...]", "The handles returned by TOOL::ASYNC.")
+				)
+				.returns(
+					type(Type.LIST, "[INTEGER, ...]", "The normal returns of each tool's process, in list order."),
+					type(Type.ERROR, "BadParameter", "If [tasks] is not a list of ToolTasks."),
+					type(Type.ERROR, "ToolError", "The first failure, if any tool call threw an exception or the wait was interrupted.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue tasks = CACHEVALUE2.get();
+			ScriptValue result = CACHEVALUE3.get();
+			try 
+			{
+				scriptInstance.popStackValue(tasks);
+				if (!tasks.isList())
+				{
+					returnValue.setError("BadParameter", "First parameter is not a list.");
+					return true;
+				}
+				for (int i = 0; i < tasks.length(); i++)
+				{
+					tasks.listGetByIndex(i, temp);
+					if (!temp.isObjectRef(ToolTask.class))
+					{
+						returnValue.setError("BadParameter", "List item " + i + " is not a ToolTask.");
+						return true;
+					}
+				}
+				
+				returnValue.setEmptyList(tasks.length());
+				ScriptValue error = null;
+				for (int i = 0; i < tasks.length(); i++)
+				{
+					tasks.listGetByIndex(i, temp);
+					temp.asObjectType(ToolTask.class).join(scriptInstance, result);
+					if (result.isError() && error == null)
+					{
+						error = ScriptValue.create(null);
+						error.set(result);
+					}
+					returnValue.listAdd(result);
+				}
+				if (error != null)
+					returnValue.set(error);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				tasks.setNull();
+				result.setNull();
+			}
+		}
+	},
+
+	;
+	
+	private final int parameterCount;
+	private Usage usage;
+	private ToolTaskFunctions(int parameterCount)
+	{
+		this.parameterCount = parameterCount;
+		this.usage = null;
+	}
+	
+	@Override
+	public int getParameterCount()
+	{
+		return parameterCount;
+	}
+
+	@Override
+	public Usage getUsage()
+	{
+		if (usage == null)
+			usage = usage();
+		return usage;
+	}
+	
+	protected abstract Usage usage();
+
+	@Override
+	public abstract boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue);
+
+	/**
+	 * A tool call running in the background, with its captured output.
+	 */
+	public static class ToolTask
+	{
+		private final String name;
+		private final ByteArrayOutputStream out;
+		private final ByteArrayOutputStream err;
+		private final PrintStream stdout;
+		private final PrintStream stderr;
+		private Future<Integer> future;
+		private boolean printed;
+
+		private ToolTask(String name)
+		{
+			this.name = name;
+			this.out = new ByteArrayOutputStream(1024);
+			this.err = new ByteArrayOutputStream(1024);
+			this.stdout = new PrintStream(out, true);
+			this.stderr = new PrintStream(err, true);
+			this.future = null;
+			this.printed = false;
+		}
+
+		// Timed under the tool's own function name if this ASYNC call is being recorded (e.g. by "--timings").
+		private void start(ToolInvocationFunctions.ToolCall call)
+		{
+			this.future = TASK_EXECUTOR.submit(RecordingResolver.recorded(name, call::call));
+		}
+
+		/**
+		 * @return the name of the tool.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return true if the call has finished, false if not.
+		 */
+		public boolean isDone()
+		{
+			return future.isDone();
+		}
+
+		// Waits for the call, ignoring its result (on script end).
+		private void join(ScriptInstance scriptInstance)
+		{
+			join(scriptInstance, ScriptValue.create(null));
+		}
+
+		// Waits for the call, prints the captured output, and sets the result.
+		private void join(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			try {
+				returnValue.set(future.get().intValue());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				returnValue.setError("ToolError", name + " failed: " + cause.getMessage(), name + " failed: " + cause.getLocalizedMessage());
+			} catch (InterruptedException e) {
+				returnValue.setError("ToolError", "Interrupted while waiting for " + name + ".");
+				return;
+			}
+			print(scriptInstance);
+		}
+
+		// Prints the captured output once.
+		private synchronized void print(ScriptInstance scriptInstance)
+		{
+			if (printed)
+				return;
+			printed = true;
+			PrintStream scriptOut = scriptInstance.getEnvironment().getStandardOut();
+			PrintStream scriptErr = scriptInstance.getEnvironment().getStandardErr();
+			if (scriptOut != null && out.size() > 0)
+			{
+				byte[] data = out.toByteArray();
+				scriptOut.write(data, 0, data.length);
+				scriptOut.flush();
+			}
+			if (scriptErr != null && err.size() > 0)
+			{
+				byte[] data = err.toByteArray();
+				scriptErr.write(data, 0, data.length);
+				scriptErr.flush();
+			}
+		}
+	}
+
+	// Threadlocal "stack" values.
+	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+
+	// Runs background tool calls, at most one per processor at a time. 
+	// Daemon threads, so that unjoined calls cannot keep the process alive.
+	private static final AtomicInteger TASK_THREAD_ID = new AtomicInteger(0);
+	private static final ExecutorService TASK_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+		Thread out = new Thread(runnable, "DoomMakeToolWorker-" + TASK_THREAD_ID.getAndIncrement());
+		out.setDaemon(true);
+		return out;
+	});
+
+}
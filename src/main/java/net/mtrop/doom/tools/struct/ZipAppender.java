@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.struct;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Appends entries to an existing Zip file in place.
+ * <p>Existing entries are never read or recompressed: new entries are written over the old central directory,
+ * and on {@link #close()}, the old central directory records are written back verbatim, followed by the records
+ * for the new entries and a new end record. The time taken is proportional to the size of the new data only.
+ * <p>Only plain, single-disk, non-ZIP64 archives without leading data can be appended to - the constructor
+ * throws a {@link ZipException} for anything else, and callers are expected to fall back to rewriting the archive.
+ * If an entry fails to be added, closing still writes a valid archive with the entries that were completed.
+ * <p>New archives can be started with {@link #create(File)}. Entries can also be compressed ahead of time on
+ * any thread with {@link #prepare(String, long, InputStream, boolean)} and then written as-is.
+ * @author Matthew Tropiano
+ */
+public class ZipAppender implements Closeable
+{
+	private static final int SIG_LOCAL_HEADER = 0x04034b50;
+	private static final int SIG_CENTRAL_HEADER = 0x02014b50;
+	private static final int SIG_END_HEADER = 0x06054b50;
+	private static final int SIG_ZIP64_END_LOCATOR = 0x07064b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_HEADER_SIZE = 22;
+	private static final int ZIP64_END_LOCATOR_SIZE = 20;
+	private static final int MAX_COMMENT_SIZE = 0x0ffff;
+	private static final int MAX_ENTRIES = 0x0ffff;
+	private static final long MAX_SIZE = 0x0ffffffffL;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+	private static final int FLAG_UTF8 = 0x0800;
+
+	/** The open file. */
+	private RandomAccessFile file;
+	/** The original central directory records. */
+	private byte[] oldDirectory;
+	/** The original entry count. */
+	private int oldEntryCount;
+	/** The archive comment. */
+	private byte[] comment;
+	/** All entry names in the archive. */
+	private Set<String> names;
+
+	/** The new central directory records. */
+	private ByteArrayOutputStream newDirectory;
+	/** The new entry count. */
+	private int newEntryCount;
+	/** The offset just past the last completed entry. */
+	private long endOffset;
+
+	private Deflater deflater;
+	private CRC32 crc;
+	private byte[] buffer;
+	private byte[] outBuffer;
+	private ByteBuffer header;
+
+	/**
+	 * Opens a Zip file for appending.
+	 * @param zipFile the zip file to open.
+	 * @throws ZipException if the file is not a Zip file that can be appended to in place.
+	 * @throws IOException if the file could not be read.
+	 * @throws SecurityException if the OS does not allow the file to be opened for writing.
+	 */
+	public ZipAppender(File zipFile) throws IOException
+	{
+		this(new RandomAccessFile(zipFile, "rw"));
+		try {
+			readDirectory();
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private ZipAppender(RandomAccessFile file)
+	{
+		this.file = file;
+		this.oldDirectory = new byte[0];
+		this.oldEntryCount = 0;
+		this.comment = new byte[0];
+		this.names = new HashSet<>();
+		this.endOffset = 0L;
+		this.newDirectory = new ByteArrayOutputStream(4096);
+		this.newEntryCount = 0;
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		this.crc = new CRC32();
+		this.buffer = new byte[65536];
+		this.outBuffer = new byte[65536];
+		this.header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Creates a new, empty Zip file for adding entries to.
+	 * If the file exists, it is overwritten.
+	 * @param zipFile the zip file to create.
+	 * @return a new appender.
+	 * @throws IOException if the file could not be created.
+	 * @throws SecurityException if the OS does not allow the file to be opened for writing.
+	 */
+	public static ZipAppender create(File zipFile) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(zipFile, "rw");
+		try {
+			file.setLength(0L);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		return new ZipAppender(file);
+	}
+
+	/**
+	 * Reads and compresses entry data into memory so that it can be added later with {@link #addEntry(PreparedEntry)}.
+	 * This does not touch any archive, so many entries can be prepared at once on different threads.
+	 * The stream is not closed.
+	 * @param name the entry name.
+	 * @param time the entry's modified time in milliseconds since the epoch.
+	 * @param in the input stream to read.
+	 * @param compressed if true, the data is deflated, if false, it is stored.
+	 * @return the prepared entry.
+	 * @throws ZipException if the entry would need ZIP64 extensions.
+	 * @throws IOException if a read error occurs.
+	 */
+	public static PreparedEntry prepare(String name, long time, InputStream in, boolean compressed) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(16384);
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[65536];
+		long uncompressedSize = 0L;
+		int buf;
+		if (compressed)
+		{
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			byte[] outBuffer = new byte[65536];
+			try {
+				while ((buf = in.read(buffer)) > 0)
+				{
+					crc.update(buffer, 0, buf);
+					uncompressedSize += buf;
+					deflater.setInput(buffer, 0, buf);
+					while (!deflater.needsInput())
+						bos.write(outBuffer, 0, deflater.deflate(outBuffer, 0, outBuffer.length));
+				}
+				deflater.finish();
+				while (!deflater.finished())
+					bos.write(outBuffer, 0, deflater.deflate(outBuffer, 0, outBuffer.length));
+			} finally {
+				deflater.end();
+			}
+		}
+		else
+		{
+			while ((buf = in.read(buffer)) > 0)
+			{
+				crc.update(buffer, 0, buf);
+				uncompressedSize += buf;
+				bos.write(buffer, 0, buf);
+			}
+		}
+
+		if (uncompressedSize >= MAX_SIZE)
+			throw new ZipException("Entry too large for a non-ZIP64 archive: " + name);
+		return new PreparedEntry(name, time, compressed, (int)crc.getValue(), uncompressedSize, bos.toByteArray());
+	}
+
+	// Finds the end record and reads the central directory.
+	private void readDirectory() throws IOException
+	{
+		long length = file.length();
+		if (length < END_HEADER_SIZE)
+			throw new ZipException("Not a zip file.");
+
+		int tailLength = (int)Math.min(length, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+		byte[] tail = new byte[tailLength];
+		file.seek(length - tailLength);
+		file.readFully(tail);
+		ByteBuffer bb = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+
+		int endPos = -1;
+		for (int i = tailLength - END_HEADER_SIZE; i >= 0; i--)
+		{
+			if (bb.getInt(i) == SIG_END_HEADER && i + END_HEADER_SIZE + (bb.getShort(i + 20) & 0x0ffff) == tailLength)
+			{
+				endPos = i;
+				break;
+			}
+		}
+		if (endPos < 0)
+			throw new ZipException("Could not find zip end record.");
+		if (endPos >= ZIP64_END_LOCATOR_SIZE && bb.getInt(endPos - ZIP64_END_LOCATOR_SIZE) == SIG_ZIP64_END_LOCATOR)
+			throw new ZipException("ZIP64 archives cannot be appended to.");
+
+		int diskNumber = bb.getShort(endPos + 4) & 0x0ffff;
+		int directoryDisk = bb.getShort(endPos + 6) & 0x0ffff;
+		int diskEntries = bb.getShort(endPos + 8) & 0x0ffff;
+		int entries = bb.getShort(endPos + 10) & 0x0ffff;
+		long directorySize = bb.getInt(endPos + 12) & MAX_SIZE;
+		long directoryOffset = bb.getInt(endPos + 16) & MAX_SIZE;
+		int commentLength = bb.getShort(endPos + 20) & 0x0ffff;
+
+		if (diskNumber != 0 || directoryDisk != 0 || diskEntries != entries)
+			throw new ZipException("Multi-disk archives cannot be appended to.");
+		if (entries == MAX_ENTRIES || directorySize == MAX_SIZE || directoryOffset == MAX_SIZE)
+			throw new ZipException("ZIP64 archives cannot be appended to.");
+		if (directoryOffset + directorySize != length - tailLength + endPos)
+			throw new ZipException("Archive has data outside of its entries.");
+
+		this.comment = new byte[commentLength];
+		System.arraycopy(tail, endPos + END_HEADER_SIZE, comment, 0, commentLength);
+
+		this.oldDirectory = new byte[(int)directorySize];
+		file.seek(directoryOffset);
+		file.readFully(oldDirectory);
+
+		// Validate records and collect names.
+		this.names = new HashSet<>();
+		ByteBuffer dir = ByteBuffer.wrap(oldDirectory).order(ByteOrder.LITTLE_ENDIAN);
+		int pos = 0;
+		for (int i = 0; i < entries; i++)
+		{
+			if (pos + CENTRAL_HEADER_SIZE > oldDirectory.length || dir.getInt(pos) != SIG_CENTRAL_HEADER)
+				throw new ZipException("Bad central directory record.");
+			int flags = dir.getShort(pos + 8) & 0x0ffff;
+			int nameLength = dir.getShort(pos + 28) & 0x0ffff;
+			int extraLength = dir.getShort(pos + 30) & 0x0ffff;
+			int entryCommentLength = dir.getShort(pos + 32) & 0x0ffff;
+			if (pos + CENTRAL_HEADER_SIZE + nameLength > oldDirectory.length)
+				throw new ZipException("Bad central directory record.");
+			names.add(new String(oldDirectory, pos + CENTRAL_HEADER_SIZE, nameLength,
+				(flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1
+			));
+			pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + entryCommentLength;
+		}
+		if (pos != oldDirectory.length)
+			throw new ZipException("Bad central directory size.");
+
+		this.oldEntryCount = entries;
+		this.endOffset = directoryOffset;
+	}
+
+	/**
+	 * Adds a new entry, reading its data from an input stream until the end of the stream.
+	 * The stream is not closed.
+	 * @param name the entry name.
+	 * @param time the entry's modified time in milliseconds since the epoch.
+	 * @param in the input stream to read.
+	 * @param compressed if true, the data is deflated, if false, it is stored.
+	 * @throws ZipException if the entry already exists, or the archive would need ZIP64 extensions.
+	 * @throws IOException if a read or write error occurs.
+	 */
+	public void addEntry(String name, long time, InputStream in, boolean compressed) throws IOException
+	{
+		checkEntry(name);
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int flags = isASCII(name) ? 0 : FLAG_UTF8;
+		int dosTime = toDOSTime(time);
+
+		// Sizes and CRC are patched in after the data is written.
+		file.seek(endOffset);
+		writeLocalHeader(nameBytes, flags, compressed, dosTime, 0, 0L, 0L);
+
+		long uncompressedSize = 0L;
+		long compressedSize = 0L;
+		crc.reset();
+		int buf;
+		if (compressed)
+		{
+			deflater.reset();
+			while ((buf = in.read(buffer)) > 0)
+			{
+				crc.update(buffer, 0, buf);
+				uncompressedSize += buf;
+				deflater.setInput(buffer, 0, buf);
+				while (!deflater.needsInput())
+					compressedSize += drainDeflater();
+			}
+			deflater.finish();
+			while (!deflater.finished())
+				compressedSize += drainDeflater();
+		}
+		else
+		{
+			while ((buf = in.read(buffer)) > 0)
+			{
+				crc.update(buffer, 0, buf);
+				uncompressedSize += buf;
+				file.write(buffer, 0, buf);
+			}
+			compressedSize = uncompressedSize;
+		}
+
+		if (uncompressedSize >= MAX_SIZE || compressedSize >= MAX_SIZE)
+			throw new ZipException("Entry too large for a non-ZIP64 archive: " + name);
+
+		long next = file.getFilePointer();
+		int crcValue = (int)crc.getValue();
+		header.clear();
+		header.putInt(crcValue);
+		header.putInt((int)compressedSize);
+		header.putInt((int)uncompressedSize);
+		file.seek(endOffset + 14);
+		file.write(header.array(), 0, 12);
+
+		addDirectoryRecord(name, nameBytes, flags, compressed, dosTime, crcValue, compressedSize, uncompressedSize);
+		endOffset = next;
+	}
+
+	/**
+	 * Adds an entry that was prepared with {@link #prepare(String, long, InputStream, boolean)}.
+	 * @param entry the prepared entry.
+	 * @throws ZipException if the entry already exists, or the archive would need ZIP64 extensions.
+	 * @throws IOException if a write error occurs.
+	 */
+	public void addEntry(PreparedEntry entry) throws IOException
+	{
+		checkEntry(entry.name);
+		byte[] nameBytes = entry.name.getBytes(StandardCharsets.UTF_8);
+		int flags = isASCII(entry.name) ? 0 : FLAG_UTF8;
+		int dosTime = toDOSTime(entry.time);
+
+		file.seek(endOffset);
+		writeLocalHeader(nameBytes, flags, entry.compressed, dosTime, entry.crc, entry.data.length, entry.uncompressedSize);
+		file.write(entry.data);
+		long next = file.getFilePointer();
+
+		addDirectoryRecord(entry.name, nameBytes, flags, entry.compressed, dosTime, entry.crc, entry.data.length, entry.uncompressedSize);
+		endOffset = next;
+	}
+
+	// Checks if an entry can be added.
+	private void checkEntry(String name) throws ZipException
+	{
+		if (names.contains(name))
+			throw new ZipException("duplicate entry: " + name);
+		if (oldEntryCount + newEntryCount + 1 >= MAX_ENTRIES)
+			throw new ZipException("Too many entries for a non-ZIP64 archive.");
+		if (endOffset >= MAX_SIZE)
+			throw new ZipException("Archive too large for a non-ZIP64 archive.");
+	}
+
+	// Writes a local file header at the current position.
+	private void writeLocalHeader(byte[] nameBytes, int flags, boolean compressed, int dosTime, int crcValue, long compressedSize, long uncompressedSize) throws IOException
+	{
+		header.clear();
+		header.putInt(SIG_LOCAL_HEADER);
+		header.putShort((short)(compressed ? 20 : 10));
+		header.putShort((short)flags);
+		header.putShort((short)(compressed ? METHOD_DEFLATED : METHOD_STORED));
+		header.putInt(dosTime);
+		header.putInt(crcValue);
+		header.putInt((int)compressedSize);
+		header.putInt((int)uncompressedSize);
+		header.putShort((short)nameBytes.length);
+		header.putShort((short)0);
+		file.write(header.array(), 0, LOCAL_HEADER_SIZE);
+		file.write(nameBytes);
+	}
+
+	// Adds a central directory record for an entry written at the end offset.
+	private void addDirectoryRecord(String name, byte[] nameBytes, int flags, boolean compressed, int dosTime, int crcValue, long compressedSize, long uncompressedSize)
+	{
+		header.clear();
+		header.putInt(SIG_CENTRAL_HEADER);
+		header.putShort((short)20);
+		header.putShort((short)(compressed ? 20 : 10));
+		header.putShort((short)flags);
+		header.putShort((short)(compressed ? METHOD_DEFLATED : METHOD_STORED));
+		header.putInt(dosTime);
+		header.putInt(crcValue);
+		header.putInt((int)compressedSize);
+		header.putInt((int)uncompressedSize);
+		header.putShort((short)nameBytes.length);
+		header.putShort((short)0);
+		header.putShort((short)0);
+		header.putShort((short)0);
+		header.putShort((short)0);
+		header.putInt(0);
+		header.putInt((int)endOffset);
+		newDirectory.write(header.array(), 0, CENTRAL_HEADER_SIZE);
+		newDirectory.write(nameBytes, 0, nameBytes.length);
+		names.add(name);
+		newEntryCount++;
+	}
+
+	// Writes pending deflater output to the file, returns amount written.
+	private int drainDeflater() throws IOException
+	{
+		int len = deflater.deflate(outBuffer, 0, outBuffer.length);
+		file.write(outBuffer, 0, len);
+		return len;
+	}
+
+	/**
+	 * @return the amount of entries added so far.
+	 */
+	public int getAddedCount()
+	{
+		return newEntryCount;
+	}
+
+	/**
+	 * Writes the combined central directory and end record, truncates the file, and closes it.
+	 * @throws IOException if a write error occurs.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (file == null)
+			return;
+		try {
+			long directorySize = oldDirectory.length + newDirectory.size();
+			if (endOffset + directorySize >= MAX_SIZE)
+				throw new ZipException("Archive too large for a non-ZIP64 archive.");
+			file.seek(endOffset);
+			file.write(oldDirectory);
+			file.write(newDirectory.toByteArray());
+			int entries = oldEntryCount + newEntryCount;
+			header.clear();
+			header.putInt(SIG_END_HEADER);
+			header.putShort((short)0);
+			header.putShort((short)0);
+			header.putShort((short)entries);
+			header.putShort((short)entries);
+			header.putInt((int)directorySize);
+			header.putInt((int)endOffset);
+			header.putShort((short)comment.length);
+			file.write(header.array(), 0, END_HEADER_SIZE);
+			file.write(comment);
+			file.setLength(file.getFilePointer());
+		} finally {
+			deflater.end();
+			file.close();
+			file = null;
+		}
+	}
+
+	private static boolean isASCII(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) > 0x7f)
+				return false;
+		return true;
+	}
+
+	// Converts Java time to MS-DOS date/time.
+	private static int toDOSTime(long time)
+	{
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		int year = c.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		return (year - 1980) << 25
+			| (c.get(Calendar.MONTH) + 1) << 21
+			| c.get(Calendar.DAY_OF_MONTH) << 16
+			| c.get(Calendar.HOUR_OF_DAY) << 11
+			| c.get(Calendar.MINUTE) << 5
+			| c.get(Calendar.SECOND) >> 1;
+	}
+
+	/**
+	 * Entry data that was read and compressed ahead of time.
+	 */
+	public static class PreparedEntry
+	{
+		private final String name;
+		private final long time;
+		private final boolean compressed;
+		private final int crc;
+		private final long uncompressedSize;
+		private final byte[] data;
+
+		private PreparedEntry(String name, long time, boolean compressed, int crc, long uncompressedSize, byte[] data)
+		{
+			this.name = name;
+			this.time = time;
+			this.compressed = compressed;
+			this.crc = crc;
+			this.uncompressedSize = uncompressedSize;
+			this.data = data;
+		}
+
+		/**
+		 * @return the entry name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.struct.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Simple PCM audio utility functions.
+ * Samples are handled as normalized floats (-1.0 to 1.0), single channel.
+ * @author Matthew Tropiano
+ */
+public final class AudioUtils
+{
+	private AudioUtils() {}
+
+	/** Sinc resampler half-width, in zero crossings. */
+	private static final int RESAMPLE_HALF_WIDTH = 16;
+
+	/**
+	 * Checks if an audio format can be read directly as PCM by {@link #readMono(AudioInputStream)}
+	 * without a conversion stage.
+	 * @param format the format to test.
+	 * @return true if so, false if not.
+	 */
+	public static boolean isDirectPCM(AudioFormat format)
+	{
+		int bits = format.getSampleSizeInBits();
+		if (format.getChannels() < 1)
+			return false;
+		if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+			return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+		if (format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT)
+			return bits == 32 || bits == 64;
+		return false;
+	}
+
+	/**
+	 * Reads an entire audio stream into a normalized mono sample buffer, downmixing all channels.
+	 * Signed/unsigned 8, 16, 24, and 32-bit integer PCM and 32/64-bit float PCM are decoded directly.
+	 * Anything else (for example, compressed formats provided by an SPI decoder) is converted once to
+	 * 16-bit signed PCM through {@link AudioSystem} first, keeping its channel count and sample rate.
+	 * The stream is not closed.
+	 * @param in the input stream.
+	 * @return the decoded, downmixed samples.
+	 * @throws IOException if a read error occurs, or the stream cannot be converted to PCM.
+	 */
+	public static float[] readMono(AudioInputStream in) throws IOException
+	{
+		AudioFormat format = in.getFormat();
+		if (!isDirectPCM(format))
+		{
+			AudioFormat pcmFormat = new AudioFormat(
+				AudioFormat.Encoding.PCM_SIGNED,
+				format.getSampleRate(),
+				16,
+				format.getChannels(),
+				format.getChannels() * 2,
+				format.getSampleRate(),
+				false
+			);
+			try {
+				in = AudioSystem.getAudioInputStream(pcmFormat, in);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Could not convert audio stream to PCM: " + e.getLocalizedMessage(), e);
+			}
+			format = in.getFormat();
+		}
+
+		int channels = format.getChannels();
+		int sampleBytes = format.getSampleSizeInBits() / 8;
+		int frameBytes = sampleBytes * channels;
+		boolean bigEndian = format.isBigEndian();
+		boolean unsigned = format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED;
+		boolean floating = format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT;
+
+		byte[] data = readAll(in);
+		int frames = data.length / frameBytes;
+		float[] out = new float[frames];
+		float channelScale = 1f / channels;
+
+		int offset = 0;
+		for (int f = 0; f < frames; f++)
+		{
+			float sum = 0f;
+			for (int c = 0; c < channels; c++)
+			{
+				sum += floating
+					? decodeFloat(data, offset, sampleBytes, bigEndian)
+					: decodeInteger(data, offset, sampleBytes, bigEndian, unsigned);
+				offset += sampleBytes;
+			}
+			out[f] = channels == 1 ? sum : sum * channelScale;
+		}
+		return out;
+	}
+
+	/**
+	 * Resamples a set of mono samples to a new sample rate using a windowed-sinc (Blackman) interpolator.
+	 * When downsampling, the filter cutoff is lowered to the target Nyquist frequency to avoid aliasing.
+	 * @param samples the input samples.
+	 * @param inputRate the input sample rate.
+	 * @param outputRate the output sample rate.
+	 * @return the resampled samples, or the input array if both rates are the same.
+	 */
+	public static float[] resample(float[] samples, float inputRate, float outputRate)
+	{
+		if (inputRate == outputRate || samples.length == 0)
+			return samples;
+
+		double step = (double)inputRate / outputRate;
+		double cutoff = Math.min(1.0, (double)outputRate / inputRate);
+		int halfWidth = (int)Math.ceil(RESAMPLE_HALF_WIDTH / cutoff);
+		// Length from the rates directly: the rounded step can leave an exact length one sample short.
+		int outLength = (int)Math.max(1L, (long)Math.floor((double)samples.length * outputRate / inputRate));
+		float[] out = new float[outLength];
+
+		for (int i = 0; i < outLength; i++)
+		{
+			double center = i * step;
+			int base = (int)Math.floor(center);
+			int start = Math.max(0, base - halfWidth + 1);
+			int end = Math.min(samples.length - 1, base + halfWidth);
+			double sum = 0.0;
+			double weightSum = 0.0;
+			for (int n = start; n <= end; n++)
+			{
+				double x = (center - n) * cutoff;
+				double w = sinc(x) * blackman((center - n) / halfWidth);
+				sum += samples[n] * w;
+				weightSum += w;
+			}
+			out[i] = weightSum != 0.0 ? (float)(sum / weightSum) : 0f;
+		}
+		return out;
+	}
+
+	/**
+	 * Quantizes normalized samples to 8-bit unsigned PCM (0 - 255, 128 is silence),
+	 * optionally applying triangular (TPDF) dither.
+	 * @param samples the input samples.
+	 * @param dither if true, apply dither before rounding.
+	 * @param random the random number source for dither (can be null if not dithering).
+	 * @return the quantized samples as unsigned values.
+	 */
+	public static int[] quantizeUnsigned8(float[] samples, boolean dither, Random random)
+	{
+		int[] out = new int[samples.length];
+		for (int i = 0; i < samples.length; i++)
+		{
+			double value = samples[i] * 128.0 + 128.0;
+			if (dither)
+				value += random.nextDouble() - random.nextDouble();
+			out[i] = (int)Math.max(0, Math.min(255, Math.round(value)));
+		}
+		return out;
+	}
+
+	// Reads the rest of a stream into a byte array.
+	private static byte[] readAll(AudioInputStream in) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16384];
+		int buf;
+		while ((buf = in.read(buffer)) > 0)
+			bos.write(buffer, 0, buf);
+		return bos.toByteArray();
+	}
+
+	// Decodes a single integer PCM sample into a normalized float.
+	private static float decodeInteger(byte[] data, int offset, int bytes, boolean bigEndian, boolean unsigned)
+	{
+		int value = 0;
+		for (int b = 0; b < bytes; b++)
+		{
+			int shift = bigEndian ? (bytes - 1 - b) * 8 : b * 8;
+			value |= (data[offset + b] & 0x0ff) << shift;
+		}
+
+		int bits = bytes * 8;
+		if (unsigned)
+			value -= 1 << (bits - 1);
+		else if (bits < 32)
+			value = (value << (32 - bits)) >> (32 - bits); // sign extend
+
+		return (float)(value / (double)(1L << (bits - 1)));
+	}
+
+	// Decodes a single float PCM sample.
+	private static float decodeFloat(byte[] data, int offset, int bytes, boolean bigEndian)
+	{
+		long bits = 0L;
+		for (int b = 0; b < bytes; b++)
+		{
+			int shift = bigEndian ? (bytes - 1 - b) * 8 : b * 8;
+			bits |= (data[offset + b] & 0x0ffL) << shift;
+		}
+		return bytes == 4 ? Float.intBitsToFloat((int)bits) : (float)Double.longBitsToDouble(bits);
+	}
+
+	// Normalized sinc.
+	private static double sinc(double x)
+	{
+		if (x == 0.0)
+			return 1.0;
+		double px = Math.PI * x;
+		return Math.sin(px) / px;
+	}
+
+	// Blackman window over [-1, 1].
+	private static double blackman(double x)
+	{
+		if (x <= -1.0 || x >= 1.0)
+			return 0.0;
+		double t = Math.PI * (x + 1.0);
+		return 0.42 - 0.5 * Math.cos(t) + 0.08 * Math.cos(2.0 * t);
+	}
+
+}
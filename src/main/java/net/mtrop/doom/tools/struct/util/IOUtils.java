@@ -17,6 +17,8 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 /**
@@ -517,6 +519,23 @@ public final class IOUtils
 		return INPUTSTREAM_NULL;
 	}	
 	
+	/**
+	 * Opens an input stream that reads a region of a file.
+	 * The stream reads from the file channel at absolute positions as it is read, so nothing is mapped or copied up front,
+	 * and the channel's own position is not used. The channel is closed when the stream is closed.
+	 * @param channel the open file channel to read.
+	 * @param offset the byte offset into the file of the start of the region.
+	 * @param length the length of the region, in bytes.
+	 * @return a new input stream.
+	 * @throws IOException if the region lies outside of the file, or the channel size could not be read.
+	 */
+	public static InputStream openChannelStream(FileChannel channel, long offset, long length) throws IOException
+	{
+		if (offset < 0 || length < 0 || offset + length > channel.size())
+			throw new IOException("Region is outside of the bounds of the file.");
+		return new ChannelRegionInputStream(channel, offset, length);
+	}	
+	
 	/**
 	 * @return a handle to the null file for this platform.
 	 */
@@ -547,4 +566,82 @@ public final class IOUtils
 		try { c.close(); } catch (Exception e){}
 	}
 	
+	/**
+	 * An input stream that reads a region of a file channel with positional reads.
+	 */
+	private static class ChannelRegionInputStream extends InputStream
+	{
+		private FileChannel channel;
+		private long position;
+		private long end;
+		private long mark;
+		
+		private ChannelRegionInputStream(FileChannel channel, long offset, long length)
+		{
+			this.channel = channel;
+			this.position = offset;
+			this.end = offset + length;
+			this.mark = offset;
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) > 0 ? b[0] & 0x0ff : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+				return 0;
+			if (position >= end)
+				return -1;
+			int amount = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, end - position)), position);
+			if (amount < 0)
+				return -1;
+			position += amount;
+			return amount;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long amount = Math.max(0L, Math.min(n, end - position));
+			position += amount;
+			return amount;
+		}
+		
+		@Override
+		public int available() throws IOException
+		{
+			return (int)Math.min(Integer.MAX_VALUE, end - position);
+		}
+		
+		@Override
+		public boolean markSupported()
+		{
+			return true;
+		}
+		
+		@Override
+		public synchronized void mark(int readlimit)
+		{
+			mark = position;
+		}
+		
+		@Override
+		public synchronized void reset() throws IOException
+		{
+			position = mark;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+	
 }
@@ -5,6 +5,7 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.wadscript;
 
+import com.blackrook.rookscript.Script;
 import com.blackrook.rookscript.ScriptInstance;
 import com.blackrook.rookscript.ScriptIteratorType;
 import com.blackrook.rookscript.ScriptIteratorType.IteratorPair;
@@ -18,6 +19,7 @@ import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
 
 import net.mtrop.doom.Wad;
 import net.mtrop.doom.WadEntry;
+import net.mtrop.doom.WadFile;
 import net.mtrop.doom.exception.MapException;
 import net.mtrop.doom.map.DoomMap;
 import net.mtrop.doom.map.HexenMap;
@@ -58,18 +60,44 @@ import net.mtrop.doom.map.udmf.attributes.UDMFMBFThingAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFStrifeLinedefAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFStrifeThingAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFZDoomLinedefAttributes;
+import net.mtrop.doom.tools.common.UDMFChunkReader;
+import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.util.MapUtils;
 import net.mtrop.doom.util.NameUtils;
 
 import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
 
 /**
  * Script functions for Doom Maps.
@@ -310,7 +338,9 @@ public enum DoomMapFunctions implements ScriptFunctionType
 			return ScriptFunctionUsage.create()
 				.instructions(
 					"Loads a Doom Map fully into memory for inspection as a MapView. The map in the Wad can be " +
-					"in Doom or Hexen or UDMF format."
+					"in Doom or Hexen or UDMF format. Loaded maps are cached per script run (see VIEWCACHESIZE()): " +
+					"loading the same map from the same open Wad again returns the cached MapView, unless the map's entries " +
+					"or the Wad file have changed since it was loaded. Use VIEWCACHECLEAR() to drop cached maps explicitly."
 				)
 				.parameter("wad", 
 					type(Type.OBJECTREF, "Wad", "An open Wad.")
@@ -348,87 +378,224 @@ public enum DoomMapFunctions implements ScriptFunctionType
 					returnValue.setNull();
 					return true;
 				}
-				else if (entry.isNumeric())
+				
+				Wad wad = temp.asObjectType(Wad.class);
+				int index = entry.isNumeric() ? entry.asInt() : wad.lastIndexOf(entry.asString());
+				try
 				{
-					Wad wad = temp.asObjectType(Wad.class);
-					int index = entry.asInt();
-					try
-					{
-						MapFormat format = MapUtils.getMapFormat(wad, index);
-						if (format == null)
-						{
-							returnValue.setNull();
-							return true;
-						}
-
-						switch (format)
-						{
-							default:
-								break;
-							case DOOM:
-								returnValue.set(MapUtils.createDoomMap(wad, index));
-								break;
-							case HEXEN:
-								returnValue.set(MapUtils.createHexenMap(wad, index));
-								break;
-							case UDMF:
-								returnValue.set(MapUtils.createUDMFMap(wad, index));
-								break;
-						}
-					} 
-					catch (MapException e) 
-					{
-						returnValue.setError("BadMap", "Map information is malformed.");
-					} 
-					catch (IOException e)
-					{
-						returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
-					}
+					MapView<?,?,?,?,?> mapView = loadMapView(scriptInstance, wad, index);
+					if (mapView == null)
+						returnValue.setNull();
+					else
+						returnValue.set(mapView);
+				} 
+				catch (MapException e) 
+				{
+					returnValue.setError("BadMap", "Map information is malformed.");
+				} 
+				catch (IOException e)
+				{
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				entry.setNull();
+			}
+		}
+	},
+	
+	VIEWCACHESIZE(1)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Sets the maximum amount of MapViews that VIEW() keeps cached for this script run. " +
+					"If more maps than this are loaded, the least recently used ones are dropped from the cache. " +
+					"The default is " + MapViewCache.DEFAULT_CAPACITY + "."
+				)
+				.parameter("size", 
+					type(Type.INTEGER, "The new maximum amount of cached maps. 0 or less disables caching (and clears the cache).")
+				)
+				.returns(
+					type(Type.INTEGER, "The previous maximum.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				returnValue.set(getMapViewCache(scriptInstance).setCapacity(temp.asInt()));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	VIEWCACHECLEAR(1)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Drops MapViews cached by VIEW() for this script run, so that the next VIEW() call reloads them. " +
+					"Maps are already reloaded if their entries change, so this is mostly for freeing memory, " +
+					"or for changes that do not alter entry offsets and sizes."
+				)
+				.parameter("wad", 
+					type(Type.NULL, "Drop all cached maps."),
+					type(Type.OBJECTREF, "Wad", "Drop only the cached maps loaded from this Wad.")
+				)
+				.returns(
+					type(Type.INTEGER, "The amount of cached maps dropped."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not null nor a Wad.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				if (temp.isNull())
+				{
+					returnValue.set(getMapViewCache(scriptInstance).clear(null));
 					return true;
 				}
-				else
+				else if (!temp.isObjectRef(Wad.class))
 				{
-					Wad wad = temp.asObjectType(Wad.class);
-					String name = entry.asString();
-					try
-					{
-						MapFormat format = MapUtils.getMapFormat(wad, name);
-						if (format == null)
-						{
-							returnValue.setNull();
-							return true;
-						}
+					returnValue.setError("BadParameter", "First parameter is not a Wad.");
+					return true;
+				}
 
-						switch (format)
-						{
-							default:
-								break;
-							case DOOM:
-								returnValue.set(MapUtils.createDoomMap(wad, name));
-								break;
-							case HEXEN:
-								returnValue.set(MapUtils.createHexenMap(wad, name));
-								break;
-							case UDMF:
-								returnValue.set(MapUtils.createUDMFMap(wad, name));
-								break;
-						}
-					} 
-					catch (MapException e) 
-					{
-						returnValue.setError("BadMap", "Map information is malformed.");
-					} 
-					catch (IOException e)
-					{
-						returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
-					}
+				returnValue.set(getMapViewCache(scriptInstance).clear(temp.asObjectType(Wad.class)));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	FORKMAPS(4)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Calls a script entry point once per map, in parallel, and returns the results in the same order as the maps. " +
+					"Each worker thread runs its own isolated instance of this script, with its own empty global scope, " +
+					"so the entry point may only use its parameters, and must return its result rather than set variables. " +
+					"The entry point is called with two parameters: the WAD and the map header (as provided in [headers]). " +
+					"If [wad] is a WAD file, each worker opens it again for itself, read-only, and closes it afterward: " +
+					"functions that change a WAD (such as WADADD or WADREMOVE) return a ReadOnly error on it. " +
+					"Otherwise, the same WAD is passed to every worker and must not be changed by them."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "An open Wad.")
+				)
+				.parameter("headers", 
+					type(Type.LIST, "[INTEGER, ...]", "The entry indices of the map headers."),
+					type(Type.LIST, "[STRING, ...]", "The map header names.")
+				)
+				.parameter("entryName", 
+					type(Type.STRING, "The name of the script entry point to call per map. It must take two parameters.")
+				)
+				.parameter("threads", 
+					type(Type.NULL, "Use as many threads as there are available processors."),
+					type(Type.INTEGER, "The maximum amount of threads to use.")
+				)
+				.returns(
+					type(Type.LIST, "[ANY, ...]", "The value returned by each call, in the order of [headers]. If a call fails, its value is an error."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a valid open Wad, [headers] is not a list, or [entryName] is not a two-parameter entry point."),
+					type(Type.ERROR, "Unsupported", "If this script was not started in a way that allows worker instances."),
+					type(Type.ERROR, "Interrupted", "If the calling thread was interrupted while waiting.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue list = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				int threads = temp.isNull() ? Runtime.getRuntime().availableProcessors() : Math.max(1, temp.asInt());
+				scriptInstance.popStackValue(temp);
+				String entryName = temp.asString();
+				scriptInstance.popStackValue(list);
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(Wad.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (!list.isList())
+				{
+					returnValue.setError("BadParameter", "Second parameter is not a list.");
+					return true;
+				}
+				
+				Script.Entry entry = scriptInstance.getScript().getScriptEntry(entryName);
+				if (entry == null || entry.getParameterCount() != 2)
+				{
+					returnValue.setError("BadParameter", "Third parameter is not the name of an entry point that takes two parameters: " + entryName);
+					return true;
+				}
+				
+				Callable<ScriptInstance> workerFactory;
+				synchronized (WORKER_FACTORIES)
+				{
+					workerFactory = WORKER_FACTORIES.get(scriptInstance);
+				}
+				if (workerFactory == null)
+				{
+					returnValue.setError("Unsupported", "This script cannot create worker instances.");
+					return true;
+				}
+				
+				Object[] headers = new Object[list.length()];
+				int n = 0;
+				for (IteratorPair pair : list)
+				{
+					ScriptValue header = pair.getValue();
+					headers[n++] = header.isNumeric() ? (Object)header.asInt() : header.asString();
+				}
+				
+				try {
+					ScriptValue[] results = forkMaps(workerFactory, temp.asObjectType(Wad.class), headers, entryName, threads);
+					returnValue.setEmptyList(results.length);
+					for (int i = 0; i < results.length; i++)
+						returnValue.listAdd(results[i]);
+				} catch (InterruptedException e) {
+					returnValue.setError("Interrupted", "The calling thread was interrupted.");
+				}
+				return true;
 			}
 			finally
 			{
 				temp.setNull();
-				entry.setNull();
+				list.setNull();
 			}
 		}
 	},
@@ -968,6 +1135,166 @@ public enum DoomMapFunctions implements ScriptFunctionType
 		}
 	},
 
+	FIELDVALUES(4)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Fetches one field from every element of one type in a MapView, as a list in element index order. " +
+					"This is far faster than iterating through elements as maps (for example, via THINGS() or LINEDEFS()) " +
+					"when only a few fields are needed for analysis, since no map is built per element for common fields. " +
+					"Field names are the same as the keys on the maps returned by THING(), VERTEX(), LINEDEF(), SIDEDEF(), and SECTOR()."
+				)
+				.parameter("mapview", 
+					type(Type.OBJECTREF, "MapView", "The map view to use.")
+				)
+				.parameter("elementType", 
+					type(Type.STRING, "The element type: \"thing\", \"vertex\", \"linedef\", \"sidedef\", or \"sector\".")
+				)
+				.parameter("field", 
+					type(Type.STRING, "The field name.")
+				)
+				.parameter("strife", 
+					type(Type.BOOLEAN, "If true, interpret things as Strife things (different flags).")
+				)
+				.returns(
+					type(Type.LIST, "[ANY, ...]", "The field value for each element. Elements without the field have a null value."),
+					type(Type.ERROR, "BadParameter", "If [mapview] is not a valid MapView, or [elementType] is not a valid type.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue value = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				boolean strife = temp.asBoolean();
+				scriptInstance.popStackValue(temp);
+				String field = temp.asString();
+				scriptInstance.popStackValue(temp);
+				String elementType = temp.asString();
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(MapView.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a MapView.");
+					return true;
+				}
+
+				MapElementColumn column = MapElementColumn.create(temp.asObjectType(MapView.class), elementType, field, strife);
+				if (column == null)
+				{
+					returnValue.setError("BadParameter", "Second parameter is not a valid element type: " + elementType);
+					return true;
+				}
+				
+				int count = column.getCount();
+				returnValue.setEmptyList(count);
+				for (int i = 0; i < count; i++)
+				{
+					column.get(i, value);
+					returnValue.listAdd(value);
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				value.setNull();
+			}
+		}
+	},
+	
+	FIELDINDICES(5)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Finds the indices of all elements of one type in a MapView whose field has a specific value. " +
+					"Numeric values are compared numerically, booleans as booleans, and everything else as case-sensitive strings. " +
+					"Field names are the same as the keys on the maps returned by THING(), VERTEX(), LINEDEF(), SIDEDEF(), and SECTOR()."
+				)
+				.parameter("mapview", 
+					type(Type.OBJECTREF, "MapView", "The map view to use.")
+				)
+				.parameter("elementType", 
+					type(Type.STRING, "The element type: \"thing\", \"vertex\", \"linedef\", \"sidedef\", or \"sector\".")
+				)
+				.parameter("field", 
+					type(Type.STRING, "The field name.")
+				)
+				.parameter("value", 
+					type(Type.NULL, "Match elements without the field."),
+					type(Type.BOOLEAN, "Match a boolean field value."),
+					type(Type.INTEGER, "Match a numeric field value."),
+					type(Type.FLOAT, "Match a numeric field value."),
+					type(Type.STRING, "Match a string field value.")
+				)
+				.parameter("strife", 
+					type(Type.BOOLEAN, "If true, interpret things as Strife things (different flags).")
+				)
+				.returns(
+					type(Type.LIST, "[INTEGER, ...]", "The indices of the matching elements, in ascending order. Can be empty."),
+					type(Type.ERROR, "BadParameter", "If [mapview] is not a valid MapView, or [elementType] is not a valid type.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue value = CACHEVALUE2.get();
+			ScriptValue match = CACHEVALUE3.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				boolean strife = temp.asBoolean();
+				scriptInstance.popStackValue(match);
+				scriptInstance.popStackValue(temp);
+				String field = temp.asString();
+				scriptInstance.popStackValue(temp);
+				String elementType = temp.asString();
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(MapView.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a MapView.");
+					return true;
+				}
+
+				MapElementColumn column = MapElementColumn.create(temp.asObjectType(MapView.class), elementType, field, strife);
+				if (column == null)
+				{
+					returnValue.setError("BadParameter", "Second parameter is not a valid element type: " + elementType);
+					return true;
+				}
+				
+				int count = column.getCount();
+				returnValue.setEmptyList();
+				for (int i = 0; i < count; i++)
+				{
+					column.get(i, value);
+					if (fieldMatches(value, match))
+						returnValue.listAdd(i);
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				value.setNull();
+				match.setNull();
+			}
+		}
+	},
+	
 	ELEMENTS(2)
 	{
 		@Override
@@ -1107,26 +1434,103 @@ public enum DoomMapFunctions implements ScriptFunctionType
 				} 
 				catch (IOException e) 
 				{
-					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				data.setNull();
+			}
+		}
+		
+		final String[] ACCEPTED_TYPES = 
+		{
+			"attribute",
+			"linedef",
+			"sector",
+			"sidedef",
+			"thing",
+			"vertex"
+		};
+	},
+	
+	UDMFREWRITE(2)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Creates an iterator for rewriting UDMF data (TEXTMAP) from an input to an output, one object at a time, " +
+					"without loading the whole map. The value that this produces can be used in an each(...) loop. " +
+					"The key is a map with {type:STRING, index:INTEGER}, and the value is a map of the object's fields. " +
+					"Change the value map in the loop body to change the object: objects whose maps are not changed are written out " +
+					"exactly as they were read (including formatting and comments), changed objects are written like WRITEUDMFELEMENT(), " +
+					"and objects whose maps are emptied are removed. Global attributes, whitespace, and comments between objects are " +
+					"always copied as-is. The loop must run to the end for all of the data to be written. " +
+					"Streams are read and written as ISO-8859-1, so bytes are preserved. The streams are not closed."
+				)
+				.parameter("input", 
+					type(Type.STRING, "The UDMF data."),
+					type(Type.BUFFER, "The data in the UDMF Map entry (TEXTMAP)."),
+					type(Type.OBJECTREF, "InputStream", "An input stream for reading a UDMF Map entry (TEXTMAP)."),
+					type(Type.OBJECTREF, "Reader", "An open reader for reading a UDMF Map entry (TEXTMAP).")
+				)
+				.parameter("output", 
+					type(Type.OBJECTREF, "OutputStream", "An output stream to write the rewritten UDMF data to."),
+					type(Type.OBJECTREF, "Writer", "An open writer to write the rewritten UDMF data to.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "ScriptIteratorType", "The iterator returned."),
+					type(Type.ERROR, "BadParameter", "If [input] or [output] is not a valid type.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				Writer writer;
+				if (temp.isObjectRef(Writer.class))
+					writer = temp.asObjectType(Writer.class);
+				else if (temp.isObjectRef(OutputStream.class))
+					writer = new BufferedWriter(new OutputStreamWriter(temp.asObjectType(OutputStream.class), StandardCharsets.ISO_8859_1));
+				else
+				{
+					returnValue.setError("BadParameter", "Second parameter is not an OutputStream or Writer.");
+					return true;
+				}
+
+				scriptInstance.popStackValue(temp);
+				Reader reader;
+				if (temp.isString())
+					reader = new StringReader(temp.asString());
+				else if (temp.isBuffer())
+					reader = new BufferedReader(new InputStreamReader(temp.asObjectType(BufferType.class).getInputStream(), StandardCharsets.ISO_8859_1));
+				else if (temp.isObjectRef(InputStream.class))
+					reader = new BufferedReader(new InputStreamReader(temp.asObjectType(InputStream.class), StandardCharsets.ISO_8859_1));
+				else if (temp.isObjectRef(Reader.class))
+					reader = new BufferedReader(temp.asObjectType(Reader.class));
+				else
+				{
+					returnValue.setError("BadParameter", "First parameter is not a valid data type.");
+					return true;
 				}
+				
+				returnValue.set(new UDMFRewriteIterator(new UDMFChunkReader(reader), writer));
 				return true;
 			}
 			finally
 			{
 				temp.setNull();
-				data.setNull();
 			}
 		}
-		
-		final String[] ACCEPTED_TYPES = 
-		{
-			"attribute",
-			"linedef",
-			"sector",
-			"sidedef",
-			"thing",
-			"vertex"
-		};
 	},
 	
 	READTHING(2)
@@ -2038,6 +2442,183 @@ public enum DoomMapFunctions implements ScriptFunctionType
 		value.mapSet("size", entry.getSize());
 	}
 	
+	/**
+	 * Sets the factory used for creating the isolated worker instances used by FORKMAPS for a script instance.
+	 * Each created instance must be built from the same script, but with its own scopes.
+	 * @param scriptInstance the script instance.
+	 * @param workerFactory the factory for new worker instances.
+	 */
+	public static void setWorkerFactory(ScriptInstance scriptInstance, Callable<ScriptInstance> workerFactory)
+	{
+		synchronized (WORKER_FACTORIES)
+		{
+			WORKER_FACTORIES.put(scriptInstance, workerFactory);
+		}
+	}
+	
+	/**
+	 * Calls a script entry point once per map on a pool of worker instances.
+	 * Each worker thread creates one instance and reuses it for every map that it takes.
+	 * @param workerFactory the worker instance factory.
+	 * @param wad the source WAD.
+	 * @param headers the map headers (entry indices or names).
+	 * @param entryName the entry point name.
+	 * @param threads the maximum amount of threads.
+	 * @return the results, in header order.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting.
+	 */
+	private static ScriptValue[] forkMaps(final Callable<ScriptInstance> workerFactory, final Wad wad, final Object[] headers, final String entryName, int threads) throws InterruptedException
+	{
+		final ScriptValue[] results = new ScriptValue[headers.length];
+		final AtomicInteger nextHeader = new AtomicInteger(0);
+		int workerCount = Math.max(1, Math.min(threads, headers.length));
+		
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount, (runnable) -> {
+			Thread out = new Thread(runnable, "WadScriptMapWorker-" + threadId.getAndIncrement());
+			out.setDaemon(true);
+			return out;
+		});
+
+		try {
+			List<Future<Void>> workers = new ArrayList<>(workerCount);
+			for (int w = 0; w < workerCount; w++)
+			{
+				workers.add(executor.submit(() -> {
+					ScriptInstance worker = null;
+					WadFile workerWad = null;
+					try {
+						int i;
+						while ((i = nextHeader.getAndIncrement()) < headers.length)
+						{
+							ScriptValue result = ScriptValue.create(null);
+							results[i] = result;
+							try {
+								if (worker == null)
+									worker = workerFactory.call();
+								if (workerWad == null && wad instanceof WadFile)
+									workerWad = new ScriptWadFile(new File(((WadFile)wad).getFilePath()), true);
+								worker.call(entryName, workerWad != null ? workerWad : wad, headers[i]);
+								worker.popStackValue(result);
+							} catch (Exception e) {
+								result.setError("ScriptError", "Call for map " + headers[i] + " failed: " + e.getMessage(), e.getLocalizedMessage());
+								worker = null; // start fresh after failures
+							}
+						}
+					} finally {
+						IOUtils.close(workerWad);
+					}
+					return null;
+				}));
+			}
+			
+			for (Future<Void> worker : workers)
+			{
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					// Per-map failures are already recorded as error results.
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Gets the MapView cache for a script instance, creating it if it does not exist.
+	 * @param scriptInstance the script instance.
+	 * @return the cache.
+	 */
+	private static MapViewCache getMapViewCache(ScriptInstance scriptInstance)
+	{
+		synchronized (MAPVIEW_CACHES)
+		{
+			MapViewCache out;
+			if ((out = MAPVIEW_CACHES.get(scriptInstance)) == null)
+				MAPVIEW_CACHES.put(scriptInstance, out = new MapViewCache());
+			return out;
+		}
+	}
+	
+	/**
+	 * Loads a map, or fetches it from the script instance's cache if it was loaded before and has not changed.
+	 * @param scriptInstance the script instance.
+	 * @param wad the source Wad.
+	 * @param index the index of the map header.
+	 * @return the loaded map, or null if the header does not start a map.
+	 * @throws MapException if the map data is malformed.
+	 * @throws IOException if the map data could not be read.
+	 */
+	private static MapView<?,?,?,?,?> loadMapView(ScriptInstance scriptInstance, Wad wad, int index) throws MapException, IOException
+	{
+		if (index < 0 || index >= wad.getEntryCount())
+			return null;
+		
+		MapFormat format = MapUtils.getMapFormat(wad, index);
+		if (format == null)
+			return null;
+		
+		MapViewCache cache = getMapViewCache(scriptInstance);
+		long stamp = getMapStamp(wad, index);
+		MapView<?,?,?,?,?> out;
+		if ((out = cache.get(wad, index, stamp)) != null)
+			return out;
+		
+		switch (format)
+		{
+			default:
+				return null;
+			case DOOM:
+				out = MapUtils.createDoomMap(wad, index);
+				break;
+			case HEXEN:
+				out = MapUtils.createHexenMap(wad, index);
+				break;
+			case UDMF:
+				out = MapUtils.createUDMFMap(wad, index);
+				break;
+		}
+		cache.put(wad, index, stamp, out);
+		return out;
+	}
+	
+	/**
+	 * Creates a modification stamp for a map in a Wad, from the offsets and sizes of its entries,
+	 * the amount of entries in the Wad, and the length and modified time of the Wad file, if any.
+	 * Wads that are not files have no modified time, so the checksum of each entry's data is used as well.
+	 * @param wad the source Wad.
+	 * @param index the index of the map header.
+	 * @return the stamp.
+	 * @throws IOException if the entry list could not be read.
+	 */
+	private static long getMapStamp(Wad wad, int index) throws IOException
+	{
+		long out = wad.getEntryCount();
+		if (wad instanceof WadFile)
+		{
+			File file = new File(((WadFile)wad).getFilePath());
+			out = out * 31 + file.length();
+			out = out * 31 + file.lastModified();
+		}
+		int count = Math.max(1, Math.min(MapUtils.getMapEntryCount(wad, wad.getEntry(index).getName()), wad.getEntryCount() - index));
+		CRC32 crc = wad instanceof WadFile ? null : new CRC32();
+		for (WadEntry entry : wad.mapEntries(index, count))
+		{
+			out = out * 31 + entry.getOffset();
+			out = out * 31 + entry.getSize();
+			if (crc != null)
+			{
+				crc.reset();
+				crc.update(wad.getData(entry));
+				out = out * 31 + crc.getValue();
+			}
+		}
+		return out;
+	}
+	
 	private static void mapElementToMap(Object object, ScriptValue out, boolean strifeThings)
 	{
 		if (object == null)
@@ -2062,6 +2643,26 @@ public enum DoomMapFunctions implements ScriptFunctionType
 			out.setEmptyMap();
 	}
 	
+	/**
+	 * Checks if a fetched field value matches a value to search for.
+	 * @param fieldValue the field value.
+	 * @param match the value to match.
+	 * @return true if they match, false if not.
+	 */
+	private static boolean fieldMatches(ScriptValue fieldValue, ScriptValue match)
+	{
+		if (match.isNull())
+			return fieldValue.isNull();
+		else if (fieldValue.isNull())
+			return false;
+		else if (match.isBoolean())
+			return fieldValue.asBoolean() == match.asBoolean();
+		else if (match.isNumeric())
+			return fieldValue.isNumeric() && fieldValue.asFloat() == match.asFloat();
+		else
+			return fieldValue.asString().equals(match.asString());
+	}
+	
 	private static void udmfToMap(UDMFObject object, ScriptValue out)
 	{
 		out.setEmptyMap(16);
@@ -2641,6 +3242,364 @@ public enum DoomMapFunctions implements ScriptFunctionType
 		return true;
 	}
 	
+	/**
+	 * A reader for one field across all elements of one type in a MapView.
+	 * Common fields on binary-format elements are read straight from the element's getters,
+	 * UDMF fields are read straight from the object's attributes, and anything else 
+	 * (for example, flags) is read by converting the element to a map.
+	 */
+	private static class MapElementColumn
+	{
+		private IntFunction<Object> elementGetter;
+		private int count;
+		private BiConsumer<Object, ScriptValue> fieldGetter;
+		
+		private MapElementColumn(IntFunction<Object> elementGetter, int count, BiConsumer<Object, ScriptValue> fieldGetter)
+		{
+			this.elementGetter = elementGetter;
+			this.count = count;
+			this.fieldGetter = fieldGetter;
+		}
+		
+		/**
+		 * Creates a new column reader.
+		 * @param mapView the map view.
+		 * @param elementType the element type name.
+		 * @param field the field name.
+		 * @param strife if true, things are Strife things.
+		 * @return a new column reader, or null if the element type is not valid.
+		 */
+		private static MapElementColumn create(final MapView<?,?,?,?,?> mapView, String elementType, String field, boolean strife)
+		{
+			IntFunction<Object> elementGetter;
+			int count;
+			switch (elementType.toLowerCase())
+			{
+				case "thing":
+					elementGetter = mapView::getThing;
+					count = mapView.getThingCount();
+					break;
+				case "vertex":
+					elementGetter = mapView::getVertex;
+					count = mapView.getVertexCount();
+					break;
+				case "linedef":
+					elementGetter = mapView::getLinedef;
+					count = mapView.getLinedefCount();
+					break;
+				case "sidedef":
+					elementGetter = mapView::getSidedef;
+					count = mapView.getSidedefCount();
+					break;
+				case "sector":
+					elementGetter = mapView::getSector;
+					count = mapView.getSectorCount();
+					break;
+				default:
+					return null;
+			}
+			
+			Object sample = count > 0 ? elementGetter.apply(0) : null;
+			return new MapElementColumn(elementGetter, count, createFieldGetter(sample, field, strife));
+		}
+
+		/**
+		 * @return the amount of elements.
+		 */
+		private int getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * Fetches the field value of an element.
+		 * @param index the element index.
+		 * @param out the output value (set to null if the element does not have the field).
+		 */
+		private void get(int index, ScriptValue out)
+		{
+			fieldGetter.accept(elementGetter.apply(index), out);
+		}
+		
+		// Picks a field reader by the element class.
+		private static BiConsumer<Object, ScriptValue> createFieldGetter(Object sample, String field, boolean strife)
+		{
+			if (sample instanceof UDMFObject)
+			{
+				return (element, out) -> {
+					out.setNull();
+					for (Map.Entry<String, Object> entry : (UDMFObject)element)
+						if (entry.getKey().equals(field))
+						{
+							out.set(entry.getValue());
+							break;
+						}
+				};
+			}
+			else if (sample instanceof DoomVertex)
+			{
+				if (field.equals(UDMFDoomVertexAttributes.ATTRIB_POSITION_X))
+					return (element, out) -> out.set(((DoomVertex)element).getX());
+				else if (field.equals(UDMFDoomVertexAttributes.ATTRIB_POSITION_Y))
+					return (element, out) -> out.set(((DoomVertex)element).getY());
+			}
+			else if (sample instanceof DoomSidedef)
+			{
+				if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_OFFSET_X))
+					return (element, out) -> out.set(((DoomSidedef)element).getOffsetX());
+				else if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_OFFSET_Y))
+					return (element, out) -> out.set(((DoomSidedef)element).getOffsetY());
+				else if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_TOP))
+					return (element, out) -> out.set(((DoomSidedef)element).getTextureTop());
+				else if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_BOTTOM))
+					return (element, out) -> out.set(((DoomSidedef)element).getTextureBottom());
+				else if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_MIDDLE))
+					return (element, out) -> out.set(((DoomSidedef)element).getTextureMiddle());
+				else if (field.equals(UDMFDoomSidedefAttributes.ATTRIB_SECTOR_INDEX))
+					return (element, out) -> out.set(((DoomSidedef)element).getSectorIndex());
+			}
+			else if (sample instanceof DoomSector)
+			{
+				if (field.equals(UDMFDoomSectorAttributes.ATTRIB_HEIGHT_FLOOR))
+					return (element, out) -> out.set(((DoomSector)element).getHeightFloor());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_HEIGHT_CEILING))
+					return (element, out) -> out.set(((DoomSector)element).getHeightCeiling());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_FLOOR))
+					return (element, out) -> out.set(((DoomSector)element).getTextureFloor());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_CEILING))
+					return (element, out) -> out.set(((DoomSector)element).getTextureCeiling());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_LIGHT_LEVEL))
+					return (element, out) -> out.set(((DoomSector)element).getLightLevel());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_SPECIAL))
+					return (element, out) -> out.set(((DoomSector)element).getSpecial());
+				else if (field.equals(UDMFDoomSectorAttributes.ATTRIB_ID))
+					return (element, out) -> out.set(((DoomSector)element).getTag());
+			}
+			else if (sample instanceof DoomLinedef)
+			{
+				if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_VERTEX_START))
+					return (element, out) -> out.set(((DoomLinedef)element).getVertexStartIndex());
+				else if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_VERTEX_END))
+					return (element, out) -> out.set(((DoomLinedef)element).getVertexEndIndex());
+				else if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_SPECIAL))
+					return (element, out) -> out.set(((DoomLinedef)element).getSpecial());
+				else if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_SIDEDEF_FRONT))
+					return (element, out) -> out.set(((DoomLinedef)element).getSidedefFrontIndex());
+				else if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_SIDEDEF_BACK))
+					return (element, out) -> out.set(((DoomLinedef)element).getSidedefBackIndex());
+				else if (field.equals(UDMFDoomLinedefAttributes.ATTRIB_ID))
+					return (element, out) -> out.set(((DoomLinedef)element).getTag());
+			}
+			else if (sample instanceof HexenLinedef)
+			{
+				if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_VERTEX_START))
+					return (element, out) -> out.set(((HexenLinedef)element).getVertexStartIndex());
+				else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_VERTEX_END))
+					return (element, out) -> out.set(((HexenLinedef)element).getVertexEndIndex());
+				else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_SPECIAL))
+					return (element, out) -> out.set(((HexenLinedef)element).getSpecial());
+				else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_SIDEDEF_FRONT))
+					return (element, out) -> out.set(((HexenLinedef)element).getSidedefFrontIndex());
+				else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_SIDEDEF_BACK))
+					return (element, out) -> out.set(((HexenLinedef)element).getSidedefBackIndex());
+				int arg = getArgumentIndex(field);
+				if (arg >= 0)
+					return (element, out) -> out.set(((HexenLinedef)element).getArgument(arg));
+			}
+			else if (sample instanceof DoomThing)
+			{
+				if (field.equals(UDMFDoomThingAttributes.ATTRIB_POSITION_X))
+					return (element, out) -> out.set(((DoomThing)element).getX());
+				else if (field.equals(UDMFDoomThingAttributes.ATTRIB_POSITION_Y))
+					return (element, out) -> out.set(((DoomThing)element).getY());
+				else if (field.equals(UDMFDoomThingAttributes.ATTRIB_ANGLE))
+					return (element, out) -> out.set(((DoomThing)element).getAngle());
+				else if (field.equals(UDMFDoomThingAttributes.ATTRIB_TYPE))
+					return (element, out) -> out.set(((DoomThing)element).getType());
+			}
+			else if (sample instanceof HexenThing)
+			{
+				if (field.equals(UDMFHexenThingAttributes.ATTRIB_POSITION_X))
+					return (element, out) -> out.set(((HexenThing)element).getX());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_POSITION_Y))
+					return (element, out) -> out.set(((HexenThing)element).getY());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_ANGLE))
+					return (element, out) -> out.set(((HexenThing)element).getAngle());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_TYPE))
+					return (element, out) -> out.set(((HexenThing)element).getType());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_HEIGHT))
+					return (element, out) -> out.set(((HexenThing)element).getHeight());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_ID))
+					return (element, out) -> out.set(((HexenThing)element).getId());
+				else if (field.equals(UDMFHexenThingAttributes.ATTRIB_SPECIAL))
+					return (element, out) -> out.set(((HexenThing)element).getSpecial());
+				int arg = getArgumentIndex(field);
+				if (arg >= 0)
+					return (element, out) -> out.set(((HexenThing)element).getArgument(arg));
+			}
+			
+			// Anything else goes through the full element-to-map conversion.
+			return (element, out) -> {
+				ScriptValue temp = CACHETEMP.get();
+				try {
+					mapElementToMap(element, temp, strife);
+					if (!temp.isMap() || !temp.mapGet(field, out))
+						out.setNull();
+				} finally {
+					temp.setNull();
+				}
+			};
+		}
+		
+		// Returns the Hexen argument index for a field name, or -1 if not an argument field.
+		private static int getArgumentIndex(String field)
+		{
+			if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_ARG0))
+				return 0;
+			else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_ARG1))
+				return 1;
+			else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_ARG2))
+				return 2;
+			else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_ARG3))
+				return 3;
+			else if (field.equals(UDMFHexenLinedefAttributes.ATTRIB_ARG4))
+				return 4;
+			return -1;
+		}
+	}
+	
+	/**
+	 * A least-recently-used cache of loaded MapViews, keyed by Wad (by identity) and header index.
+	 * Each cached map also stores the modification stamp it was loaded with, and it is reloaded if the stamp differs.
+	 * Wads are weakly referenced, and maps from Wads that were garbage-collected are dropped.
+	 */
+	private static class MapViewCache
+	{
+		private static final int DEFAULT_CAPACITY = 8;
+		
+		private int capacity;
+		private LinkedHashMap<MapViewKey, CachedMapView> map;
+		
+		private MapViewCache()
+		{
+			this.capacity = DEFAULT_CAPACITY;
+			this.map = new LinkedHashMap<MapViewKey, CachedMapView>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = -5154213096618917312L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<MapViewKey, CachedMapView> eldest)
+				{
+					return size() > capacity;
+				}
+			};
+		}
+		
+		private synchronized MapView<?,?,?,?,?> get(Wad wad, int index, long stamp)
+		{
+			expunge();
+			CachedMapView cached = map.get(new MapViewKey(wad, index));
+			return cached != null && cached.stamp == stamp ? cached.mapView : null;
+		}
+		
+		private synchronized void put(Wad wad, int index, long stamp, MapView<?,?,?,?,?> mapView)
+		{
+			expunge();
+			if (capacity > 0)
+				map.put(new MapViewKey(wad, index), new CachedMapView(stamp, mapView));
+		}
+		
+		// Drops maps whose Wads were garbage-collected.
+		private void expunge()
+		{
+			Iterator<MapViewKey> it = map.keySet().iterator();
+			while (it.hasNext())
+			{
+				if (it.next().wad.get() == null)
+					it.remove();
+			}
+		}
+		
+		private synchronized int setCapacity(int capacity)
+		{
+			int out = this.capacity;
+			this.capacity = Math.max(0, capacity);
+			Iterator<MapViewKey> it = map.keySet().iterator();
+			while (map.size() > this.capacity && it.hasNext())
+			{
+				it.next();
+				it.remove();
+			}
+			return out;
+		}
+		
+		private synchronized int clear(Wad wad)
+		{
+			int out = 0;
+			Iterator<MapViewKey> it = map.keySet().iterator();
+			while (it.hasNext())
+			{
+				MapViewKey key = it.next();
+				if (wad == null || key.wad.get() == wad)
+				{
+					it.remove();
+					out++;
+				}
+			}
+			return out;
+		}
+	}
+	
+	/**
+	 * A MapView cache key. The Wad is weakly referenced, so that cached maps do not keep closed Wads around.
+	 */
+	private static class MapViewKey
+	{
+		private WeakReference<Wad> wad;
+		private int index;
+		private int hash;
+		
+		private MapViewKey(Wad wad, int index)
+		{
+			this.wad = new WeakReference<>(wad);
+			this.index = index;
+			this.hash = System.identityHashCode(wad) * 31 + index;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (obj == this)
+				return true;
+			if (!(obj instanceof MapViewKey))
+				return false;
+			MapViewKey key = (MapViewKey)obj;
+			Wad w = wad.get();
+			return w != null && w == key.wad.get() && index == key.index;
+		}
+	}
+
+	/**
+	 * A cached MapView and the stamp it was loaded with.
+	 */
+	private static class CachedMapView
+	{
+		private long stamp;
+		private MapView<?,?,?,?,?> mapView;
+		
+		private CachedMapView(long stamp, MapView<?,?,?,?,?> mapView)
+		{
+			this.stamp = stamp;
+			this.mapView = mapView;
+		}
+	}
+	
 	private static abstract class MapViewObjectIterator implements ScriptIteratorType
 	{
 		protected MapView<?,?,?,?,?> mapView;
@@ -2990,9 +3949,143 @@ public enum DoomMapFunctions implements ScriptFunctionType
 
 	}
 
+	/** Worker instance factories, by script instance. */
+	private static final Map<ScriptInstance, Callable<ScriptInstance>> WORKER_FACTORIES = new WeakHashMap<>();
+	
+	/** Loaded MapView caches, by script instance. */
+	private static final Map<ScriptInstance, MapViewCache> MAPVIEW_CACHES = new WeakHashMap<>();
+	
+	private static class UDMFRewriteIterator implements ScriptIteratorType
+	{
+		private UDMFChunkReader reader;
+		private Writer writer;
+		private IteratorPair pair;
+		private Map<String, Integer> counts;
+		
+		/** The object chunk last returned by next(), not yet written. */
+		private UDMFChunkReader.Chunk pending;
+		/** The fields of the pending object as they were read. */
+		private Map<String, String> pendingFields;
+		/** If true, the next chunk has been found. */
+		private boolean ready;
+
+		private UDMFRewriteIterator(UDMFChunkReader reader, Writer writer) 
+		{
+			this.reader = reader;
+			this.writer = writer;
+			this.pair = new IteratorPair();
+			this.counts = new HashMap<>();
+			this.pending = null;
+			this.pendingFields = null;
+			this.ready = false;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (!ready)
+				advance();
+			return pending != null;
+		}
+
+		@Override
+		public IteratorPair next()
+		{
+			if (!ready)
+				advance();
+			ready = false;
+			
+			ScriptValue key = pair.getKey();
+			ScriptValue value = pair.getValue();
+			
+			String type = pending.getName();
+			Integer count = counts.get(type);
+			count = count == null ? 0 : count;
+			counts.put(type, count + 1);
+			
+			key.setEmptyMap(2);
+			key.mapSet("index", count);
+			key.mapSet("type", type);
+
+			try {
+				UDMFScanner scanner = UDMFScanner.createScanner(pending.getText());
+				UDMFObject object = scanner.next().getUDMFObject();
+				pendingFields = getFields(object);
+				udmfToMap(object, value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return pair;
+		}
+		
+		// Writes the pending object, then copies chunks until the next object or the end of the data.
+		private void advance()
+		{
+			try {
+				if (pending != null)
+				{
+					writer.write(pending.getPrefix());
+					ScriptValue value = pair.getValue();
+					if (!value.isMap() || value.length() == 0)
+					{
+						// removed.
+					}
+					else
+					{
+						UDMFObject object = CACHEUDMFOBJECT.get();
+						mapToUDMF(value, object);
+						if (getFields(object).equals(pendingFields))
+							writer.write(pending.getText());
+						else
+							UDMFWriter.writeObject(object, writer, pending.getName());
+					}
+					pending = null;
+					pendingFields = null;
+				}
+				
+				UDMFChunkReader.Chunk chunk;
+				while ((chunk = reader.next()) != null)
+				{
+					if (chunk.getType() == UDMFChunkReader.Chunk.Type.OBJECT)
+					{
+						pending = chunk;
+						break;
+					}
+					writer.write(chunk.getPrefix());
+					writer.write(chunk.getText());
+				}
+				if (pending == null)
+					writer.flush();
+				ready = true;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		// Gets comparable field values from an object.
+		private static Map<String, String> getFields(UDMFObject object)
+		{
+			Map<String, String> out = new HashMap<>();
+			for (Map.Entry<String, Object> entry : object)
+			{
+				Object value = entry.getValue();
+				if (value == null)
+					continue;
+				else if (value instanceof Float || value instanceof Double)
+					out.put(entry.getKey(), String.valueOf(((Number)value).doubleValue()));
+				else if (value instanceof Number)
+					out.put(entry.getKey(), String.valueOf(((Number)value).longValue()));
+				else
+					out.put(entry.getKey(), String.valueOf(value));
+			}
+			return out;
+		}
+	}
+
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 
 	private static final ThreadLocal<DoomThing> CACHEDOOMTHING = ThreadLocal.withInitial(()->new DoomThing());
 	private static final ThreadLocal<HexenThing> CACHEHEXENTHING = ThreadLocal.withInitial(()->new HexenThing());
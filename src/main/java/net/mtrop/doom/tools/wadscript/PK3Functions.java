@@ -17,14 +17,23 @@ import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
 import net.mtrop.doom.DoomPK3;
 import net.mtrop.doom.Wad;
 import net.mtrop.doom.WadBuffer;
+import net.mtrop.doom.WadFile;
 import net.mtrop.doom.exception.WadException;
+import net.mtrop.doom.tools.struct.util.IOUtils;
 
 import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -124,7 +133,8 @@ public enum PK3Functions implements ScriptFunctionType
 		{
 			return ScriptFunctionUsage.create()
 				.instructions(
-					"Returns a list of all entries that start with a type of key. The name is treated case-insensitively."
+					"Returns a list of all entries that start with a type of key. The name is treated case-insensitively. " +
+					"The entries are looked up using a sorted index of the PK3's entry names, made once per open PK3."
 				)
 				.parameter("pk3", 
 					type(Type.OBJECTREF, "DoomPK3", "An open PK3 file.")
@@ -155,22 +165,80 @@ public enum PK3Functions implements ScriptFunctionType
 					return true;
 				}
 
-				DoomPK3 pk3 = temp.asObjectType(DoomPK3.class);
-				List<String> entries = pk3.getEntriesStartingWith(prefix);
-				if (entries.isEmpty())
+				List<ZipEntry> entries = getIndex(temp.asObjectType(ZipFile.class)).getEntriesStartingWith(prefix);
+				returnValue.setEmptyList(entries.size());
+				for (int i = 0; i < entries.size(); i++)
 				{
-					returnValue.setEmptyList();
-					return true;
+					setEntryInfo(entries.get(i), temp);
+					returnValue.listAdd(temp);
 				}
-				else
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	PK3NAMESPACE(2)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Returns a list of all file entries in a namespace (top-level folder, like \"sprites\" or \"flats\"), " +
+					"including the ones in its subfolders. Directory entries are not included. The name is treated case-insensitively. " +
+					"The entries are looked up using a sorted index of the PK3's entry names, made once per open PK3."
+				)
+				.parameter("pk3", 
+					type(Type.OBJECTREF, "DoomPK3", "An open PK3 file.")
+				)
+				.parameter("namespace", 
+					type(Type.STRING, "The namespace (folder) name, with or without a trailing slash.")
+				)
+				.returns(
+					type(Type.LIST, "[MAP:{name:STRING, dir:BOOLEAN, size:INTEGER, time:INTEGER, comment:STRING, compressedsize:INTEGER, crc:INTEGER, creationtime:INTEGER, lastaccesstime:INTEGER, lastmodifiedtime:INTEGER}, ...]", "A list of maps containg Zip entry info."),
+					type(Type.ERROR, "BadParameter", "If an open PK3 file was not provided, or [namespace] is null."),
+					type(Type.ERROR, "IOError", "If a read error occurs, or the PK3 is not open.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				if (temp.isNull())
 				{
-					for (int i = 0; i < entries.size(); i++)
-					{
-						setEntryInfo(pk3.getEntry(entries.get(i)), temp);
-						returnValue.listAdd(temp);
-					}
+					returnValue.setError("BadParameter", "No namespace provided.");
+					return true;
 				}
+				String namespace = temp.asString();
+				if (!namespace.endsWith("/"))
+					namespace = namespace + "/";
 				
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectType(ZipFile.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not an open Zip/PK3/PKE file.");
+					return true;
+				}
+
+				List<ZipEntry> entries = getIndex(temp.asObjectType(ZipFile.class)).getEntriesStartingWith(namespace);
+				returnValue.setEmptyList(entries.size());
+				for (int i = 0; i < entries.size(); i++)
+				{
+					ZipEntry entry = entries.get(i);
+					if (entry.isDirectory())
+						continue;
+					setEntryInfo(entry, temp);
+					returnValue.listAdd(temp);
+				}
 				return true;
 			}
 			finally
@@ -301,6 +369,112 @@ public enum PK3Functions implements ScriptFunctionType
 		}
 	},
 
+	PK3WADFILE(2)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Reads a PK3/PKE entry as though it were a WAD file, like PK3WAD, but instead of reading the whole WAD into memory, " +
+					"it is decompressed once to a temporary file and opened as a WAD file: only its entry list is kept in memory, and " +
+					"entry data is read from the file as it is requested. Better for large nested WADs. " +
+					"The WAD file is registered as a resource, and will be closed (and the temporary file deleted) when the script terminates."
+				)
+				.parameter("zip", 
+					type(Type.OBJECTREF, "ZipFile", "The open zip/PK3/PKE file.")
+				)
+				.parameter("entry", 
+					type(Type.STRING, "The entry name."),
+					type(Type.MAP, "{... name:STRING ...}", "A map of zip entry info containing the name of the entry.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "Wad", "An open WAD file."),
+					type(Type.ERROR, "BadParameter", "If an open zip file was not provided, or [entry] is null or [entry].name is null."),
+					type(Type.ERROR, "BadEntry", "If [entry] could not be found in the zip."),
+					type(Type.ERROR, "BadWad", "If [entry] is not a WAD file."),
+					type(Type.ERROR, "IOError", "If a read or write error occurs, or the zip is not open.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue temp2 = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				String name;
+				if (temp.isNull())
+					name = null;
+				else if (temp.isMap())
+				{
+					temp.mapGet("name", temp2);
+					name = temp2.isNull() ? null : temp2.asString();
+				}
+				else
+					name = temp.asString();
+				
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectType(ZipFile.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not an open zip file.");
+					return true;
+				}
+				if (name == null)
+				{
+					returnValue.setError("BadParameter", "No entry name provided.");
+					return true;
+				}
+
+				ZipFile zf = temp.asObjectType(ZipFile.class);
+				
+				File tempFile = null;
+				try {
+					ZipEntry entry = zf.getEntry(name);
+					if (entry == null)
+					{
+						returnValue.setError("BadEntry", "Entry named \"" + name + "\" could not be found.");
+						return true;
+					}
+					
+					tempFile = File.createTempFile("wadscript", ".wad");
+					try (InputStream in = zf.getInputStream(entry); OutputStream out = new FileOutputStream(tempFile))
+					{
+						IOUtils.relay(in, out, 65536);
+					}
+					
+					final File wadFile = tempFile;
+					final WadFile wad = new ScriptWadFile(wadFile);
+					tempFile = null;
+					scriptInstance.registerCloseable(() -> {
+						try {
+							wad.close();
+						} finally {
+							wadFile.delete();
+						}
+					});
+					returnValue.set((Wad)wad);
+				} catch (WadException e) {
+					returnValue.setError("BadWad", e.getMessage(), e.getLocalizedMessage());
+				} catch (IllegalStateException | IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				} finally {
+					if (tempFile != null)
+						tempFile.delete();
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				temp2.setNull();
+			}
+		}
+	},
+
 	;
 	
 	private final int parameterCount;
@@ -388,6 +562,91 @@ public enum PK3Functions implements ScriptFunctionType
 			out.mapSet("time", entry.getTime());
 	}
 	
+	/**
+	 * Gets the entry index for an open zip file, creating it if it does not exist.
+	 * @param zf the zip file.
+	 * @return the index.
+	 */
+	private static PK3Index getIndex(ZipFile zf)
+	{
+		synchronized (INDICES)
+		{
+			PK3Index out;
+			if ((out = INDICES.get(zf)) == null)
+				INDICES.put(zf, out = new PK3Index(zf));
+			return out;
+		}
+	}
+	
+	/**
+	 * A sorted, case-insensitive index of a zip file's entries, for prefix lookups.
+	 */
+	private static class PK3Index
+	{
+		/** Lower-case entry names, sorted. */
+		private String[] names;
+		/** Entries, in the same order as the names. */
+		private ZipEntry[] entries;
+		/** Central directory position of each entry, in the same order as the names. */
+		private int[] ordinals;
+		
+		private PK3Index(ZipFile zf)
+		{
+			List<ZipEntry> list = new ArrayList<>(zf.size());
+			Enumeration<? extends ZipEntry> en = zf.entries();
+			while (en.hasMoreElements())
+				list.add(en.nextElement());
+			
+			Integer[] order = new Integer[list.size()];
+			String[] lowerNames = new String[list.size()];
+			for (int i = 0; i < order.length; i++)
+			{
+				order[i] = i;
+				lowerNames[i] = list.get(i).getName().toLowerCase();
+			}
+			Arrays.sort(order, (a, b) -> lowerNames[a].compareTo(lowerNames[b]));
+			
+			this.names = new String[order.length];
+			this.entries = new ZipEntry[order.length];
+			this.ordinals = new int[order.length];
+			for (int i = 0; i < order.length; i++)
+			{
+				names[i] = lowerNames[order[i]];
+				entries[i] = list.get(order[i]);
+				ordinals[i] = order[i];
+			}
+		}
+		
+		/**
+		 * Gets all entries whose names start with a prefix (case-insensitive), in central directory order.
+		 * @param prefix the prefix.
+		 * @return the list of entries.
+		 */
+		private List<ZipEntry> getEntriesStartingWith(String prefix)
+		{
+			String lowerPrefix = prefix.toLowerCase();
+			int start = Arrays.binarySearch(names, lowerPrefix);
+			if (start < 0)
+				start = -(start + 1);
+			int end = start;
+			while (end < names.length && names[end].startsWith(lowerPrefix))
+				end++;
+			
+			Integer[] matches = new Integer[end - start];
+			for (int i = 0; i < matches.length; i++)
+				matches[i] = start + i;
+			Arrays.sort(matches, (a, b) -> ordinals[a] - ordinals[b]);
+			
+			List<ZipEntry> out = new ArrayList<>(matches.length);
+			for (int i = 0; i < matches.length; i++)
+				out.add(entries[matches[i]]);
+			return out;
+		}
+	}
+	
+	/** Entry indices, by open zip file. */
+	private static final Map<ZipFile, PK3Index> INDICES = new WeakHashMap<>();
+	
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
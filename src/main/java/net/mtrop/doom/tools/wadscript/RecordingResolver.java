@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadscript;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.blackrook.rookscript.ScriptInstance;
+import com.blackrook.rookscript.ScriptValue;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
+
+/**
+ * A function resolver that wraps another, and reports the calls and times of its functions to a {@link Recorder}.
+ * Functions are named after the function, plus its namespace, if any (e.g. <code>TOOL::DECOHACK</code>).
+ * <p>Functions that start work on other threads can have that work reported as well, with {@link #recorded(String, Callable)}.
+ * @author Matthew Tropiano
+ */
+public class RecordingResolver implements ScriptFunctionResolver
+{
+	/** The recorded function running on each thread, if any. */
+	private static final ThreadLocal<RecordedFunction> CURRENT = new ThreadLocal<>();
+
+	private final String sectionName;
+	private final String namespace;
+	private final ScriptFunctionResolver resolver;
+	private final Recorder recorder;
+	private final Set<String> names;
+	private final Map<String, ScriptFunctionType> functions;
+
+	/**
+	 * Creates a new recording resolver.
+	 * @param sectionName the resolver section name (passed to the recorder).
+	 * @param namespace the namespace that the resolver is added with, or null for none.
+	 * @param resolver the resolver to wrap.
+	 * @param recorder the recorder to report calls to.
+	 * @param functionNames the names of the functions to record. If none are provided, all are recorded.
+	 */
+	public RecordingResolver(String sectionName, String namespace, ScriptFunctionResolver resolver, Recorder recorder, String ... functionNames)
+	{
+		this.sectionName = sectionName;
+		this.namespace = namespace;
+		this.resolver = resolver;
+		this.recorder = recorder;
+		this.functions = new ConcurrentHashMap<>();
+		if (functionNames.length > 0)
+		{
+			this.names = new HashSet<>();
+			for (String name : functionNames)
+				this.names.add(name.toLowerCase());
+		}
+		else
+		{
+			this.names = null;
+		}
+	}
+
+	/**
+	 * Wraps a task that is started by the function that is running on the current thread, so that each run of the task 
+	 * is reported to that function's recorder (on the thread that runs it), as a call to another function in the same 
+	 * section and namespace. 
+	 * If no recorded function is running on the current thread, the task is returned as-is.
+	 * @param <T> the task's return type.
+	 * @param functionName the function name to report the task's runs as (without namespace).
+	 * @param task the task to wrap.
+	 * @return the task to run in place of the provided one.
+	 */
+	public static <T> Callable<T> recorded(String functionName, Callable<T> task)
+	{
+		RecordedFunction current = CURRENT.get();
+		return current != null ? current.getResolver().recordedTask(functionName, task) : task;
+	}
+
+	private <T> Callable<T> recordedTask(String functionName, Callable<T> task)
+	{
+		final String name = (namespace != null ? namespace + "::" : "") + functionName;
+		return () -> {
+			Object state = recorder.begin(sectionName, name);
+			long start = System.nanoTime();
+			try {
+				return task.call();
+			} finally {
+				recorder.end(sectionName, name, state, System.nanoTime() - start);
+			}
+		};
+	}
+
+	private ScriptFunctionType recorded(ScriptFunctionType function)
+	{
+		if (names != null && !names.contains(function.name().toLowerCase()))
+			return function;
+		return functions.computeIfAbsent(function.name(), (k) -> new RecordedFunction(function));
+	}
+
+	@Override
+	public boolean containsFunction(String name)
+	{
+		return resolver.containsFunction(name);
+	}
+
+	@Override
+	public ScriptFunctionType getFunction(String name)
+	{
+		ScriptFunctionType function = resolver.getFunction(name);
+		return function != null ? recorded(function) : null;
+	}
+
+	@Override
+	public ScriptFunctionType[] getFunctions()
+	{
+		ScriptFunctionType[] source = resolver.getFunctions();
+		ScriptFunctionType[] out = new ScriptFunctionType[source.length];
+		for (int i = 0; i < out.length; i++)
+			out[i] = recorded(source[i]);
+		return out;
+	}
+
+	/**
+	 * Receives the calls made to the functions of a {@link RecordingResolver}.
+	 * Calls can come from many threads at once.
+	 */
+	public interface Recorder
+	{
+		/**
+		 * Called on the calling thread just before a function runs.
+		 * @param sectionName the resolver section name.
+		 * @param functionName the function name (with namespace).
+		 * @return an object to pass to {@link #end(String, String, Object, long)} for this call, or null.
+		 */
+		Object begin(String sectionName, String functionName);
+
+		/**
+		 * Called on the calling thread just after a function runs (or throws).
+		 * @param sectionName the resolver section name.
+		 * @param functionName the function name (with namespace).
+		 * @param state the object returned by {@link #begin(String, String)} for this call.
+		 * @param nanos the time taken, in nanoseconds.
+		 */
+		void end(String sectionName, String functionName, Object state, long nanos);
+	}
+
+	/** A function that reports its calls. */
+	private class RecordedFunction implements ScriptFunctionType
+	{
+		private final String functionName;
+		private final ScriptFunctionType function;
+
+		private RecordedFunction(ScriptFunctionType function)
+		{
+			this.functionName = (namespace != null ? namespace + "::" : "") + function.name();
+			this.function = function;
+		}
+
+		private RecordingResolver getResolver()
+		{
+			return RecordingResolver.this;
+		}
+
+		@Override
+		public String name()
+		{
+			return function.name();
+		}
+
+		@Override
+		public int getParameterCount()
+		{
+			return function.getParameterCount();
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return function.getUsage();
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			RecordedFunction previous = CURRENT.get();
+			CURRENT.set(this);
+			Object state = recorder.begin(sectionName, functionName);
+			long start = System.nanoTime();
+			try {
+				return function.execute(scriptInstance, returnValue);
+			} finally {
+				recorder.end(sectionName, functionName, state, System.nanoTime() - start);
+				if (previous != null)
+					CURRENT.set(previous);
+				else
+					CURRENT.remove();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadscript;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
+
+/**
+ * Collects call counts and times for host functions called by scripts.
+ * Host function resolvers are wrapped with {@link #wrap(String, String, ScriptFunctionResolver)} before they are
+ * added to a script instance, and the script call is bracketed with {@link #start(String)} and {@link #stop()}.
+ * <p>Script code itself is not instrumented: the time spent outside of host functions is reported
+ * as the script's own time. Host functions called from other threads (for example, map workers) are counted,
+ * but under a separate root.
+ * @author Matthew Tropiano
+ */
+public class ScriptProfiler
+{
+	/** Root name for calls on threads that did not call {@link #start(String)}. */
+	private static final String WORKER_ROOT = "(worker)";
+
+	/** Per-thread host call stack. */
+	private final ThreadLocal<Deque<Frame>> stack;
+	/** Stats by function. */
+	private final Map<String, Stat> functionStats;
+	/** Stats by resolver section. */
+	private final Map<String, Stat> sectionStats;
+	/** Exclusive nanoseconds by call path. */
+	private final Map<String, Long> collapsed;
+	/** Records calls to wrapped functions. */
+	private final Recorder recorder;
+
+	private String rootName;
+	private long startNanos;
+	private long totalNanos;
+
+	/**
+	 * Creates a new profiler.
+	 */
+	public ScriptProfiler()
+	{
+		this.stack = ThreadLocal.withInitial(ArrayDeque::new);
+		this.functionStats = new HashMap<>();
+		this.sectionStats = new HashMap<>();
+		this.collapsed = new HashMap<>();
+		this.recorder = new Recorder();
+		this.rootName = null;
+		this.startNanos = 0L;
+		this.totalNanos = 0L;
+	}
+
+	/**
+	 * Wraps a function resolver so that all of its functions are timed by this profiler.
+	 * @param sectionName the resolver section name (for reporting).
+	 * @param namespace the namespace that the resolver is added with, or null for none.
+	 * @param resolver the resolver to wrap.
+	 * @return a new resolver.
+	 */
+	public ScriptFunctionResolver wrap(String sectionName, String namespace, ScriptFunctionResolver resolver)
+	{
+		return new RecordingResolver(sectionName, namespace, resolver, recorder);
+	}
+
+	/**
+	 * Starts timing a script call on the current thread.
+	 * @param entryName the name of the entry point called.
+	 */
+	public void start(String entryName)
+	{
+		rootName = entryName;
+		Frame root = new Frame(entryName);
+		stack.get().push(root);
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Stops timing the script call started on this thread.
+	 */
+	public void stop()
+	{
+		totalNanos = System.nanoTime() - startNanos;
+		Frame root = stack.get().pop();
+		synchronized (this)
+		{
+			collapsed.merge(root.path, totalNanos - root.childNanos, Long::sum);
+		}
+	}
+
+	/**
+	 * Prints a text report: totals, then time by resolver section, then time by function.
+	 * Time spent in host functions on other threads is not part of the totals, and is printed on its own line.
+	 * Sections and functions are sorted by exclusive time, most first.
+	 * @param out the output stream.
+	 */
+	public synchronized void printReport(PrintStream out)
+	{
+		long hostNanos = 0L;
+		long workerNanos = 0L;
+		for (Map.Entry<String, Long> entry : collapsed.entrySet())
+		{
+			if (entry.getKey().startsWith(WORKER_ROOT + ";"))
+				workerNanos += entry.getValue();
+			else if (entry.getKey().indexOf(';') >= 0)
+				hostNanos += entry.getValue();
+		}
+
+		out.printf("Profile of \"%s\": %.3f ms total, %.3f ms in script code (all script functions), %.3f ms in host functions.\n",
+			rootName, millis(totalNanos), millis(collapsed.getOrDefault(rootName, 0L)), millis(hostNanos)
+		);
+		if (workerNanos > 0L)
+			out.printf("Worker threads: %.3f ms in host functions (run during the calls above, not part of the total).\n", millis(workerNanos));
+		out.println();
+		printStats(out, "Resolver", sectionStats);
+		out.println();
+		printStats(out, "Function", functionStats);
+	}
+
+	/**
+	 * Prints the collected call paths in "collapsed stack" format, one path per line,
+	 * with each path's exclusive time in microseconds (for flame graph tools).
+	 * @param out the output stream.
+	 */
+	public synchronized void printCollapsed(PrintStream out)
+	{
+		for (Map.Entry<String, Long> entry : new TreeMap<>(collapsed).entrySet())
+		{
+			long micros = entry.getValue() / 1000L;
+			if (micros > 0)
+				out.println(entry.getKey() + " " + micros);
+		}
+	}
+
+	private static void printStats(PrintStream out, String title, Map<String, Stat> stats)
+	{
+		List<Map.Entry<String, Stat>> list = new ArrayList<>(stats.entrySet());
+		list.sort((a, b) -> Long.compare(b.getValue().exclusiveNanos, a.getValue().exclusiveNanos));
+		out.printf("%-10s %14s %14s  %s\n", "Calls", "Inclusive ms", "Exclusive ms", title);
+		for (Map.Entry<String, Stat> entry : list)
+		{
+			Stat stat = entry.getValue();
+			out.printf("%-10d %14.3f %14.3f  %s\n", stat.calls, millis(stat.inclusiveNanos), millis(stat.exclusiveNanos), entry.getKey());
+		}
+	}
+
+	private static double millis(long nanos)
+	{
+		return nanos / 1000000.0;
+	}
+
+	// Records a finished host call.
+	private void record(String sectionName, String functionName, Frame frame, long nanos)
+	{
+		long exclusive = nanos - frame.childNanos;
+		synchronized (this)
+		{
+			functionStats.computeIfAbsent(functionName, (k) -> new Stat()).add(nanos, exclusive);
+			sectionStats.computeIfAbsent(sectionName, (k) -> new Stat()).add(nanos, exclusive);
+			collapsed.merge(frame.path, exclusive, Long::sum);
+		}
+	}
+
+	/** Call stack frame. */
+	private static class Frame
+	{
+		private final String path;
+		private long childNanos;
+
+		private Frame(String path)
+		{
+			this.path = path;
+			this.childNanos = 0L;
+		}
+	}
+
+	/** Aggregate stats. */
+	private static class Stat
+	{
+		private long calls;
+		private long inclusiveNanos;
+		private long exclusiveNanos;
+
+		private void add(long inclusive, long exclusive)
+		{
+			calls++;
+			inclusiveNanos += inclusive;
+			exclusiveNanos += exclusive;
+		}
+	}
+
+	/** Keeps the per-thread call stack for wrapped functions. */
+	private class Recorder implements RecordingResolver.Recorder
+	{
+		@Override
+		public Object begin(String sectionName, String functionName)
+		{
+			Deque<Frame> frames = stack.get();
+			Frame parent = frames.peek();
+			Frame frame = new Frame((parent != null ? parent.path : WORKER_ROOT) + ";" + functionName);
+			frames.push(frame);
+			return frame;
+		}
+
+		@Override
+		public void end(String sectionName, String functionName, Object state, long nanos)
+		{
+			Deque<Frame> frames = stack.get();
+			frames.pop();
+			Frame parent = frames.peek();
+			if (parent != null)
+				parent.childNanos += nanos;
+			record(sectionName, functionName, (Frame)state, nanos);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2022 Matt Tropiano
+ * This program and the accompanying materials are made available under
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadscript;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.mtrop.doom.WadFile;
+
+/**
+ * A WAD file opened by a script.
+ * Closing it ends any batched add session started on it with WADADDBEGIN() first, 
+ * so that entries added during the session are not lost if the script closes the WAD before WADADDEND().
+ * A WAD file can also be opened read-only, where the script functions that change a WAD refuse to change it.
+ * @author Matthew Tropiano
+ */
+class ScriptWadFile extends WadFile
+{
+	private final boolean readOnly;
+	
+	/**
+	 * Opens a WAD file.
+	 * @param file the file to open.
+	 * @throws IOException if the file could not be read, or is not a WAD file.
+	 */
+	ScriptWadFile(File file) throws IOException
+	{
+		this(file, false);
+	}
+
+	/**
+	 * Opens a WAD file.
+	 * @param file the file to open.
+	 * @param readOnly if true, script functions may not change this WAD.
+	 * @throws IOException if the file could not be read, or is not a WAD file.
+	 */
+	ScriptWadFile(File file, boolean readOnly) throws IOException
+	{
+		super(file);
+		this.readOnly = readOnly;
+	}
+
+	/**
+	 * Creates a new, empty WAD file, overwriting any existing file, and opens it.
+	 * @param file the file to create.
+	 * @return the open WAD file.
+	 * @throws IOException if the file could not be created.
+	 */
+	static ScriptWadFile create(File file) throws IOException
+	{
+		WadFile.createWadFile(file).close();
+		return new ScriptWadFile(file);
+	}
+
+	/**
+	 * @return true if script functions may not change this WAD, false if not.
+	 */
+	boolean isReadOnly()
+	{
+		return readOnly;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			WadFunctions.endAddSession(this);
+		} finally {
+			super.close();
+		}
+	}
+
+}
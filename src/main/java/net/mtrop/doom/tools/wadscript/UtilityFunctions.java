@@ -82,6 +82,7 @@ public enum UtilityFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad]."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad, or [input] is not a valid input type."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadFile", "If [input] is a file and it can't be found."),
 					type(Type.ERROR, "Parse", "If the texture data cannot be parsed."),
 					type(Type.ERROR, "Security", "If [input] is a file and the OS is preventing the read."),
@@ -111,6 +112,11 @@ public enum UtilityFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (WadFunctions.isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 
 				BufferedReader reader;
 				boolean close = false;
@@ -361,6 +367,7 @@ public enum UtilityFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad]."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad, or [input] is not a valid input type."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadFile", "If [input] is a file and it can't be found."),
 					type(Type.ERROR, "Parse", "If the table data cannot be parsed."),
 					type(Type.ERROR, "Security", "If [input] is a file and the OS is preventing the read."),
@@ -385,6 +392,11 @@ public enum UtilityFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (WadFunctions.isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 
 				BufferedReader reader;
 				boolean close = false;
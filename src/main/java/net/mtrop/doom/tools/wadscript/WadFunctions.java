@@ -22,18 +22,25 @@ import net.mtrop.doom.WadFile;
 import net.mtrop.doom.exception.WadException;
 import net.mtrop.doom.object.BinaryObject;
 import net.mtrop.doom.object.TextObject;
-import net.mtrop.doom.struct.io.IOUtils;
+import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.util.NameUtils;
 
 import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Script functions for WAD.
@@ -144,7 +151,7 @@ public enum WadFunctions implements ScriptFunctionType
 				}
 				
 				try {
-					Wad wad = new WadFile(file);
+					Wad wad = new ScriptWadFile(file);
 					scriptInstance.registerCloseable((WadFile)wad);
 					returnValue.set(wad);
 				} catch (SecurityException e) {
@@ -201,7 +208,7 @@ public enum WadFunctions implements ScriptFunctionType
 				}
 				
 				try {
-					Wad wad = WadFile.createWadFile(file);
+					Wad wad = ScriptWadFile.create(file);
 					scriptInstance.registerCloseable((WadFile)wad);
 					returnValue.set(wad);
 				} catch (SecurityException e) {
@@ -311,6 +318,7 @@ public enum WadFunctions implements ScriptFunctionType
 					type(Type.OBJECTREF, "Wad", "[wad], on success."),
 					type(Type.ERROR, "BadType", "If [type] is not \"iwad\" or \"pwad\"."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a WAD."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "IOError", "If a write error occurs.")
 				)
 			;
@@ -330,6 +338,11 @@ public enum WadFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 
 				try
 				{
@@ -687,6 +700,85 @@ public enum WadFunctions implements ScriptFunctionType
 		}
 	},
 	
+	WADITERATEFILTER(5)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Creates an iterator that iterates through the entries in a WAD that pass a set of filters. " +
+					"The value that this produces can be used in an each(...) loop, exactly like WADITERATE, but " +
+					"entries that do not pass the filters are skipped without creating entry info maps for them. " +
+					"All filters must pass for an entry to be returned."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "The open WAD to iterate through.")
+				)
+				.parameter("pattern", 
+					type(Type.NULL, "Any name."),
+					type(Type.STRING, "A RegEx pattern that the whole entry name must match (case-insensitive).")
+				)
+				.parameter("namespace", 
+					type(Type.NULL, "Any entry."),
+					type(Type.STRING, "Only entries between this namespace's markers (for example, \"P\" is between P_START/PP_START and P_END/PP_END). The markers themselves are skipped.")
+				)
+				.parameter("minSize", 
+					type(Type.NULL, "No minimum."),
+					type(Type.INTEGER, "The minimum entry size in bytes, inclusive.")
+				)
+				.parameter("maxSize", 
+					type(Type.NULL, "No maximum."),
+					type(Type.INTEGER, "The maximum entry size in bytes, inclusive.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "Iterator", "An iterator for each matching entry - Key: index:INTEGER, value: MAP{name:STRING, offset:INTEGER, size:INTEGER}."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file."),
+					type(Type.ERROR, "BadPattern", "If [pattern] is not a valid RegEx pattern.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try
+			{
+				scriptInstance.popStackValue(temp);
+				Integer maxSize = temp.isNull() ? null : temp.asInt();
+				scriptInstance.popStackValue(temp);
+				Integer minSize = temp.isNull() ? null : temp.asInt();
+				scriptInstance.popStackValue(temp);
+				String namespace = temp.isNull() ? null : temp.asString();
+				scriptInstance.popStackValue(temp);
+				String patternString = temp.isNull() ? null : temp.asString();
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(Wad.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad.");
+					return true;
+				}
+
+				final Wad wad = temp.asObjectType(Wad.class);
+				
+				Pattern pattern;
+				try {
+					pattern = patternString == null ? null : Pattern.compile(patternString, Pattern.CASE_INSENSITIVE);
+				} catch (PatternSyntaxException e) {
+					returnValue.setError("BadPattern", e.getMessage(), e.getLocalizedMessage());
+					return true;
+				}
+				returnValue.set(new WadEntryFilterIterator(wad, pattern, namespace, minSize, maxSize));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
 	WADDATA(3)
 	{
 		@Override
@@ -829,7 +921,10 @@ public enum WadFunctions implements ScriptFunctionType
 		{
 			return ScriptFunctionUsage.create()
 				.instructions(
-					"Gets an input stream for WAD data using an entry descriptor."
+					"Gets an input stream for WAD data using an entry descriptor. " +
+					"If the WAD is a file, the stream reads the entry straight from the file as it is read, so no entry data is copied " +
+					"up front. The stream holds its own read handle on the file until it is closed, so close it before the WAD is changed. " +
+					"The stream should not be used after the WAD is changed or closed."
 				)
 				.parameter("wad", 
 					type(Type.OBJECTREF, "Wad", "The open WAD to use.")
@@ -964,7 +1059,8 @@ public enum WadFunctions implements ScriptFunctionType
 		{
 			return ScriptFunctionUsage.create()
 				.instructions(
-					"Adds an entry to a Wad."
+					"Adds an entry to a Wad. If an add session was started on the Wad with WADADDBEGIN(), " +
+					"the entry is appended without rewriting the Wad's entry list."
 				)
 				.parameter("wad", 
 					type(Type.OBJECTREF, "Wad", "The open WAD to use.")
@@ -989,6 +1085,7 @@ public enum WadFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadData", "If [data] is not an accepted value type."),
 					type(Type.ERROR, "BadIndex", "If an [index] was provided and it is less than 0 or greater than the current entry count."),
 					type(Type.ERROR, "IOError", "If a read or write error occurs.")
@@ -1014,6 +1111,11 @@ public enum WadFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 
 				final Wad wad = temp.asObjectType(Wad.class);
 				name = NameUtils.toValidEntryName(name);
@@ -1084,6 +1186,116 @@ public enum WadFunctions implements ScriptFunctionType
 		}
 	},
 	
+	WADADDBEGIN(1)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Starts a batched add session on a WAD file. Until the session is ended with WADADDEND() (or the WAD is closed, or the script ends), " +
+					"all entries added to the end of the WAD by WADADD() and WADIMPORT() are appended without rewriting the WAD's " +
+					"entry list each time: the entry list is written once when the session ends. " +
+					"Adding entries anywhere but the end of the WAD is not allowed during a session. " +
+					"If a session is already started on the WAD, this does nothing."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "The open WAD file to use.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file (in-memory Wads do not need this)."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker).")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try
+			{
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(WadFile.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad file.");
+					return true;
+				}
+				if (isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
+
+				final WadFile wad = temp.asObjectType(WadFile.class);
+				synchronized (ADDERS)
+				{
+					if (!ADDERS.containsKey(wad))
+					{
+						ADDERS.put(wad, wad.createAdder());
+						scriptInstance.registerCloseable(() -> endAddSession(wad));
+					}
+				}
+				returnValue.set(temp);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	WADADDEND(1)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Ends a batched add session on a WAD file started with WADADDBEGIN(), writing the WAD's entry list. " +
+					"If no session was started on the WAD, this does nothing."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "The open WAD file to use.")
+				)
+				.returns(
+					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file."),
+					type(Type.ERROR, "IOError", "If a write error occurs.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try
+			{
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(WadFile.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad file.");
+					return true;
+				}
+
+				try {
+					endAddSession(temp.asObjectType(WadFile.class));
+					returnValue.set(temp);
+				} catch (IOException e) {
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
 	WADREMOVE(2)
 	{
 		@Override
@@ -1102,6 +1314,7 @@ public enum WadFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadIndex", "If the index is less than 0 or greater than or equal to the current entry count."),
 					type(Type.ERROR, "IOError", "If a write error occurs.")
 				)
@@ -1122,6 +1335,11 @@ public enum WadFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 				if (index == null)
 				{
 					returnValue.setError("BadIndex", "Index not provided.");
@@ -1166,6 +1384,7 @@ public enum WadFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
 					type(Type.ERROR, "BadParameter", "If [wad] is not a Wad file."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadIndex", "If the index is less than 0 or greater than or equal to the current entry count."),
 					type(Type.ERROR, "IOError", "If a write error occurs.")
 				)
@@ -1186,6 +1405,11 @@ public enum WadFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (isReadOnly(temp.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 				if (index == null)
 				{
 					returnValue.setError("BadIndex", "Index not provided.");
@@ -1238,6 +1462,7 @@ public enum WadFunctions implements ScriptFunctionType
 				.returns(
 					type(Type.OBJECTREF, "Wad", "[wad], if successful."),
 					type(Type.ERROR, "BadParameter", "If [wad] or [srcWad] are not Wad files."),
+					type(Type.ERROR, "ReadOnly", "If [wad] is read-only (such as in a FORKMAPS worker)."),
 					type(Type.ERROR, "BadEntry", "If one of the entries in the entry list is malformed."),
 					type(Type.ERROR, "BadIndex", "If the index is less than 0 or greater than or equal to the current entry count."),
 					type(Type.ERROR, "IOError", "If a write error occurs.")
@@ -1265,6 +1490,11 @@ public enum WadFunctions implements ScriptFunctionType
 					returnValue.setError("BadParameter", "First parameter is not a Wad.");
 					return true;
 				}
+				if (isReadOnly(dest.asObjectType(Wad.class)))
+				{
+					returnValue.setError("ReadOnly", "First parameter is a read-only Wad.");
+					return true;
+				}
 				if (!src.isObjectRef(Wad.class))
 				{
 					returnValue.setError("BadParameter", "Second parameter is not a Wad.");
@@ -1277,10 +1507,22 @@ public enum WadFunctions implements ScriptFunctionType
 				if (index == null)
 					index = destWad.getEntryCount();
 				
+				WadFile.Adder sessionAdder = getAddSession(destWad);
 				if (entries.isNull())
 				{
 					try {
-						destWad.addFrom(srcWad, srcWad.getAllEntries());
+						if (sessionAdder != null)
+						{
+							for (WadEntry entry : srcWad)
+								try (InputStream in = srcWad.getInputStream(entry))
+								{
+									sessionAdder.addData(entry.getName(), in);
+								}
+						}
+						else
+						{
+							destWad.addFrom(srcWad, srcWad.getAllEntries());
+						}
 						returnValue.set(destWad);
 					} catch (IOException e) {
 						returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
@@ -1294,8 +1536,8 @@ public enum WadFunctions implements ScriptFunctionType
 					entries.listSetByIndex(0, temp);
 				}
 
-				WadFile.Adder adder = null;
-				if (WadFile.class.isAssignableFrom(destWad.getClass()))
+				WadFile.Adder adder = sessionAdder;
+				if (adder == null && WadFile.class.isAssignableFrom(destWad.getClass()))
 					adder = ((WadFile)destWad).createAdder();
 				try 
 				{
@@ -1323,7 +1565,8 @@ public enum WadFunctions implements ScriptFunctionType
 				} catch (IOException e) {
 					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
 				} finally {
-					IOUtils.close(adder);
+					if (adder != sessionAdder)
+						IOUtils.close(adder);
 				}
 				
 				return true;
@@ -1461,12 +1704,79 @@ public enum WadFunctions implements ScriptFunctionType
 	private static void setWADDataStream(ScriptValue value, final Wad wad, WadEntry entry)
 	{
 		try {
-			value.set(new DataInputStream(wad.getInputStream(entry)));
+			if (wad instanceof WadFile)
+				value.set(new DataInputStream(new BufferedInputStream(openEntryStream((WadFile)wad, entry))));
+			else
+				value.set(new DataInputStream(wad.getInputStream(entry)));
 		} catch (IOException e) {
 			value.setError("IOError", e.getMessage(), e.getLocalizedMessage());
 		}
 	}
 
+	/**
+	 * Checks if a WAD is read-only to scripts.
+	 * @param wad the WAD.
+	 * @return true if the WAD was opened read-only, false if not.
+	 */
+	static boolean isReadOnly(Wad wad)
+	{
+		return wad instanceof ScriptWadFile && ((ScriptWadFile)wad).isReadOnly();
+	}
+
+	/**
+	 * Gets the adder for an active add session on a WAD.
+	 * @param wad the WAD.
+	 * @return the session's adder, or null if there is no active session on the WAD.
+	 */
+	private static WadFile.Adder getAddSession(Wad wad)
+	{
+		if (!(wad instanceof WadFile))
+			return null;
+		synchronized (ADDERS)
+		{
+			return ADDERS.get(wad);
+		}
+	}
+
+	/**
+	 * Ends an active add session on a WAD, writing its entry list.
+	 * Does nothing if there is no active session on the WAD.
+	 * Also called when a {@link ScriptWadFile} is closed.
+	 * @param wad the WAD.
+	 * @throws IOException if the entry list could not be written.
+	 */
+	static void endAddSession(WadFile wad) throws IOException
+	{
+		WadFile.Adder adder;
+		synchronized (ADDERS)
+		{
+			adder = ADDERS.remove(wad);
+		}
+		if (adder != null)
+			adder.close();
+	}
+
+	/**
+	 * Opens a stream on an entry's data in a WAD file.
+	 * The data is read from the file at its position as the stream is read. Nothing is mapped, and the file
+	 * handle is released when the stream is closed.
+	 * @param wad the WAD file.
+	 * @param entry the entry.
+	 * @return an input stream of the entry data.
+	 * @throws IOException if the file could not be opened, or the entry lies outside of the file.
+	 */
+	private static InputStream openEntryStream(WadFile wad, WadEntry entry) throws IOException
+	{
+		File file = new File(wad.getFilePath());
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return IOUtils.openChannelStream(channel, entry.getOffset(), entry.getSize());
+		} catch (IOException e) {
+			channel.close();
+			throw new IOException("Entry \"" + entry.getName() + "\" is outside of the bounds of WAD file: " + file.getPath(), e);
+		}
+	}
+
 	/**
 	 * Adds data to an open Wad.
 	 * @param value the return value (wad or error)
@@ -1478,7 +1788,13 @@ public enum WadFunctions implements ScriptFunctionType
 	private static void addWADData(ScriptValue value, final Wad wad, String name, byte[] data, Integer index)
 	{
 		try {
-			wad.addDataAt(index != null ? index : wad.getEntryCount(), name, data);
+			WadFile.Adder adder = getAddSession(wad);
+			if (adder != null && (index == null || index == wad.getEntryCount()))
+				adder.addData(name, data);
+			else if (adder != null)
+				throw new IndexOutOfBoundsException("Entries can only be added to the end of a WAD during an add session.");
+			else
+				wad.addDataAt(index != null ? index : wad.getEntryCount(), name, data);
 			value.set(wad);
 		} catch (IndexOutOfBoundsException e) {
 			value.setError("BadIndex", "Index " + index + " is out of acceptable range.");
@@ -1498,7 +1814,13 @@ public enum WadFunctions implements ScriptFunctionType
 	private static void addWADData(ScriptValue value, final Wad wad, String name, File file, Integer index)
 	{
 		try {
-			wad.addDataAt(index != null ? index : wad.getEntryCount(), name, file);
+			WadFile.Adder adder = getAddSession(wad);
+			if (adder != null && (index == null || index == wad.getEntryCount()))
+				adder.addData(name, file);
+			else if (adder != null)
+				throw new IndexOutOfBoundsException("Entries can only be added to the end of a WAD during an add session.");
+			else
+				wad.addDataAt(index != null ? index : wad.getEntryCount(), name, file);
 			value.set(wad);
 		} catch (IndexOutOfBoundsException e) {
 			value.setError("BadIndex", "Index " + index + " is out of acceptable range.");
@@ -1518,7 +1840,13 @@ public enum WadFunctions implements ScriptFunctionType
 	private static void addWADData(ScriptValue value, final Wad wad, String name, InputStream in, Integer index)
 	{
 		try {
-			wad.addDataAt(index != null ? index : wad.getEntryCount(), name, in);
+			WadFile.Adder adder = getAddSession(wad);
+			if (adder != null && (index == null || index == wad.getEntryCount()))
+				adder.addData(name, in);
+			else if (adder != null)
+				throw new IndexOutOfBoundsException("Entries can only be added to the end of a WAD during an add session.");
+			else
+				wad.addDataAt(index != null ? index : wad.getEntryCount(), name, in);
 			value.set(wad);
 		} catch (IndexOutOfBoundsException e) {
 			value.setError("BadIndex", "Index " + index + " is out of acceptable range.");
@@ -1556,9 +1884,97 @@ public enum WadFunctions implements ScriptFunctionType
 		}
 	}
 
+	private static class WadEntryFilterIterator implements ScriptIteratorType
+	{
+		private IteratorPair pair;
+		private Wad wad;
+		private Pattern pattern;
+		private String[] startMarkers;
+		private String[] endMarkers;
+		private int minSize;
+		private int maxSize;
+		private boolean inNamespace;
+		private int cur;
+		private WadEntry next;
+
+		protected WadEntryFilterIterator(Wad wad, Pattern pattern, String namespace, Integer minSize, Integer maxSize) 
+		{
+			this.pair = new IteratorPair();
+			this.wad = wad;
+			this.pattern = pattern;
+			if (namespace != null)
+			{
+				namespace = namespace.toUpperCase();
+				this.startMarkers = new String[]{namespace + "_START", namespace + namespace + "_START"};
+				this.endMarkers = new String[]{namespace + "_END", namespace + namespace + "_END"};
+			}
+			else
+			{
+				this.startMarkers = null;
+				this.endMarkers = null;
+			}
+			this.minSize = minSize != null ? minSize : 0;
+			this.maxSize = maxSize != null ? maxSize : Integer.MAX_VALUE;
+			this.inNamespace = false;
+			this.cur = -1;
+			this.next = null;
+			advance();
+		}
+		
+		// Finds the next matching entry, or sets it to null if no more.
+		private void advance()
+		{
+			next = null;
+			int count = wad.getEntryCount();
+			while (++cur < count)
+			{
+				WadEntry entry = wad.getEntry(cur);
+				String name = entry.getName();
+				if (startMarkers != null)
+				{
+					if (entry.getSize() == 0 && (name.equalsIgnoreCase(startMarkers[0]) || name.equalsIgnoreCase(startMarkers[1])))
+					{
+						inNamespace = true;
+						continue;
+					}
+					if (entry.getSize() == 0 && (name.equalsIgnoreCase(endMarkers[0]) || name.equalsIgnoreCase(endMarkers[1])))
+					{
+						inNamespace = false;
+						continue;
+					}
+					if (!inNamespace)
+						continue;
+				}
+				if (entry.getSize() < minSize || entry.getSize() > maxSize)
+					continue;
+				if (pattern != null && !pattern.matcher(name).matches())
+					continue;
+				next = entry;
+				return;
+			}
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return next != null;
+		}
+
+		@Override
+		public IteratorPair next() 
+		{
+			pair.getKey().set(cur);
+			setEntry(pair.getValue(), next);
+			advance();
+			return pair;
+		}
+	}
 	
 	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	
+	/** Active add session adders, by open WAD. */
+	private static final Map<WadFile, WadFile.Adder> ADDERS = new WeakHashMap<>();
+	
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
@@ -0,0 +1,131 @@
+package net.mtrop.doom.tools.common;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Checks that UDMF text read in chunks is written back byte-for-byte,
+ * and that rewriting one block (as UDMFREWRITE does) leaves every other byte as it was.
+ */
+public final class TestUDMFChunkReader
+{
+	private static final String TEXTMAP =
+		"// Map made by hand.\r\n" +
+		"namespace\t=  \"zdoom\" ;\r\n" +
+		"/* block comment { with braces } and ; semicolons */\r\n" +
+		"\r\n" +
+		"thing // first thing\r\n" +
+		"{\r\n" +
+		"  x = 32.0;   y=-64.0 ;\r\n" +
+		"\ttype = 3004; // zombieman\r\n" +
+		"}\r\n" +
+		"thing{x=0.0;y=0.0;type=1;}\n" +
+		"vertex { x = 0.0; y = 0.0; }\n" +
+		"vertex\n" +
+		"{\n" +
+		"    x = 64.0; /* inline } comment */ y = 0.0;\n" +
+		"}\n" +
+		"linedef\n" +
+		"{\n" +
+		"  v1 = 0; v2 = 1;\n" +
+		"  comment = \"a \\\"quoted\\\" } brace; and caf\u00e9\";\n" +
+		"  sidefront = 0;\n" +
+		"}\n" +
+		"   linedef   {   v1 = 1 ; v2 = 0 ; sidefront = 0 ; }   \n" +
+		"sidedef { sector = 0; texturemiddle = \"STARTAN2\"; }\n" +
+		"sector { heightfloor = 0; heightceiling = 128; texturefloor = \"FLOOR0_1\"; textureceiling = \"CEIL1_1\"; }\n" +
+		"\n" +
+		"// the end\n"
+	;
+
+	private static final String REPLACEMENT = "linedef\n{\nv1 = 1;\nv2 = 0;\nsidefront = 0;\nblocking = true;\n}\n";
+
+	public static void main(String[] args) throws IOException
+	{
+		byte[] input = TEXTMAP.getBytes(StandardCharsets.ISO_8859_1);
+
+		// Copy as-is.
+		byte[] copy = rewrite(input, -1, null);
+		System.out.printf("%s: copy is %d of %d bytes, identical: %b\n",
+			Arrays.equals(input, copy) ? "OK" : "FAIL", copy.length, input.length, Arrays.equals(input, copy));
+
+		// Replace the second linedef.
+		int[] range = findObject(input, "linedef", 1);
+		byte[] rewritten = rewrite(input, 1, REPLACEMENT);
+		byte[] replacement = REPLACEMENT.getBytes(StandardCharsets.ISO_8859_1);
+
+		boolean same = rewritten.length == input.length - (range[1] - range[0]) + replacement.length;
+		same = same && Arrays.equals(Arrays.copyOfRange(input, 0, range[0]), Arrays.copyOfRange(rewritten, 0, range[0]));
+		same = same && Arrays.equals(replacement, Arrays.copyOfRange(rewritten, range[0], range[0] + replacement.length));
+		same = same && Arrays.equals(
+			Arrays.copyOfRange(input, range[1], input.length),
+			Arrays.copyOfRange(rewritten, range[0] + replacement.length, rewritten.length)
+		);
+		System.out.printf("%s: rewrote bytes %d to %d, all other bytes identical: %b\n",
+			same ? "OK" : "FAIL", range[0], range[1], same);
+
+		// Malformed text.
+		checkMalformed("thing { x = 0.0;");
+		checkMalformed("thing { comment = \"open; }");
+		checkMalformed("thing x = 0.0; }");
+		checkMalformed("/* open comment");
+	}
+
+	// Reads chunks and writes them back, replacing the text of the linedef at the provided index.
+	private static byte[] rewrite(byte[] input, int linedefIndex, String replacement) throws IOException
+	{
+		UDMFChunkReader reader = new UDMFChunkReader(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.ISO_8859_1)));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(bos, StandardCharsets.ISO_8859_1))
+		{
+			int linedefs = 0;
+			UDMFChunkReader.Chunk chunk;
+			while ((chunk = reader.next()) != null)
+			{
+				writer.write(chunk.getPrefix());
+				if (chunk.getType() == UDMFChunkReader.Chunk.Type.OBJECT && "linedef".equals(chunk.getName()) && linedefs++ == linedefIndex)
+					writer.write(replacement);
+				else
+					writer.write(chunk.getText());
+			}
+		}
+		return bos.toByteArray();
+	}
+
+	// Finds the byte range of an object's text (without its prefix).
+	private static int[] findObject(byte[] input, String name, int index) throws IOException
+	{
+		UDMFChunkReader reader = new UDMFChunkReader(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.ISO_8859_1)));
+		int offset = 0;
+		int count = 0;
+		UDMFChunkReader.Chunk chunk;
+		while ((chunk = reader.next()) != null)
+		{
+			offset += chunk.getPrefix().length();
+			if (chunk.getType() == UDMFChunkReader.Chunk.Type.OBJECT && name.equals(chunk.getName()) && count++ == index)
+				return new int[]{offset, offset + chunk.getText().length()};
+			offset += chunk.getText().length();
+		}
+		throw new IOException("Object " + name + " " + index + " not found.");
+	}
+
+	private static void checkMalformed(String text)
+	{
+		UDMFChunkReader reader = new UDMFChunkReader(new StringReader(text));
+		try {
+			while (reader.next() != null);
+			System.out.println("FAIL: no error for: " + text);
+		} catch (IOException e) {
+			System.out.println("OK: " + e.getMessage());
+		}
+	}
+
+}
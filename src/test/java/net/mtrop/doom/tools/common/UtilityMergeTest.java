@@ -0,0 +1,145 @@
+package net.mtrop.doom.tools.common;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.mtrop.doom.texture.DoomTextureList;
+import net.mtrop.doom.texture.PatchNames;
+import net.mtrop.doom.texture.TextureSet;
+
+/**
+ * Rough benchmark for additive DEUTEX imports into big texture lumps.
+ * Also checks that the merge path makes the same textures as the per-name {@link TextureSet} path.
+ */
+public final class UtilityMergeTest 
+{
+	private static final int TEXTURE_COUNT = 5000;
+	private static final int PATCHES_PER_TEXTURE = 2;
+	
+	private static final int CHECK_COUNT = 200;
+	
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : TEXTURE_COUNT;
+		
+		check(CHECK_COUNT);
+		
+		PatchNames pnames = new PatchNames();
+		DoomTextureList existing = new DoomTextureList(count);
+		createStartingTextures(count, pnames, existing);
+		String deutexText = createIncomingText(count);
+		
+		long time = System.nanoTime();
+		TextureSet merged = Utility.mergeDEUTEXFile(new BufferedReader(new StringReader(deutexText)), pnames, existing);
+		time = System.nanoTime() - time;
+		
+		long exportTime = System.nanoTime();
+		DoomTextureList out = new DoomTextureList(count * 2);
+		Utility.exportTextureSet(merged, pnames, out);
+		exportTime = System.nanoTime() - exportTime;
+		
+		int textures = 0;
+		for (@SuppressWarnings("unused") TextureSet.Texture t : merged)
+			textures++;
+		
+		System.out.printf("Merged %d incoming into %d existing textures -> %d textures in %.3f ms.\n", 
+			count, count, textures, time / 1000000.0);
+		System.out.printf("Exported %d textures and %d patch names in %.3f ms.\n", 
+			out.size(), pnames.size(), exportTime / 1000000.0);
+	}
+	
+	// Checks the merge and export path against the per-name path, for replaced and appended textures.
+	private static void check(int count) throws Exception
+	{
+		String deutexText = createIncomingText(count);
+		
+		PatchNames oldPatchNames = new PatchNames();
+		DoomTextureList oldList = new DoomTextureList(count);
+		createStartingTextures(count, oldPatchNames, oldList);
+		TextureSet oldSet = Utility.readDEUTEXFile(new BufferedReader(new StringReader(deutexText)), oldPatchNames, oldList);
+		DoomTextureList oldOut = new DoomTextureList(count * 2);
+		oldSet.export(oldPatchNames, oldOut);
+		
+		PatchNames newPatchNames = new PatchNames();
+		DoomTextureList newList = new DoomTextureList(count);
+		createStartingTextures(count, newPatchNames, newList);
+		TextureSet newSet = Utility.mergeDEUTEXFile(new BufferedReader(new StringReader(deutexText)), newPatchNames, newList);
+		DoomTextureList newOut = new DoomTextureList(count * 2);
+		Utility.exportTextureSet(newSet, newPatchNames, newOut);
+		
+		Map<String, String> expected = describe(new TextureSet(oldPatchNames, oldOut));
+		Map<String, String> actual = describe(new TextureSet(newPatchNames, newOut));
+		
+		int failures = 0;
+		for (Map.Entry<String, String> entry : expected.entrySet())
+		{
+			String texture = actual.get(entry.getKey());
+			if (!entry.getValue().equals(texture))
+			{
+				if (failures++ < 10)
+					System.out.println("FAIL: " + entry.getKey() + ": expected " + entry.getValue() + ", got " + texture);
+			}
+		}
+		for (String name : actual.keySet())
+		{
+			if (!expected.containsKey(name) && failures++ < 10)
+				System.out.println("FAIL: unexpected texture " + name);
+		}
+		
+		// Texture N is replaced if N >= count / 2, and added if N >= count.
+		String replaced = String.format("T%07d", count / 2);
+		String appended = String.format("T%07d", count);
+		boolean covered = actual.containsKey(replaced) && actual.get(replaced).startsWith("128x128") && actual.containsKey(appended);
+		if (!covered)
+			System.out.println("FAIL: replaced or appended textures missing from the result.");
+		
+		System.out.printf("%s: %d of %d textures match the per-name path (%d replaced, %d appended).\n", 
+			failures == 0 && covered ? "OK" : "FAIL", expected.size() - failures, expected.size(), count - count / 2, count / 2);
+	}
+	
+	// Creates the existing texture lump: count textures, 64x128.
+	private static void createStartingTextures(int count, PatchNames pnames, DoomTextureList existing)
+	{
+		TextureSet startSet = new TextureSet(pnames, new DoomTextureList());
+		for (int i = 0; i < count; i++)
+		{
+			TextureSet.Texture texture = startSet.createTexture(String.format("T%07d", i));
+			texture.setWidth(64);
+			texture.setHeight(128);
+			for (int p = 0; p < PATCHES_PER_TEXTURE; p++)
+				texture.createPatch(String.format("P%07d", i * PATCHES_PER_TEXTURE + p));
+		}
+		startSet.export(pnames, existing);
+	}
+	
+	// Creates the incoming DEUTEX text: half replaces existing textures, half is new (128x128).
+	private static String createIncomingText(int count)
+	{
+		StringBuilder deutex = new StringBuilder();
+		for (int i = count / 2; i < count + count / 2; i++)
+		{
+			deutex.append(String.format("T%07d 128 128\n", i));
+			for (int p = 0; p < PATCHES_PER_TEXTURE; p++)
+				deutex.append(String.format("*\tN%07d %d %d\n", i * PATCHES_PER_TEXTURE + p, p, -p));
+		}
+		return deutex.toString();
+	}
+	
+	// Describes each texture in a set by name: size, then patch names and origins.
+	private static Map<String, String> describe(TextureSet set)
+	{
+		Map<String, String> out = new HashMap<>();
+		for (TextureSet.Texture texture : set)
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append(texture.getWidth()).append('x').append(texture.getHeight());
+			for (TextureSet.Patch patch : texture)
+				sb.append(' ').append(patch.getName().toUpperCase()).append('@').append(patch.getOriginX()).append(',').append(patch.getOriginY());
+			out.put(texture.getName().toUpperCase(), sb.toString());
+		}
+		return out;
+	}
+
+}
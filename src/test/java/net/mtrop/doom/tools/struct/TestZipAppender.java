@@ -0,0 +1,137 @@
+package net.mtrop.doom.tools.struct;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public final class TestZipAppender 
+{
+	public static void main(String[] args) throws IOException 
+	{
+		File file = File.createTempFile("zipappender", ".zip");
+		file.deleteOnExit();
+		
+		Map<String, byte[]> expected = new LinkedHashMap<>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			sb.append("Line ").append(i).append(" of some compressible text.\n");
+		byte[] text = sb.toString().getBytes(StandardCharsets.UTF_8);
+		byte[] small = "Hello.".getBytes(StandardCharsets.UTF_8);
+		byte[] empty = new byte[0];
+		
+		// Create.
+		try (ZipAppender appender = ZipAppender.create(file))
+		{
+			add(appender, expected, "deflated.txt", text, true);
+			add(appender, expected, "stored.txt", text, false);
+			add(appender, expected, "empty.txt", empty, true);
+		}
+		check(file, expected);
+		
+		// Append.
+		try (ZipAppender appender = new ZipAppender(file))
+		{
+			add(appender, expected, "dir/stored-small.txt", small, false);
+			add(appender, expected, "dir/\u00fcbersicht-\u65e5\u672c.txt", text, true);
+			appender.addEntry(ZipAppender.prepare("prepared-stored.txt", System.currentTimeMillis(), new ByteArrayInputStream(small), false));
+			expected.put("prepared-stored.txt", small);
+			appender.addEntry(ZipAppender.prepare("prepared-deflated.txt", System.currentTimeMillis(), new ByteArrayInputStream(text), true));
+			expected.put("prepared-deflated.txt", text);
+		}
+		check(file, expected);
+		
+		// Duplicates are rejected, and the archive is still valid after.
+		try (ZipAppender appender = new ZipAppender(file))
+		{
+			try {
+				add(appender, expected, "stored.txt", small, false);
+				System.out.println("FAIL: duplicate entry added.");
+			} catch (IOException e) {
+				System.out.println("Duplicate rejected: " + e.getMessage());
+			}
+		}
+		check(file, expected);
+		
+		// Append to an archive written by java.util.zip (with data descriptors).
+		expected.clear();
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file)))
+		{
+			zos.putNextEntry(new ZipEntry("java.txt"));
+			zos.write(text);
+			zos.closeEntry();
+			expected.put("java.txt", text);
+		}
+		try (ZipAppender appender = new ZipAppender(file))
+		{
+			add(appender, expected, "appended.txt", small, false);
+		}
+		check(file, expected);
+	}
+	
+	private static void add(ZipAppender appender, Map<String, byte[]> expected, String name, byte[] data, boolean compressed) throws IOException
+	{
+		appender.addEntry(name, System.currentTimeMillis(), new ByteArrayInputStream(data), compressed);
+		expected.put(name, data);
+	}
+	
+	private static void check(File file, Map<String, byte[]> expected) throws IOException
+	{
+		int count = 0;
+		try (ZipFile zf = new ZipFile(file))
+		{
+			Enumeration<? extends ZipEntry> entries = zf.entries();
+			while (entries.hasMoreElements())
+			{
+				ZipEntry entry = entries.nextElement();
+				count++;
+				byte[] data = expected.get(entry.getName());
+				if (data == null)
+				{
+					System.out.println("FAIL: unexpected entry " + entry.getName());
+					continue;
+				}
+				
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				byte[] read = readAll(zf.getInputStream(entry));
+				CRC32 readCrc = new CRC32();
+				readCrc.update(read);
+				
+				boolean ok = entry.getCrc() == crc.getValue() 
+					&& readCrc.getValue() == crc.getValue() 
+					&& entry.getSize() == data.length
+					&& read.length == data.length;
+				System.out.printf("%s: %s %s, %d bytes, CRC %08x\n", 
+					ok ? "OK" : "FAIL", 
+					entry.getMethod() == ZipEntry.STORED ? "stored" : "deflated", 
+					entry.getName(), read.length, readCrc.getValue()
+				);
+			}
+		}
+		System.out.printf("%s: %d of %d entries.\n", count == expected.size() ? "OK" : "FAIL", count, expected.size());
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		try (InputStream is = in)
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int buf;
+			while ((buf = is.read(buffer)) > 0)
+				bos.write(buffer, 0, buf);
+			return bos.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package net.mtrop.doom.tools.struct.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * Checks PCM decoding, resampling, and quantizing in AudioUtils against known input.
+ */
+public final class AudioUtilsTest
+{
+	private static final float[] RATES = {8000f, 11025f, 22050f, 44100f, 48000f};
+
+	/** Test tone frequency, well under the Nyquist frequency of every rate. */
+	private static final double TONE_HZ = 200.0;
+	/** Input length, in seconds. */
+	private static final double SECONDS = 0.25;
+	/** Output samples skipped at each end for the tone check, where the filter runs off the input. */
+	private static final int EDGE = 64;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException
+	{
+		checkDecode();
+		checkQuantize();
+		for (float in : RATES)
+			for (float out : RATES)
+				checkResample(in, out);
+		System.out.println(failures == 0 ? "OK: all checks passed." : "FAIL: " + failures + " check(s) failed.");
+	}
+
+	// Decodes known frames in each direct PCM format.
+	private static void checkDecode() throws IOException
+	{
+		// 8-bit unsigned mono: 0, 128, 255.
+		check("8-bit unsigned",
+			decode(new byte[]{0, (byte)128, (byte)255}, AudioFormat.Encoding.PCM_UNSIGNED, 8, 1, false),
+			new float[]{-1f, 0f, 127f / 128f}
+		);
+		// 16-bit signed stereo, little-endian: (16384, -16384) -> 0, (32767, 32767) -> 32767/32768.
+		check("16-bit stereo",
+			decode(new byte[]{0x00, 0x40, 0x00, (byte)0xC0, (byte)0xFF, 0x7F, (byte)0xFF, 0x7F}, AudioFormat.Encoding.PCM_SIGNED, 16, 2, false),
+			new float[]{0f, 32767f / 32768f}
+		);
+		// 24-bit signed mono, big-endian: 0x400000 -> 0.5, 0xC00000 -> -0.5.
+		check("24-bit big-endian",
+			decode(new byte[]{0x40, 0x00, 0x00, (byte)0xC0, 0x00, 0x00}, AudioFormat.Encoding.PCM_SIGNED, 24, 1, true),
+			new float[]{0.5f, -0.5f}
+		);
+		// 32-bit float mono, little-endian: 0.25, -1.0.
+		byte[] floats = new byte[8];
+		putIntLE(floats, 0, Float.floatToIntBits(0.25f));
+		putIntLE(floats, 4, Float.floatToIntBits(-1f));
+		check("32-bit float",
+			decode(floats, AudioFormat.Encoding.PCM_FLOAT, 32, 1, false),
+			new float[]{0.25f, -1f}
+		);
+	}
+
+	// Quantizes known values without dither.
+	private static void checkQuantize()
+	{
+		int[] expected = {0, 64, 128, 192, 255, 0, 255};
+		int[] actual = AudioUtils.quantizeUnsigned8(new float[]{-1f, -0.5f, 0f, 0.5f, 1f, -2f, 2f}, false, null);
+		if (!Arrays.equals(expected, actual))
+			fail("quantize: expected " + Arrays.toString(expected) + ", got " + Arrays.toString(actual));
+	}
+
+	// Resamples a constant and a low tone, and checks the length and sample values.
+	private static void checkResample(float inputRate, float outputRate)
+	{
+		String name = String.format("resample %.0f -> %.0f", inputRate, outputRate);
+		int length = (int)(inputRate * SECONDS);
+		int expectedLength = (int)((long)length * (long)outputRate / (long)inputRate);
+
+		float[] constant = new float[length];
+		Arrays.fill(constant, 0.5f);
+		float[] constantOut = AudioUtils.resample(constant, inputRate, outputRate);
+		if (inputRate == outputRate && constantOut != constant)
+			fail(name + ": same rate did not return the input.");
+		if (constantOut.length != expectedLength)
+			fail(name + ": expected " + expectedLength + " samples, got " + constantOut.length);
+		for (int i = 0; i < constantOut.length; i++)
+		{
+			if (Math.abs(constantOut[i] - 0.5f) > 1e-4f)
+			{
+				fail(name + ": constant sample " + i + " is " + constantOut[i] + ", expected 0.5");
+				break;
+			}
+		}
+
+		float[] tone = new float[length];
+		for (int i = 0; i < length; i++)
+			tone[i] = (float)(0.5 * Math.sin(2.0 * Math.PI * TONE_HZ * i / inputRate));
+		float[] toneOut = AudioUtils.resample(tone, inputRate, outputRate);
+		double maxError = 0.0;
+		for (int i = EDGE; i < toneOut.length - EDGE; i++)
+		{
+			double expected = 0.5 * Math.sin(2.0 * Math.PI * TONE_HZ * i / outputRate);
+			maxError = Math.max(maxError, Math.abs(toneOut[i] - expected));
+		}
+		if (maxError > 0.01)
+			fail(name + ": tone error is " + maxError);
+
+		System.out.printf("%s: %d -> %d samples, max tone error %.6f\n", name, length, toneOut.length, maxError);
+	}
+
+	private static float[] decode(byte[] data, AudioFormat.Encoding encoding, int bits, int channels, boolean bigEndian) throws IOException
+	{
+		int frameBytes = bits / 8 * channels;
+		AudioFormat format = new AudioFormat(encoding, 11025f, bits, channels, frameBytes, 11025f, bigEndian);
+		try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format, data.length / frameBytes))
+		{
+			if (!AudioUtils.isDirectPCM(format))
+				fail(encoding + " " + bits + "-bit is not read directly.");
+			return AudioUtils.readMono(in);
+		}
+	}
+
+	private static void check(String name, float[] actual, float[] expected)
+	{
+		boolean ok = actual.length == expected.length;
+		for (int i = 0; ok && i < expected.length; i++)
+			ok = Math.abs(actual[i] - expected[i]) < 1e-6f;
+		if (!ok)
+			fail(name + ": expected " + Arrays.toString(expected) + ", got " + Arrays.toString(actual));
+		else
+			System.out.println(name + ": " + Arrays.toString(actual));
+	}
+
+	private static void putIntLE(byte[] data, int offset, int value)
+	{
+		for (int b = 0; b < 4; b++)
+			data[offset + b] = (byte)(value >> (b * 8));
+	}
+
+	private static void fail(String message)
+	{
+		failures++;
+		System.out.println("FAIL: " + message);
+	}
+
+}